@@ -2,6 +2,18 @@ package com.example.bathroomfalldetection;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.bathroomfalldetection.audio.AcousticImpactDetector;
+import com.example.bathroomfalldetection.audio.AudioEngine;
+import com.example.bathroomfalldetection.audio.AudioGate;
+import com.example.bathroomfalldetection.audio.IncidentRecorder;
+import com.example.bathroomfalldetection.audio.NoiseFloorTracker;
+import com.example.bathroomfalldetection.audio.SpectralFeatures;
+import com.example.bathroomfalldetection.detection.AccelSampleBuffer;
+import com.example.bathroomfalldetection.detection.AdaptiveThreshold;
+import com.example.bathroomfalldetection.detection.DurationDebouncer;
+import com.example.bathroomfalldetection.detection.EventCorrelator;
+import com.example.bathroomfalldetection.detection.GravitySeparator;
+
 import android.Manifest;
 import android.app.AlertDialog;
 import android.content.BroadcastReceiver;
@@ -19,6 +31,8 @@ import android.media.AudioTrack;
 import android.os.Bundle;
 import android.os.CountDownTimer;
 import android.os.Environment;
+import android.os.Process;
+import android.os.SystemClock;
 import android.provider.Telephony;
 import android.telephony.SmsManager;
 import android.telephony.SmsMessage;
@@ -27,14 +41,22 @@ import android.view.View;
 import android.widget.EditText;
 import android.widget.TextView;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * App for detecting bathroom falls and contacting people if alert isn't muted.
@@ -52,25 +74,45 @@ import java.util.List;
  * Stops detecting when user quits the app.
  */
 public class MainActivity extends AppCompatActivity {
-    //    final Runnable detector = new Runnable() {
-//        public void run() {
-//            detection();
-//        }
-//    };
-//    final int READ_SIZE = 4000;
-//    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-//    ScheduledFuture<?> detectionHandle = null;
-//    AudioRecord recorder = null;
     AudioTrack audioTrack = null;
-//    LinkedList<Double> window = new LinkedList<>();
-//    PriorityQueue<Double> sortedWindow = new PriorityQueue<>();
-//    PriorityQueue<Double> reversedSortedWindow = new PriorityQueue<>();
-//    List<Double> median_list = new ArrayList<>();
 
-    private SensorManager sensorManager;
+    private SensorSessionManager sensorSessions;
     private Sensor accelSensor;
-    private double ACCEL_THRESHOLD = 3.0; // TODO: Choose accelerometer threshold
-    private int fallCount = 0;
+    // Felt along gravity, m/s^2, below which the phone is falling; used until the
+    // adaptive threshold has learned the wearer's activity
+    private final float DEFAULT_FREE_FALL_THRESHOLD = 3.0f;
+    private final AdaptiveThreshold adaptiveThreshold = new AdaptiveThreshold();
+    private final String THRESHOLD_STATE_FILENAME = "adaptive_threshold.bin";
+    // Learned thresholds move slowly, no need to recompute them every sample
+    private final int THRESHOLD_UPDATE_INTERVAL = 256;
+    private float freeFallThreshold = DEFAULT_FREE_FALL_THRESHOLD;
+    private final int SAMPLE_BUFFER_CAPACITY = 2048; // ~10 s at SENSOR_DELAY_FASTEST
+    private final AccelSampleBuffer samples = new AccelSampleBuffer(SAMPLE_BUFFER_CAPACITY);
+    private final float NOMINAL_SAMPLE_RATE = 5f; // Hz, SENSOR_DELAY_NORMAL
+    private final float GRAVITY_CUTOFF = 0.3f; // Hz
+    private final GravitySeparator gravity = new GravitySeparator(NOMINAL_SAMPLE_RATE, GRAVITY_CUTOFF);
+    // The requested rate is only a hint, the filters follow the measured one
+    private final int RATE_UPDATE_SAMPLES = 64;
+    // Body motion with gravity removed, orientation independent
+    private final AccelSampleBuffer linearSamples = new AccelSampleBuffer(SAMPLE_BUFFER_CAPACITY);
+    // Linear acceleration, m/s^2, that counts as hitting the floor after a free fall,
+    // until the adaptive threshold is calibrated
+    private final float DEFAULT_IMPACT_THRESHOLD = 15f;
+    private float impactThreshold = DEFAULT_IMPACT_THRESHOLD;
+    private final long IMPACT_WINDOW_NANOS = 1000 * 1000000L;
+    // Confidence in a free fall that no impact followed
+    private final float FREE_FALL_ONLY_SCORE = 0.6f;
+    // Start of the free fall still waiting for its impact, -1 if none
+    private long freeFallNanos = -1;
+    // Measured on sample timestamps, so the same at any sensor rate
+    private final long FALL_CONFIRM_NANOS = 60 * 1000000L;
+    private final long FALL_RELEASE_NANOS = 30 * 1000000L;
+    private final DurationDebouncer freeFall = new DurationDebouncer(FALL_CONFIRM_NANOS, FALL_RELEASE_NANOS);
+    // Sensor timestamps are elapsedRealtimeNanos on most devices but not all. Measured on
+    // the first event after each resume, a difference under the tolerance is delivery delay
+    final long SENSOR_CLOCK_TOLERANCE_NANOS = 1000 * 1000000L;
+    private long sensorClockOffset;
+    private boolean sensorClockMeasured;
 
     CountDownTimer contactTimer;
     private boolean contactRunning;
@@ -91,6 +133,42 @@ public class MainActivity extends AppCompatActivity {
 
     final int DELAY = (L - 1) / 2;
     final double CMF_TH = 1.6e7;
+    final int READ_SIZE = 4000; // samples per audio frame, ~90 ms
+    final long IMPACT_REFRACTORY_NANOS = 1000 * 1000000L;
+    // Body thuds are mostly below 250 Hz, water and slams spread higher
+    final float[] AUDIO_BANDS_HZ = {0, 250, 1000, 4000, SAMPLE_RATE / 2f};
+    // An impact scores fully with half its power below 250 Hz and a sudden onset,
+    // hiss and water score less
+    final double THUD_LOW_BAND_FRACTION = 0.5;
+    final double THUD_RELATIVE_FLUX = 0.5;
+    // Quiet or high pitched frames skip the spectral and median filter stages
+    final double GATE_MIN_ENERGY = CMF_TH / 4;
+    final float GATE_MAX_CROSSING_RATE = 0.1f;
+    // Background level over the last ~3 s (4 x 8 frames), for showers, fans and faucets
+    final int NOISE_SUBWINDOW_FRAMES = 8;
+    final int NOISE_SUBWINDOWS = 4;
+    final double NOISE_SMOOTHING = 0.5;
+    final double NOISE_BIAS = 1.2;
+    // Thresholds as multiples of the floor, CMF_TH and GATE_MIN_ENERGY stay the minimum
+    final double BURST_FLOOR_RATIO = 20;
+    final double GATE_FLOOR_RATIO = 5;
+    private AcousticImpactDetector impactDetector;
+    private AudioEngine audioEngine;
+    // Pulse, relative to the burst threshold, at which a thud counts as certain
+    final double FULL_SCORE_RATIO = 4;
+
+    // The thud follows the start of the free fall by well under a second
+    final long CORRELATION_WINDOW_NANOS = 1500 * 1000000L;
+    final int CORRELATION_CAPACITY = 8;
+    final float CORRELATION_THRESHOLD = 0.5f;
+    private EventCorrelator correlator;
+
+    // Audio kept around a confirmed fall for the caregiver
+    final float INCIDENT_PRE_SECONDS = 10f;
+    final float INCIDENT_POST_SECONDS = 5f;
+    final String INCIDENT_DIRECTORY = "incidents";
+    private ExecutorService incidentExecutor;
+    private IncidentRecorder incidentRecorder;
 
     final String CONTACT_FILENAME = "EmContact_number_and_address.txt";
     String number = null;
@@ -117,26 +195,31 @@ public class MainActivity extends AppCompatActivity {
         // Gets recording permissions
         requestPermissions(new String[]{Manifest.permission.RECORD_AUDIO, Manifest.permission.SEND_SMS, Manifest.permission.RECEIVE_SMS}, 0);
 
-        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-
-        accelSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-
-        // Gets recording parameters
-//        int minSize = AudioRecord.getMinBufferSize(
-//                SAMPLE_RATE,
-//                AudioFormat.CHANNEL_IN_MONO,
-//                AudioFormat.ENCODING_PCM_16BIT
-//        );
-//        Log.d("Recording", "buffer size is " + minSize);
-//        recorder = new AudioRecord.Builder()
-//                .setAudioSource(MediaRecorder.AudioSource.MIC)
-//                .setAudioFormat(new AudioFormat.Builder()
-//                        .setSampleRate(SAMPLE_RATE)
-//                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
-//                        .setChannelMask(AudioFormat.CHANNEL_IN_MONO)
-//                        .build())
-//                .setBufferSizeInBytes(4 * minSize)
-//                .build();
+        sensorSessions = SensorSessionManager.getInstance(this);
+
+        accelSensor = sensorSessions.getSensorManager().getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        loadThresholdState();
+
+        correlator = new EventCorrelator(CORRELATION_WINDOW_NANOS, CORRELATION_CAPACITY,
+                CORRELATION_THRESHOLD, correlatorListener);
+        correlator.setAvailable(EventCorrelator.ACCELEROMETER, accelSensor != null);
+
+        impactDetector = new AcousticImpactDetector(L, CMF_TH, THRESHOLD, IMPACT_REFRACTORY_NANOS, impactListener);
+        impactDetector.setSpectralFeatures(new SpectralFeatures(READ_SIZE, SAMPLE_RATE, AUDIO_BANDS_HZ),
+                THUD_LOW_BAND_FRACTION, THUD_RELATIVE_FLUX);
+        // Stays open long enough for the median filter to report the burst
+        AudioGate gate = new AudioGate(GATE_MIN_ENERGY, GATE_MAX_CROSSING_RATE, L, L);
+        gate.setFloorRatio(GATE_FLOOR_RATIO);
+        impactDetector.setGate(gate);
+        impactDetector.setNoiseFloor(new NoiseFloorTracker(NOISE_SUBWINDOW_FRAMES, NOISE_SUBWINDOWS,
+                NOISE_SMOOTHING, NOISE_BIAS), BURST_FLOOR_RATIO);
+        audioEngine = new AudioEngine(SAMPLE_RATE, READ_SIZE, impactDetector);
+        audioEngine.setListener(new AudioEngine.Listener() {
+            public void onCaptureStopped() {
+                correlator.setAvailable(EventCorrelator.AUDIO, false);
+            }
+        });
+        startIncidentRecorder();
 
         //gets audiotrack
         audioTrack = new AudioTrack.Builder()
@@ -202,184 +285,229 @@ public class MainActivity extends AppCompatActivity {
                 }.start();
             }
         };
+    }
 
+    public void onResume() {
+        super.onResume();
+        sensorClockMeasured = false;
+        // Does nothing if still subscribed from an earlier resume
+        boolean sampling = sensorSessions.acquire(accelSensor, SensorManager.SENSOR_DELAY_NORMAL, accelListener);
+        if (!sampling) {
+            Log.d("SensorSessions", "Accelerometer not available");
+        }
+        // Without an accelerometer the microphone has to decide alone
+        correlator.setAvailable(EventCorrelator.ACCELEROMETER, sampling);
+        // Fails until RECORD_AUDIO is granted, the next resume tries again
+        boolean listening = audioEngine.start();
+        if (!listening) {
+            Log.d("Audio", "Audio detection not running");
+        }
+        // Without a microphone the accelerometer has to decide alone
+        correlator.setAvailable(EventCorrelator.AUDIO, listening);
+    }
 
-//        scheduleDetection();
+    @Override
+    public void onPause() {
+        super.onPause();
+        saveThresholdState();
+        // In the background the microphone only records silence, it cannot confirm a fall
+        correlator.setAvailable(EventCorrelator.AUDIO, false);
+        Log.d("SensorSessions", sensorSessions.describe());
+        Log.d("Correlator", correlator.describe());
+        Log.d("Audio", impactDetector.describe());
     }
 
-//    public void scheduleDetection() {
-//        detectionHandle = scheduler.schedule(detector, -1, MILLISECONDS);
-//    }
-
-//    public void detection() {
-////        int bufferSize = AudioRecord.getMinBufferSize(44100, AudioFormat.CHANNEL_IN_STEREO, AudioFormat.ENCODING_PCM_16BIT);
-//        recorder.startRecording();
-//        while (true) {
-//            final short[] buffer = new short[READ_SIZE];
-//            try {
-//
-//                // Read until buffer is full
-//                int offset = 0;
-//                int length = buffer.length;
-//                int read;
-//                while (length > 0) {
-//                    read = recorder.read(buffer, offset, length);
-//                    length -= read;
-//                    offset += read;
-//                }
-////                recorder.stop();
-//            } catch (Exception e) {
-//                Log.d("In thread", e.toString());
-////                recorder.stop();
-//            }
-//
-//            // Calculates power over recording
-//            double e = 0;
-//            Random r = new Random();
-//            for (int i = 0; i < READ_SIZE; i++) {
-////                buffer[i] += 2000;
-////                double signal = buffer[i] + r.nextGaussian() * GAUSSIAN_SCALE;
-//                double signal = buffer[i];
-//                e += signal * signal;
-//            }
-//            e /= READ_SIZE;
-////            e = Math.sqrt(e);
-//            Log.d("energy_value", Double.toString(e));
-//
-//            // Add power to current window and update min/max
-//            window.add(e);
-//            sortedWindow.add(e);
-//            reversedSortedWindow.add(-e);
-//            int index = Collections.binarySearch(median_list, e);
-//            if (index < 0) {
-//                index = -index - 1;
-//            }
-//            median_list.add(index, e);
-//
-//            // Remove from window if larger than L
-//            if (window.size() > L) {
-//                double temp = window.remove();
-//                sortedWindow.remove(temp);
-//                reversedSortedWindow.remove(-temp);
-//                index = Collections.binarySearch(median_list, temp);
-//                if (index < 0) {
-//                    Log.d("WTF", "binary search on doubles went really wrong, want " + temp + " got " + median_list.get(index));
-//                    index = -index - 1;
-//                }
-//                median_list.remove(index);
-//            }
-//
-//            // Calculates average and variance and cut-offs.
-//            if (window.size() == L) {
-//                // Median method
-//                // TODO: Use a different L for medians or something so that we can get median detection and find pulses.
-//                double median = median_list.size() % 2 == 0
-//                        ? (median_list.get(median_list.size() / 2) + median_list.get(median_list.size() / 2 + 1)) / 2
-//                        : median_list.get((median_list.size() / 2));
-//
-//                double energyDelayed = window.get(window.size() - 1 - DELAY);
-//                double cmfk = Math.abs(median - energyDelayed) > CMF_TH
-//                        ? median
-//                        : energyDelayed;
-//
-//                double pk = energyDelayed - cmfk;
-//
-//                Log.d("condition_median_filter", "median=" + median + " energyDelayed=" + energyDelayed + " cmfk=" + cmfk + " pk=" + pk);
-//
-//                if (pk > 0.1) {
-//                    Log.d("alert_above_thresh", pk + " is above threshold");
-//                }
-//
-//
-//                // Variance method
-//                // Calculates normalized energy
-////                double minimum = sortedWindow.peek();
-////                double maximum = -reversedSortedWindow.peek();
-////                double[] normalizedEnergy = new double[L];
-////                int i = 0;
-////                double diff = maximum - minimum;
-////                double sum = 0;
-////                for (Double eWin : window) {
-////                    normalizedEnergy[i] = (eWin - minimum) / diff;
-////                    if (i != window.size() - 1)
-////                        sum += normalizedEnergy[i];
-////                    i += 1;
-////                }
-////                double average = sum / (L - 1);
-////
-//////                Log.d("maximum", Double.toString(maximum));
-////
-////                // variance calculations
-////                double variance = 0.0;
-////                double temp;
-////                for (i = 0; i < L - 1; i++) {
-////                    temp = normalizedEnergy[i] - average;
-////                    variance += temp * temp;
-////                }
-////                variance /= (L - 1);
-////                Log.d("average_normalized_variance", average + " " + variance);
-////                if (variance < THRESHOLD) {
-//////                    changeText("alert");
-////                    Log.d("alert_below_thresh", variance + " is below threshold");
-////                } else {
-//////                    changeText("no_alert");
-////                }
-//
-//                // TODO: Fall detected
-//                // TODO: Accelerometer
-//                boolean fallDetected = false;
-//
-//                // Starts timer to contact emergency contact
-//                // Changes text of the fall detection status
-//                // Starts contact timers after
-//                if (fallDetected && !(contactRunning | emergencyRunning)) {
-//                    Log.d("What", "Does it even get in here");
-//                    Log.d("Does it set", "set");
-//                    contactRunning = true;
-//                    Log.d("Nani, fam", "nani");
-//                    contactTimer.start();
-//                    Log.d("What the fuck", "Timer");
-//                }
-//            }
-//        }
-//    }
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        sensorSessions.release(accelListener);
+        audioEngine.stop();
+        incidentExecutor.shutdown();
+    }
 
-    public void onResume() {
-        super.onResume();
-        sensorManager.registerListener(accelListener, accelSensor, SensorManager.SENSOR_DELAY_NORMAL);
+    /**
+     * Keeps recent audio and encodes clips of confirmed falls off the capture thread.
+     */
+    private void startIncidentRecorder() {
+        incidentExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "IncidentClips");
+            }
+        });
+        incidentRecorder = new IncidentRecorder(SAMPLE_RATE, INCIDENT_PRE_SECONDS, INCIDENT_POST_SECONDS,
+                new File(getExternalFilesDir(null), INCIDENT_DIRECTORY), incidentExecutor,
+                new IncidentRecorder.Listener() {
+                    public void onClipSaved(File file) {
+                        Log.d("Incident", "Saved " + file + ", " + file.length() + " bytes");
+                    }
+                });
+        audioEngine.setIncidentRecorder(incidentRecorder);
     }
 
+    /**
+     * Starts the contact countdown unless one is running. Call on the main thread.
+     */
+    private void onFallDetected() {
+        if (!(contactRunning | emergencyRunning)) {
+            contactRunning = true;
+            contactTimer.start();
+        }
+    }
+
+    // Candidates are correlated on the sensor and audio threads, alerts are raised on the main thread
+    private final Runnable correlatedFall = new Runnable() {
+        public void run() {
+            onFallDetected();
+        }
+    };
+
+    private final EventCorrelator.Listener correlatorListener = new EventCorrelator.Listener() {
+        public void onCorrelatedFall(long accelNanos, long audioNanos, float score) {
+            Log.d("Correlator", "Fall detected!!!!! accelerometer " + accelNanos + " audio " + audioNanos
+                    + " score " + score);
+            if (audioEngine.isRunning()) {
+                incidentRecorder.trigger("fall_" + System.currentTimeMillis());
+            }
+            runOnUiThread(correlatedFall);
+        }
+    };
+
+    private final AcousticImpactDetector.Listener impactListener = new AcousticImpactDetector.Listener() {
+        public void onImpact(long timestampNanos, double pulse) {
+            double spectralScore = impactDetector.getImpactSpectralScore();
+            Log.d("Audio", "Impact at " + timestampNanos + ", " + pulse + " above median, low band "
+                    + impactDetector.getImpactBandFraction(0) + ", flux " + impactDetector.getImpactFlux()
+                    + ", spectral score " + spectralScore);
+            // Audio frames are stamped with elapsedRealtimeNanos, sensor events are converted to it
+            double fullScore = FULL_SCORE_RATIO * impactDetector.getBurstThreshold();
+            correlator.add(EventCorrelator.AUDIO, timestampNanos,
+                    (float) (Math.min(1, pulse / fullScore) * spectralScore));
+        }
+
+        public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+            Log.d("alert_below_thresh", normalizedVariance + " is below threshold");
+        }
+    };
+
     // TODO: Do something with the accelerometer
     public SensorEventListener accelListener = new SensorEventListener() {
         public void onAccuracyChanged(Sensor sensor, int acc) {
         }
 
         public void onSensorChanged(SensorEvent event) {
-//            double[] copy = new double[3];
-            double length = 0.0;
-            for (int i = 0; i < 3; i++) {
-//                copy[i] = event.values[i];
-                length += event.values[i] * event.values[i];
+            long nanos = toElapsedRealtime(event.timestamp);
+            // Keep the sample around so detectors can look back in time
+            float lengthSq = samples.add(event.timestamp,
+                    event.values[0], event.values[1], event.values[2]);
+            if (samples.count() % RATE_UPDATE_SAMPLES == 0) {
+                updateSampleRate();
             }
-            length = Math.sqrt(length);
-//            Log.d("Accelerometer", Arrays.toString(event.values) + " length: " + length);
-            // TODO: Do something
-            if (length < ACCEL_THRESHOLD) {
-                boolean fallDetected = true;
-                fallCount += 1;
-                Log.d("Accelerometer", "Fall detected!!!!!");
-                // If falling motion is consecutive
-                // TODO: Make it adaptive
-                if (fallCount > 0 && !(contactRunning | emergencyRunning)) {
-                    contactRunning = true;
-                    contactTimer.start();
-                }
-            } else {
-                fallCount = 0;
+            gravity.process(event.values[0], event.values[1], event.values[2]);
+            linearSamples.add(event.timestamp, gravity.linearX, gravity.linearY, gravity.linearZ);
+//            Log.d("Accelerometer", Arrays.toString(event.values) + " lengthSq: " + lengthSq);
+            boolean wasFalling = freeFall.isActive();
+            if (!wasFalling && freeFallNanos < 0) {
+                learn((float) Math.sqrt(lengthSq));
+            }
+            // Falling, the body accelerates towards the ground at nearly g and the phone
+            // feels less than the free-fall threshold along gravity, however it is held
+            boolean falling = gravity.linearAlongGravity() < freeFallThreshold - gravity.gravityMagnitude();
+            // If falling motion lasts long enough
+            if (freeFall.update(event.timestamp, falling) && !wasFalling) {
+                Log.d("Accelerometer", "Free fall at " + event.timestamp);
+                // The debouncer confirms the fall late, it started when the raw signal first dropped
+                freeFallNanos = toElapsedRealtime(freeFall.getActiveSinceNanos());
+            }
+            if (freeFallNanos < 0) {
+                return;
+            }
+            if (gravity.linearMagnitudeSquared() > impactThreshold * impactThreshold) {
+                Log.d("Accelerometer", "Impact at " + event.timestamp);
+                correlator.add(EventCorrelator.ACCELEROMETER, nanos, 1f);
+                freeFallNanos = -1;
+            } else if (nanos - freeFallNanos > IMPACT_WINDOW_NANOS) {
+                correlator.add(EventCorrelator.ACCELEROMETER, freeFallNanos, FREE_FALL_ONLY_SCORE);
+                freeFallNanos = -1;
             }
         }
     };
 
+    /**
+     * Teaches the adaptive threshold everyday activity, and takes over its thresholds
+     * once it is calibrated. Only called outside fall candidates.
+     */
+    private void learn(float magnitude) {
+        adaptiveThreshold.onSample(magnitude);
+        if (adaptiveThreshold.sampleCount() % THRESHOLD_UPDATE_INTERVAL != 0 || !adaptiveThreshold.isCalibrated()) {
+            return;
+        }
+        freeFallThreshold = adaptiveThreshold.freeFallThreshold();
+        // The learned impact is on the raw magnitude, the impact test on linear acceleration
+        impactThreshold = adaptiveThreshold.impactThreshold() - gravity.gravityMagnitude();
+    }
+
+    /**
+     * Restores what the adaptive threshold learned in earlier runs, if anything.
+     */
+    private void loadThresholdState() {
+        File f = new File(getFilesDir(), THRESHOLD_STATE_FILENAME);
+        if (!f.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            adaptiveThreshold.readFrom(in);
+            in.close();
+        } catch (IOException e) {
+            Log.e("Exception", "Threshold state read failed: " + e.toString());
+            adaptiveThreshold.reset();
+        }
+    }
+
+    private void saveThresholdState() {
+        File f = new File(getFilesDir(), THRESHOLD_STATE_FILENAME);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+            adaptiveThreshold.writeTo(out);
+            out.close();
+        } catch (IOException e) {
+            Log.e("Exception", "Threshold state write failed: " + e.toString());
+        }
+    }
+
+    /**
+     * Retunes the gravity filters to the rate sensor events actually arrive at.
+     */
+    private void updateSampleRate() {
+        int n = samples.size();
+        if (n < 2) {
+            return;
+        }
+        long span = samples.latestTimestamp() - samples.timestampAt(samples.oldestSequence());
+        if (span > 0) {
+            gravity.setSampleRate((n - 1) * 1e9f / span);
+        }
+    }
+
+    /**
+     * Puts a sensor timestamp on the elapsedRealtimeNanos clock the audio frames use.
+     */
+    private long toElapsedRealtime(long sensorNanos) {
+        if (!sensorClockMeasured) {
+            sensorClockOffset = SystemClock.elapsedRealtimeNanos() - sensorNanos;
+            if (Math.abs(sensorClockOffset) < SENSOR_CLOCK_TOLERANCE_NANOS) {
+                sensorClockOffset = 0;
+            }
+            sensorClockMeasured = true;
+        }
+        return sensorNanos + sensorClockOffset;
+    }
+
     /**
      * Cancels the alert
      */
@@ -0,0 +1,388 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Finds thuds in a stream of audio frames: frames whose energy jumps well above the
+ * median energy of the frames around them.
+ * <p>
+ * Each frame's mean square amplitude goes through a {@link ConditionalMedianFilter}; a
+ * positive pulse from it is an impact. Impacts closer together than the refractory
+ * period are reported once.
+ * <p>
+ * Every frame also gets the normalized variance test: the frames before it are scaled
+ * to [0, 1] by the minimum and maximum of the whole window, the newest frame included,
+ * and their variance is taken. It is near zero only when the newest frame is far louder
+ * than everything before it, which is reported as an isolated burst. {@link WindowStats}
+ * makes this constant time per frame.
+ * <p>
+ * With {@link #setSpectralFeatures} every frame is also analysed for band energies and
+ * spectral flux, and the values for an impact's frame can be read while it is reported,
+ * together with {@link #getImpactSpectralScore} which weighs them into how much the
+ * frame sounds like a body hitting the floor.
+ * <p>
+ * With {@link #setGate} an {@link AudioGate} sees every frame first, and the spectral,
+ * median and variance stages only run while it is open. When it opens they are caught
+ * up on the energies of the frames it held back, so their windows are complete. Frames
+ * replayed this way have no spectral features, and the spectral stage starts afresh so
+ * its flux only ever compares adjacent frames. Time spent in each stage is counted for
+ * {@link #describe}.
+ * <p>
+ * With {@link #setNoiseFloor} the burst threshold follows the background noise: it is
+ * a multiple of the noise floor, or the configured threshold if that is higher, so a
+ * running shower raises the bar instead of setting off every frame. The normalized
+ * variance test is relative to the window already and needs no adjusting.
+ * <p>
+ * Frames are read straight from the caller's buffer and no state is allocated after
+ * construction.
+ */
+public final class AcousticImpactDetector {
+
+    /**
+     * Receives impacts, on the thread that feeds the detector.
+     */
+    public interface Listener {
+        /**
+         * @param timestampNanos start of the loud frame, on the clock the frames were stamped with
+         * @param pulse          how far its energy stood above the median
+         */
+        void onImpact(long timestampNanos, double pulse);
+
+        /**
+         * @param timestampNanos     start of the loud frame
+         * @param normalizedVariance variance of the frames before it, scaled to the window range
+         */
+        void onIsolatedBurst(long timestampNanos, double normalizedVariance);
+    }
+
+    private final ConditionalMedianFilter filter;
+    private final double burstThreshold;
+    private NoiseFloorTracker noiseFloor;
+    private double burstFloorRatio;
+    // The window minus its newest frame
+    private final WindowStats history;
+    private final double varianceThreshold;
+    private final long refractoryNanos;
+    private final Listener listener;
+    // Frame timestamps in step with the filter window
+    private final long[] timestamps;
+    private int next;
+    // Spectral features in step with the timestamps, while enabled
+    private SpectralFeatures spectrum;
+    private double[][] frameBands;
+    private double[] frameFlux;
+    private double[] frameRelativeFlux;
+    private double thudLowBandFraction;
+    private double thudRelativeFlux;
+    private int impactSlot = -1;
+    private AudioGate gate;
+
+    // Per stage time on the capture thread, readable from other threads
+    private volatile long frames;
+    private volatile long analysedFrames;
+    private volatile long gateNanos;
+    private volatile long spectralNanos;
+    private volatile long filterNanos;
+    private long lastImpact = Long.MIN_VALUE;
+    private double normalizedVariance = Double.NaN;
+
+    /**
+     * @param medianLength      frames in the median and variance windows, at least 2
+     * @param burstThreshold    energy above the median that makes a frame a burst
+     * @param varianceThreshold normalized variance below which the newest frame is an isolated burst
+     * @param refractoryNanos   shortest time between two reported impacts
+     */
+    public AcousticImpactDetector(int medianLength, double burstThreshold, double varianceThreshold,
+                                  long refractoryNanos, Listener listener) {
+        if (medianLength < 2) {
+            throw new IllegalArgumentException("window must hold at least 2 frames: " + medianLength);
+        }
+        filter = new ConditionalMedianFilter(medianLength, burstThreshold);
+        this.burstThreshold = burstThreshold;
+        history = new WindowStats(medianLength - 1);
+        this.varianceThreshold = varianceThreshold;
+        timestamps = new long[medianLength];
+        this.refractoryNanos = refractoryNanos;
+        this.listener = listener;
+    }
+
+    /**
+     * @return mean square of the samples, in squared PCM units
+     */
+    public static double energy(short[] samples, int offset, int length) {
+        long sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int s = samples[i];
+            sum += s * s;
+        }
+        return (double) sum / length;
+    }
+
+    public void onFrame(long timestampNanos, short[] samples, int offset, int length) {
+        frames++;
+        long start = System.nanoTime();
+        double energy;
+        if (gate != null) {
+            boolean open = gate.process(timestampNanos, samples, offset, length);
+            trackNoise(gate.energy());
+            gateNanos += System.nanoTime() - start;
+            if (!open) {
+                return;
+            }
+            if (gate.justOpened()) {
+                if (spectrum != null) {
+                    // The last analysed frame is from before the gate closed
+                    spectrum.reset();
+                }
+                catchUp();
+            }
+            energy = gate.energy();
+        } else {
+            energy = energy(samples, offset, length);
+            trackNoise(energy);
+        }
+        analysedFrames++;
+
+        start = System.nanoTime();
+        if (spectrum != null) {
+            double[] bands = frameBands[next];
+            if (length == spectrum.frameLength()) {
+                spectrum.process(samples, offset);
+                for (int b = 0; b < bands.length; b++) {
+                    bands[b] = spectrum.bandFraction(b);
+                }
+                frameFlux[next] = spectrum.flux();
+                frameRelativeFlux[next] = spectrum.relativeFlux();
+            } else {
+                noFeatures(next);
+            }
+            long end = System.nanoTime();
+            spectralNanos += end - start;
+            start = end;
+        }
+        analyse(timestampNanos, energy);
+        filterNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Runs every frame through {@code gate} first, or none if null. Call before frames arrive.
+     */
+    public void setGate(AudioGate gate) {
+        this.gate = gate;
+    }
+
+    public AudioGate getGate() {
+        return gate;
+    }
+
+    /**
+     * Feeds every frame's energy, gated or not, to {@code tracker} and keeps the burst
+     * threshold at {@code burstRatio} times the floor, never below the configured one.
+     * The gate, if any, follows the floor too. Call before frames arrive.
+     */
+    public void setNoiseFloor(NoiseFloorTracker tracker, double burstRatio) {
+        noiseFloor = tracker;
+        burstFloorRatio = burstRatio;
+    }
+
+    /**
+     * @return current noise floor, or NaN without a tracker or before the first frame
+     */
+    public double getNoiseFloor() {
+        return noiseFloor == null ? Double.NaN : noiseFloor.floor();
+    }
+
+    /**
+     * @return energy above the median that currently makes a frame a burst
+     */
+    public double getBurstThreshold() {
+        return filter.threshold();
+    }
+
+    private void trackNoise(double energy) {
+        if (noiseFloor == null) {
+            return;
+        }
+        double floor = noiseFloor.add(energy);
+        if (Double.isNaN(floor)) {
+            return;
+        }
+        filter.setThreshold(Math.max(burstThreshold, burstFloorRatio * floor));
+        if (gate != null) {
+            gate.onNoiseFloor(floor);
+        }
+    }
+
+    /**
+     * Feeds the energies the gate held back through the median and variance stages.
+     */
+    private void catchUp() {
+        for (int age = gate.historySize() - 1; age >= 0; age--) {
+            if (spectrum != null) {
+                noFeatures(next);
+            }
+            analyse(gate.historyTimestamp(age), gate.historyEnergy(age));
+        }
+    }
+
+    private void noFeatures(int slot) {
+        double[] bands = frameBands[slot];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = Double.NaN;
+        }
+        frameFlux[slot] = Double.NaN;
+        frameRelativeFlux[slot] = Double.NaN;
+    }
+
+    /**
+     * @return gate and per-stage cost summary, approximate when called off the capture thread
+     */
+    public String describe() {
+        long n = frames;
+        long analysed = analysedFrames;
+        StringBuilder sb = new StringBuilder();
+        sb.append("frames=").append(n).append(" analysed=").append(analysed);
+        if (gate != null) {
+            sb.append(String.format(" gate open %.1f%%, %.1f opens/h, %.1f closes/h",
+                    100 * gate.openFraction(), gate.opensPerHour(), gate.closesPerHour()));
+            sb.append(String.format(" gate %.1f us/frame", n == 0 ? 0 : gateNanos / 1e3 / n));
+        }
+        if (spectrum != null) {
+            sb.append(String.format(" spectral %.1f us/frame", analysed == 0 ? 0 : spectralNanos / 1e3 / analysed));
+        }
+        sb.append(String.format(" filter %.1f us/frame", analysed == 0 ? 0 : filterNanos / 1e3 / analysed));
+        if (noiseFloor != null) {
+            sb.append(String.format(" noise floor %.3g burst threshold %.3g", noiseFloor.floor(), filter.threshold()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Analyses every frame of matching length with {@code features}, or stops if null.
+     * Call before frames arrive.
+     *
+     * @param thudLowBandFraction share of an impact frame's power in band 0 at which it
+     *                            sounds fully like a thud, 0 to ignore the bands
+     * @param thudRelativeFlux    relative spectral flux at which an impact frame starts
+     *                            abruptly enough to be a thud, 0 to ignore the flux
+     */
+    public void setSpectralFeatures(SpectralFeatures features, double thudLowBandFraction, double thudRelativeFlux) {
+        spectrum = features;
+        this.thudLowBandFraction = thudLowBandFraction;
+        this.thudRelativeFlux = thudRelativeFlux;
+        if (features != null) {
+            frameBands = new double[timestamps.length][features.bandCount()];
+            frameFlux = new double[timestamps.length];
+            frameRelativeFlux = new double[timestamps.length];
+        }
+    }
+
+    /**
+     * @return share of the reported impact frame's power in band {@code b}, or NaN
+     * without spectral features. Valid during {@link Listener#onImpact}.
+     */
+    public double getImpactBandFraction(int b) {
+        return spectrum == null || impactSlot < 0 ? Double.NaN : frameBands[impactSlot][b];
+    }
+
+    /**
+     * @return spectral flux of the reported impact frame, or NaN without spectral
+     * features. Valid during {@link Listener#onImpact}.
+     */
+    public double getImpactFlux() {
+        return spectrum == null || impactSlot < 0 ? Double.NaN : frameFlux[impactSlot];
+    }
+
+    /**
+     * @return how much the reported impact frame sounds like a thud, in [0, 1]: the
+     * product of its low band share and its relative flux, each scaled to the level set in
+     * {@link #setSpectralFeatures} and capped at 1. A feature the frame lacks counts as 1,
+     * so without spectral features this is 1. Valid during {@link Listener#onImpact}.
+     */
+    public double getImpactSpectralScore() {
+        if (spectrum == null || impactSlot < 0) {
+            return 1;
+        }
+        return ratio(frameBands[impactSlot][0], thudLowBandFraction)
+                * ratio(frameRelativeFlux[impactSlot], thudRelativeFlux);
+    }
+
+    private static double ratio(double value, double full) {
+        return Double.isNaN(value) || full <= 0 ? 1 : Math.min(1, value / full);
+    }
+
+    /**
+     * Runs the median and variance stages on a frame energy computed elsewhere,
+     * bypassing the gate and spectral stages.
+     */
+    public void onEnergy(long timestampNanos, double energy) {
+        trackNoise(energy);
+        analyse(timestampNanos, energy);
+    }
+
+    private void analyse(long timestampNanos, double energy) {
+        timestamps[next] = timestampNanos;
+        next = next + 1 == timestamps.length ? 0 : next + 1;
+        checkVariance(timestampNanos, energy);
+        if (!filter.add(energy)) {
+            return;
+        }
+        double pulse = filter.pulse();
+        if (pulse <= 0) {
+            return;
+        }
+        int i = next - 1 - filter.delay();
+        if (i < 0) {
+            i += timestamps.length;
+        }
+        long t = timestamps[i];
+        if (lastImpact != Long.MIN_VALUE && t - lastImpact < refractoryNanos) {
+            return;
+        }
+        lastImpact = t;
+        impactSlot = i;
+        listener.onImpact(t, pulse);
+    }
+
+    private void checkVariance(long timestampNanos, double energy) {
+        if (!history.isFull()) {
+            history.add(energy);
+            return;
+        }
+        double range = Math.max(history.max(), energy) - Math.min(history.min(), energy);
+        // NaN for a window of identical frames, which fails the test below
+        normalizedVariance = history.variance() / (range * range);
+        history.add(energy);
+        if (normalizedVariance < varianceThreshold) {
+            listener.onIsolatedBurst(timestampNanos, normalizedVariance);
+        }
+    }
+
+    /**
+     * @return normalized variance for the newest frame, NaN until the window is full
+     */
+    public double getNormalizedVariance() {
+        return normalizedVariance;
+    }
+
+    public ConditionalMedianFilter getFilter() {
+        return filter;
+    }
+
+    public void reset() {
+        filter.reset();
+        history.reset();
+        if (spectrum != null) {
+            spectrum.reset();
+        }
+        if (gate != null) {
+            gate.reset();
+        }
+        if (noiseFloor != null) {
+            noiseFloor.reset();
+        }
+        filter.setThreshold(burstThreshold);
+        impactSlot = -1;
+        normalizedVariance = Double.NaN;
+        next = 0;
+        lastImpact = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.bathroomfalldetection.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Captures microphone audio on a dedicated urgent-audio thread and feeds it to an
+ * {@link AcousticImpactDetector} frame by frame.
+ * <p>
+ * The capture buffer is allocated once and reused for every frame, and reads block
+ * until a whole frame is in, so the thread sleeps between frames instead of spinning.
+ * Frames are stamped with {@code SystemClock.elapsedRealtimeNanos()} at their start,
+ * the clock sensor events use, so audio and accelerometer events can be compared. The
+ * detector's listener is called on the capture thread. An {@link IncidentRecorder}, if
+ * set, gets every frame after the detector. A {@link Listener}, if set, hears when capture
+ * ends, whether stopped or failed.
+ */
+public class AudioEngine {
+
+    private static final String TAG = "AudioEngine";
+
+    public interface Listener {
+        /**
+         * Called on the capture thread once it stops reading, after {@link #stop} or a
+         * failed read.
+         */
+        void onCaptureStopped();
+    }
+
+    private final int sampleRate;
+    private final int frameSize;
+    private final long frameNanos;
+    private final AcousticImpactDetector detector;
+    private final short[] buffer;
+    private IncidentRecorder incidents;
+    private Listener listener;
+
+    private AudioRecord recorder;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param frameSize samples per frame, the unit the detector works in
+     */
+    public AudioEngine(int sampleRate, int frameSize, AcousticImpactDetector detector) {
+        this.sampleRate = sampleRate;
+        this.frameSize = frameSize;
+        this.frameNanos = frameSize * 1000000000L / sampleRate;
+        this.detector = detector;
+        buffer = new short[frameSize];
+    }
+
+    /**
+     * Keeps recent audio for incident clips. Call before {@link #start}.
+     */
+    public synchronized void setIncidentRecorder(IncidentRecorder recorder) {
+        incidents = recorder;
+    }
+
+    /**
+     * Call before {@link #start}.
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts capturing. Does nothing if already running, and replaces a capture thread
+     * that stopped on a failed read.
+     *
+     * @return false if the microphone could not be opened, e.g. without RECORD_AUDIO
+     */
+    public synchronized boolean start() {
+        if (thread != null) {
+            if (running) {
+                return true;
+            }
+            join();
+        }
+        int minSize = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        try {
+            recorder = new AudioRecord.Builder()
+                    .setAudioSource(MediaRecorder.AudioSource.MIC)
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setSampleRate(sampleRate)
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setChannelMask(AudioFormat.CHANNEL_IN_MONO)
+                            .build())
+                    .setBufferSizeInBytes(Math.max(4 * minSize, 4 * frameSize))
+                    .build();
+        } catch (UnsupportedOperationException | SecurityException e) {
+            Log.e(TAG, "Cannot open microphone: " + e.toString());
+            recorder = null;
+            return false;
+        }
+        if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(TAG, "Microphone not initialized");
+            recorder.release();
+            recorder = null;
+            return false;
+        }
+        detector.reset();
+        if (incidents != null) {
+            incidents.reset();
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                capture();
+            }
+        }, "AudioEngine");
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops capturing and waits for the capture thread to finish.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        join();
+    }
+
+    private void join() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recorder.release();
+        recorder = null;
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void capture() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        recorder.startRecording();
+        try {
+            while (running) {
+                int offset = 0;
+                while (offset < frameSize && running) {
+                    int read = recorder.read(buffer, offset, frameSize - offset, AudioRecord.READ_BLOCKING);
+                    if (read < 0) {
+                        Log.e(TAG, "Read failed with " + read);
+                        running = false;
+                        break;
+                    }
+                    offset += read;
+                }
+                if (offset == frameSize) {
+                    long frameStart = SystemClock.elapsedRealtimeNanos() - frameNanos;
+                    detector.onFrame(frameStart, buffer, 0, frameSize);
+                    if (incidents != null) {
+                        incidents.onFrame(buffer, 0, frameSize);
+                    }
+                }
+            }
+        } finally {
+            recorder.stop();
+            if (listener != null) {
+                listener.onCaptureStopped();
+            }
+        }
+    }
+}
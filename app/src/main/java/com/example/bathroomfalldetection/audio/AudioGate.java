@@ -0,0 +1,246 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Cheap first stage of the acoustic detector: decides per frame whether anything worth
+ * analysing could be going on.
+ * <p>
+ * A frame opens the gate when its energy is high enough and its zero-crossing rate low
+ * enough. Thuds are loud and low pitched, while quiet rooms, hiss and running water
+ * fail one test or the other. Both are measured with integer arithmetic only. A sign
+ * change only counts as a crossing once the signal leaves a dead band around zero, so
+ * background noise in the quiet parts of a frame does not hide a low thud. The gate
+ * then stays open for a hold time, so the later stages can follow a burst through
+ * their own delay. While closed, the gate remembers the energies of the latest frames,
+ * so the later stages can be brought up to date the moment it opens.
+ * <p>
+ * With a floor ratio set, the energy needed to open rises to that multiple of the
+ * background noise whenever that is above the configured minimum, so steady noise such
+ * as a shower does not hold the gate open.
+ * <p>
+ * Counters may be read from any thread; everything else belongs to the capture thread.
+ */
+public final class AudioGate {
+
+    // Crossing rates are compared in 1/1024ths to stay in integers
+    private static final int RATE_SCALE = 1024;
+
+    private final double baseMinMeanSquare;
+    private final long maxCrossingRate;
+    private final int holdFrames;
+    private double floorRatio;
+    private long minMeanSquare;
+    private int deadBand;
+
+    private final long[] historyTimestamps;
+    private final double[] historyEnergies;
+    private int historyNext;
+    private int historySize;
+
+    private boolean open;
+    private boolean opened;
+    private int holdLeft;
+    private long sumSquares;
+    private int frameLength;
+
+    private volatile long frames;
+    private volatile long openFrames;
+    private volatile long opens;
+    private volatile long closes;
+    private volatile long firstTimestamp = -1;
+    private volatile long lastTimestamp;
+
+    /**
+     * @param minMeanSquare   frame energy, in squared PCM units, needed to open
+     * @param maxCrossingRate largest share of samples changing sign that still opens
+     * @param holdFrames      frames to stay open after the last frame that opened it
+     * @param historyFrames   closed frames to remember for catching up
+     */
+    public AudioGate(double minMeanSquare, float maxCrossingRate, int holdFrames, int historyFrames) {
+        baseMinMeanSquare = minMeanSquare;
+        this.maxCrossingRate = (long) (maxCrossingRate * RATE_SCALE);
+        this.holdFrames = holdFrames;
+        historyTimestamps = new long[historyFrames];
+        historyEnergies = new double[historyFrames];
+        setMinMeanSquare(minMeanSquare);
+    }
+
+    /**
+     * @param ratio multiple of the noise floor a frame needs to open the gate, 0 to ignore the floor
+     */
+    public void setFloorRatio(double ratio) {
+        floorRatio = ratio;
+    }
+
+    /**
+     * Applies the latest noise floor from a {@link NoiseFloorTracker} to the next frames.
+     */
+    public void onNoiseFloor(double floorMeanSquare) {
+        if (floorRatio > 0 && !Double.isNaN(floorMeanSquare)) {
+            setMinMeanSquare(Math.max(baseMinMeanSquare, floorRatio * floorMeanSquare));
+        }
+    }
+
+    /**
+     * @return frame energy currently needed to open
+     */
+    public double minMeanSquare() {
+        return minMeanSquare;
+    }
+
+    private void setMinMeanSquare(double value) {
+        minMeanSquare = (long) Math.ceil(value);
+        // Half the RMS amplitude of a frame just loud enough to open
+        deadBand = (int) (Math.sqrt(value) / 2);
+    }
+
+    /**
+     * @return true if the later stages should see this frame
+     */
+    public boolean process(long timestampNanos, short[] samples, int offset, int length) {
+        long sum = 0;
+        int crossings = 0;
+        // Side of the dead band the signal was last on, 0 before it first leaves it
+        int side = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int s = samples[i];
+            sum += s * s;
+            if (s > deadBand) {
+                if (side < 0) {
+                    crossings++;
+                }
+                side = 1;
+            } else if (s < -deadBand) {
+                if (side > 0) {
+                    crossings++;
+                }
+                side = -1;
+            }
+        }
+        sumSquares = sum;
+        frameLength = length;
+
+        boolean trigger = sum >= minMeanSquare * length
+                && (long) crossings * RATE_SCALE <= maxCrossingRate * length;
+        if (trigger) {
+            holdLeft = holdFrames;
+        } else if (holdLeft > 0) {
+            holdLeft--;
+        }
+        boolean wasOpen = open;
+        open = trigger || holdLeft > 0;
+        opened = open && !wasOpen;
+
+        if (firstTimestamp < 0) {
+            firstTimestamp = timestampNanos;
+        }
+        lastTimestamp = timestampNanos;
+        frames++;
+        if (open) {
+            openFrames++;
+            if (!wasOpen) {
+                opens++;
+            }
+        } else {
+            if (wasOpen) {
+                closes++;
+                historySize = 0;
+            }
+            remember(timestampNanos, energy());
+        }
+        return open;
+    }
+
+    /**
+     * @return mean square of the last frame
+     */
+    public double energy() {
+        return (double) sumSquares / frameLength;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return true if the last frame opened the gate
+     */
+    public boolean justOpened() {
+        return opened;
+    }
+
+    /**
+     * @return closed frames remembered since the gate last closed, at most the history size
+     */
+    public int historySize() {
+        return historySize;
+    }
+
+    /**
+     * @param age 0 for the newest remembered frame
+     */
+    public long historyTimestamp(int age) {
+        return historyTimestamps[historyIndex(age)];
+    }
+
+    public double historyEnergy(int age) {
+        return historyEnergies[historyIndex(age)];
+    }
+
+    public long frames() {
+        return frames;
+    }
+
+    public long opens() {
+        return opens;
+    }
+
+    public long closes() {
+        return closes;
+    }
+
+    /**
+     * @return share of frames the later stages saw
+     */
+    public double openFraction() {
+        long n = frames;
+        return n == 0 ? 0 : (double) openFrames / n;
+    }
+
+    /**
+     * @return gate openings per hour of audio
+     */
+    public double opensPerHour() {
+        return perHour(opens);
+    }
+
+    public double closesPerHour() {
+        return perHour(closes);
+    }
+
+    public void reset() {
+        open = false;
+        opened = false;
+        holdLeft = 0;
+        historySize = 0;
+        setMinMeanSquare(baseMinMeanSquare);
+    }
+
+    private double perHour(long count) {
+        long span = lastTimestamp - firstTimestamp;
+        return firstTimestamp < 0 || span <= 0 ? 0 : count * 3600e9 / span;
+    }
+
+    private void remember(long timestampNanos, double energy) {
+        historyTimestamps[historyNext] = timestampNanos;
+        historyEnergies[historyNext] = energy;
+        historyNext = historyNext + 1 == historyTimestamps.length ? 0 : historyNext + 1;
+        if (historySize < historyTimestamps.length) {
+            historySize++;
+        }
+    }
+
+    private int historyIndex(int age) {
+        int i = historyNext - 1 - age;
+        return i < 0 ? i + historyTimestamps.length : i;
+    }
+}
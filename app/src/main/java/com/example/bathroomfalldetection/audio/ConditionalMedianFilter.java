@@ -0,0 +1,100 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Conditional median filter over a sliding window of frame energies.
+ * <p>
+ * The output follows the energy of the frame in the middle of the window unless that
+ * energy is more than a threshold away from the window's median, in which case the
+ * median is output instead. The difference between the middle energy and the output,
+ * the {@link #pulse()}, is therefore zero for steady sound and the size of any short
+ * burst standing out from its surroundings.
+ * <p>
+ * The window median comes from a {@link SlidingMedian}, so a frame costs O(log length)
+ * and windows much longer than a second of frames stay cheap. Nothing is allocated.
+ */
+public final class ConditionalMedianFilter {
+
+    private final int length;
+    private final int delay;
+    private double threshold;
+    private final SlidingMedian window;
+
+    /**
+     * @param length    window length in frames, the middle frame is {@code (length - 1) / 2} back
+     * @param threshold how far from the median a frame must be to count as a burst
+     */
+    public ConditionalMedianFilter(int length, double threshold) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("length must be positive: " + length);
+        }
+        this.length = length;
+        this.delay = (length - 1) / 2;
+        this.threshold = threshold;
+        window = new SlidingMedian(length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double threshold() {
+        return threshold;
+    }
+
+    /**
+     * Changes how far from the median a frame must be to count as a burst, from the
+     * next output on.
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return how many frames old the filtered frame is when the window is full
+     */
+    public int delay() {
+        return delay;
+    }
+
+    /**
+     * Adds the next frame energy, dropping the oldest once the window is full.
+     *
+     * @return true if the window is full and the outputs are valid
+     */
+    public boolean add(double energy) {
+        window.add(energy);
+        return window.isFull();
+    }
+
+    public boolean isFull() {
+        return window.isFull();
+    }
+
+    public double median() {
+        return window.median();
+    }
+
+    /**
+     * @return energy of the frame {@link #delay()} frames back
+     */
+    public double delayed() {
+        return window.get(delay);
+    }
+
+    public double output() {
+        double median = median();
+        double delayed = delayed();
+        return Math.abs(median - delayed) > threshold ? median : delayed;
+    }
+
+    /**
+     * @return how far the delayed frame stands above the filter output, 0 for steady sound
+     */
+    public double pulse() {
+        return delayed() - output();
+    }
+
+    public void reset() {
+        window.reset();
+    }
+}
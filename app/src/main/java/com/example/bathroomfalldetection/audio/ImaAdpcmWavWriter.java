@@ -0,0 +1,175 @@
+package com.example.bathroomfalldetection.audio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams 16-bit mono PCM into an IMA-ADPCM WAV file, 4 bits per sample.
+ * <p>
+ * The file uses the standard WAV IMA-ADPCM layout (format tag 0x11) that common players
+ * decode: fixed-size blocks, each starting with the first sample and step index in the
+ * clear, followed by nibbles packed low first. The total length has to be known up front
+ * because the header comes first; the last block is padded with silence. Samples can
+ * be written in any chunk size and only one block is buffered.
+ */
+public final class ImaAdpcmWavWriter {
+
+    public static final int BLOCK_ALIGN = 1024;
+    // Header sample plus two per remaining byte
+    public static final int SAMPLES_PER_BLOCK = (BLOCK_ALIGN - 4) * 2 + 1;
+
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private final OutputStream out;
+    private final int totalSamples;
+    private final byte[] block = new byte[BLOCK_ALIGN];
+    private int written;
+    // Samples in the current block
+    private int inBlock;
+    private int predictor;
+    private int index;
+
+    /**
+     * Writes the WAV header straight away.
+     *
+     * @param totalSamples samples that will be written before {@link #finish}
+     */
+    public ImaAdpcmWavWriter(OutputStream out, int sampleRate, int totalSamples) throws IOException {
+        this.out = out;
+        this.totalSamples = totalSamples;
+        int blocks = (totalSamples + SAMPLES_PER_BLOCK - 1) / SAMPLES_PER_BLOCK;
+        int dataSize = blocks * BLOCK_ALIGN;
+        byte[] header = new byte[60];
+        int p = 0;
+        p = putTag(header, p, "RIFF");
+        p = putInt(header, p, 52 + dataSize);
+        p = putTag(header, p, "WAVE");
+        p = putTag(header, p, "fmt ");
+        p = putInt(header, p, 20);
+        p = putShort(header, p, 0x11);
+        p = putShort(header, p, 1);
+        p = putInt(header, p, sampleRate);
+        p = putInt(header, p, (int) ((long) sampleRate * BLOCK_ALIGN / SAMPLES_PER_BLOCK));
+        p = putShort(header, p, BLOCK_ALIGN);
+        p = putShort(header, p, 4);
+        p = putShort(header, p, 2);
+        p = putShort(header, p, SAMPLES_PER_BLOCK);
+        p = putTag(header, p, "fact");
+        p = putInt(header, p, 4);
+        p = putInt(header, p, totalSamples);
+        p = putTag(header, p, "data");
+        putInt(header, p, dataSize);
+        out.write(header);
+    }
+
+    public void write(short[] samples, int offset, int length) throws IOException {
+        if (written + length > totalSamples) {
+            throw new IllegalStateException("more samples than announced: " + (written + length));
+        }
+        for (int i = offset; i < offset + length; i++) {
+            encode(samples[i]);
+        }
+        written += length;
+    }
+
+    /**
+     * Pads the last block and flushes. Does not close the stream.
+     */
+    public void finish() throws IOException {
+        if (written != totalSamples) {
+            throw new IllegalStateException("wrote " + written + " of " + totalSamples + " samples");
+        }
+        while (inBlock > 0) {
+            encode(0);
+        }
+        out.flush();
+    }
+
+    private void encode(int sample) throws IOException {
+        if (inBlock == 0) {
+            // The first sample goes into the block header uncompressed
+            predictor = sample;
+            block[0] = (byte) sample;
+            block[1] = (byte) (sample >> 8);
+            block[2] = (byte) index;
+            block[3] = 0;
+            inBlock = 1;
+            return;
+        }
+        int step = STEP_TABLE[index];
+        int diff = sample - predictor;
+        int nibble = 0;
+        if (diff < 0) {
+            nibble = 8;
+            diff = -diff;
+        }
+        int delta = step >> 3;
+        if (diff >= step) {
+            nibble |= 4;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 2;
+            diff -= step;
+            delta += step;
+        }
+        step >>= 1;
+        if (diff >= step) {
+            nibble |= 1;
+            delta += step;
+        }
+        predictor += (nibble & 8) != 0 ? -delta : delta;
+        predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+        index = Math.max(0, Math.min(STEP_TABLE.length - 1, index + INDEX_TABLE[nibble]));
+
+        int byteIndex = 4 + (inBlock - 1) / 2;
+        if ((inBlock & 1) == 1) {
+            block[byteIndex] = (byte) nibble;
+        } else {
+            block[byteIndex] |= (byte) (nibble << 4);
+        }
+        inBlock++;
+        if (inBlock == SAMPLES_PER_BLOCK) {
+            out.write(block);
+            inBlock = 0;
+        }
+    }
+
+    private static int putTag(byte[] b, int p, String tag) {
+        for (int i = 0; i < 4; i++) {
+            b[p + i] = (byte) tag.charAt(i);
+        }
+        return p + 4;
+    }
+
+    private static int putInt(byte[] b, int p, int v) {
+        b[p] = (byte) v;
+        b[p + 1] = (byte) (v >> 8);
+        b[p + 2] = (byte) (v >> 16);
+        b[p + 3] = (byte) (v >> 24);
+        return p + 4;
+    }
+
+    private static int putShort(byte[] b, int p, int v) {
+        b[p] = (byte) v;
+        b[p + 1] = (byte) (v >> 8);
+        return p + 2;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.bathroomfalldetection.audio;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the last seconds of microphone audio and saves a clip around a fall.
+ * <p>
+ * The capture thread writes every frame into a fixed-size PCM ring. A {@link #trigger}
+ * asks for a clip; once the post-trigger audio has come in, the capture thread copies
+ * the ring into a second buffer of the same size, in time order, and hands it to the
+ * executor. The executor encodes it with {@link ImaAdpcmWavWriter} to a 4-bit file, so
+ * capture never waits on the encoder or on storage. Triggers while a clip is pending or
+ * being encoded are ignored. Both buffers are allocated up front, so memory use is
+ * the same however long the app runs.
+ */
+public final class IncidentRecorder {
+
+    private static final String TAG = "IncidentRecorder";
+
+    public interface Listener {
+        /**
+         * Called on the executor once a clip is written.
+         */
+        void onClipSaved(File file);
+    }
+
+    private final int sampleRate;
+    private final int postSamples;
+    private final File directory;
+    private final Executor executor;
+    private final Listener listener;
+    private final short[] ring;
+    private final short[] clip;
+    // Samples written to the ring, capture thread only
+    private long written;
+    // Ring position at which to take the clip, -1 if none, capture thread only
+    private long freezeAt = -1;
+    private int clipLength;
+
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private volatile boolean requested;
+    private String pendingName;
+
+    private final Runnable encode = new Runnable() {
+        public void run() {
+            try {
+                save();
+            } finally {
+                busy.set(false);
+            }
+        }
+    };
+
+    /**
+     * @param preSeconds  audio to keep from before the trigger
+     * @param postSeconds audio to add after the trigger
+     * @param directory   where clips are written
+     */
+    public IncidentRecorder(int sampleRate, float preSeconds, float postSeconds, File directory,
+                            Executor executor, Listener listener) {
+        this.sampleRate = sampleRate;
+        this.postSamples = Math.round(postSeconds * sampleRate);
+        this.directory = directory;
+        this.executor = executor;
+        this.listener = listener;
+        int capacity = Math.round(preSeconds * sampleRate) + postSamples;
+        ring = new short[capacity];
+        clip = new short[capacity];
+    }
+
+    /**
+     * Asks for a clip named {@code name}.wav. Any thread.
+     *
+     * @return false if a clip is already being taken
+     */
+    public boolean trigger(String name) {
+        if (!busy.compareAndSet(false, true)) {
+            return false;
+        }
+        pendingName = name;
+        requested = true;
+        return true;
+    }
+
+    /**
+     * Capture thread only.
+     */
+    public void onFrame(short[] samples, int offset, int length) {
+        while (length > 0) {
+            int at = (int) (written % ring.length);
+            int n = Math.min(length, ring.length - at);
+            System.arraycopy(samples, offset, ring, at, n);
+            offset += n;
+            length -= n;
+            written += n;
+        }
+        if (requested) {
+            requested = false;
+            freezeAt = written + postSamples;
+        }
+        if (freezeAt >= 0 && written >= freezeAt) {
+            freezeAt = -1;
+            freeze();
+            executor.execute(encode);
+        }
+    }
+
+    /**
+     * Forgets the audio in the ring, so a clip never spans a gap in capture. Call while
+     * capture is stopped.
+     */
+    public void reset() {
+        written = 0;
+        if (freezeAt >= 0) {
+            // Take the clip from the new audio instead
+            freezeAt = -1;
+            requested = true;
+        }
+    }
+
+    private void freeze() {
+        clipLength = (int) Math.min(written, ring.length);
+        int start = (int) ((written - clipLength) % ring.length);
+        int first = Math.min(clipLength, ring.length - start);
+        System.arraycopy(ring, start, clip, 0, first);
+        System.arraycopy(ring, 0, clip, first, clipLength - first);
+    }
+
+    private void save() {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Cannot create " + directory);
+            return;
+        }
+        File file = new File(directory, pendingName + ".wav");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                ImaAdpcmWavWriter writer = new ImaAdpcmWavWriter(out, sampleRate, clipLength);
+                writer.write(clip, 0, clipLength);
+                writer.finish();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e("Exception", "Incident clip write failed: " + e.toString());
+            return;
+        }
+        listener.onClipSaved(file);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Background noise level of a stream of frame energies, by minimum statistics (Martin,
+ * 2001).
+ * <p>
+ * Frame energies are smoothed and the floor is the smallest smoothed energy over the
+ * last few seconds, scaled up by a bias factor because a minimum sits below the mean of
+ * the noise. Short loud sounds such as a thud hardly move the minimum, while a shower
+ * or fan raises it once it has run for a whole window, and it drops as soon as the
+ * noise stops. The window is split into sub-windows: each frame only updates the
+ * running minimum of the current one, and the minimum over the stored sub-window minima
+ * is recomputed once per sub-window. That is O(1) per frame with memory for one value
+ * per sub-window.
+ */
+public final class NoiseFloorTracker {
+
+    private final int subWindowFrames;
+    private final double smoothing;
+    private final double bias;
+    private final double[] minima;
+    private int next;
+    private int stored;
+    private int inSubWindow;
+    private double smoothed = Double.NaN;
+    private double currentMin = Double.POSITIVE_INFINITY;
+    private double storedMin = Double.POSITIVE_INFINITY;
+
+    /**
+     * @param subWindowFrames frames per sub-window
+     * @param subWindows      sub-windows in the minimum search window
+     * @param smoothing       weight of the previous smoothed energy, in [0, 1)
+     * @param bias            factor from the minimum to the noise level, at least 1
+     */
+    public NoiseFloorTracker(int subWindowFrames, int subWindows, double smoothing, double bias) {
+        if (subWindowFrames <= 0 || subWindows <= 0) {
+            throw new IllegalArgumentException("window must be positive: " + subWindowFrames + " x " + subWindows);
+        }
+        this.subWindowFrames = subWindowFrames;
+        this.smoothing = smoothing;
+        this.bias = bias;
+        minima = new double[subWindows];
+    }
+
+    /**
+     * @param energy mean square of the next frame
+     * @return the updated floor
+     */
+    public double add(double energy) {
+        smoothed = Double.isNaN(smoothed) ? energy : smoothing * smoothed + (1 - smoothing) * energy;
+        if (smoothed < currentMin) {
+            currentMin = smoothed;
+        }
+        if (++inSubWindow == subWindowFrames) {
+            minima[next] = currentMin;
+            next = next + 1 == minima.length ? 0 : next + 1;
+            if (stored < minima.length) {
+                stored++;
+            }
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < stored; i++) {
+                min = Math.min(min, minima[i]);
+            }
+            storedMin = min;
+            currentMin = Double.POSITIVE_INFINITY;
+            inSubWindow = 0;
+        }
+        return floor();
+    }
+
+    /**
+     * @return estimated noise energy, in the units of the frame energies, or NaN before
+     * the first frame
+     */
+    public double floor() {
+        double min = Math.min(storedMin, currentMin);
+        return min == Double.POSITIVE_INFINITY ? Double.NaN : bias * min;
+    }
+
+    public void reset() {
+        next = 0;
+        stored = 0;
+        inSubWindow = 0;
+        smoothed = Double.NaN;
+        currentMin = Double.POSITIVE_INFINITY;
+        storedMin = Double.POSITIVE_INFINITY;
+    }
+}
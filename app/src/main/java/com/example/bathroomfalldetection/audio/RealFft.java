@@ -0,0 +1,131 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * In-place radix-2 FFT of real input.
+ * <p>
+ * The N real samples are treated as N/2 complex ones, transformed with an iterative
+ * complex FFT and then split into the spectrum of the real signal, which halves the work
+ * of a complex transform of the same length. The bit-reversal permutation and the
+ * twiddle factors are computed once in the constructor and shared by both steps, so a
+ * transform does no trigonometry and allocates nothing. The tables are read-only, so
+ * threads can share an instance as long as each transforms its own array.
+ */
+public final class RealFft {
+
+    private final int size;
+    private final int half;
+    // cos and sin of 2 pi k / size for k < size / 2
+    private final double[] cos;
+    private final double[] sin;
+    private final int[] reversed;
+
+    /**
+     * @param size number of real samples, a power of two of at least 4
+     */
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two of at least 4: " + size);
+        }
+        this.size = size;
+        half = size / 2;
+        cos = new double[half];
+        sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            cos[k] = Math.cos(2 * Math.PI * k / size);
+            sin[k] = Math.sin(2 * Math.PI * k / size);
+        }
+        reversed = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Replaces {@code data} with its spectrum, packed as: {@code data[0]} the DC term,
+     * {@code data[1]} the Nyquist term (both real), then the real and imaginary parts of
+     * bins 1 to size / 2 - 1 in {@code data[2k]} and {@code data[2k + 1]}.
+     */
+    public void forward(double[] data) {
+        complexTransform(data);
+
+        double r0 = data[0];
+        double i0 = data[1];
+        data[0] = r0 + i0;
+        data[1] = r0 - i0;
+        for (int k = 1; k <= half / 2; k++) {
+            int j = half - k;
+            double ar = data[2 * k];
+            double ai = data[2 * k + 1];
+            double br = data[2 * j];
+            double bi = data[2 * j + 1];
+            // Spectra of the even and odd samples
+            double er = (ar + br) / 2;
+            double ei = (ai - bi) / 2;
+            double or = (ai + bi) / 2;
+            double oi = (br - ar) / 2;
+            double wr = cos[k];
+            double wi = -sin[k];
+            double tr = wr * or - wi * oi;
+            double ti = wr * oi + wi * or;
+            data[2 * k] = er + tr;
+            data[2 * k + 1] = ei + ti;
+            data[2 * j] = er - tr;
+            data[2 * j + 1] = ti - ei;
+        }
+    }
+
+    /**
+     * Writes the squared magnitude of bins 0 to size / 2 of a spectrum packed by
+     * {@link #forward} into {@code power}.
+     */
+    public void power(double[] spectrum, double[] power) {
+        power[0] = spectrum[0] * spectrum[0];
+        power[half] = spectrum[1] * spectrum[1];
+        for (int k = 1; k < half; k++) {
+            double re = spectrum[2 * k];
+            double im = spectrum[2 * k + 1];
+            power[k] = re * re + im * im;
+        }
+    }
+
+    /**
+     * Forward complex FFT of the size / 2 interleaved complex values in {@code data}.
+     */
+    private void complexTransform(double[] data) {
+        for (int i = 0; i < half; i++) {
+            int j = reversed[i];
+            if (i < j) {
+                double t = data[2 * i];
+                data[2 * i] = data[2 * j];
+                data[2 * j] = t;
+                t = data[2 * i + 1];
+                data[2 * i + 1] = data[2 * j + 1];
+                data[2 * j + 1] = t;
+            }
+        }
+        for (int length = 2; length <= half; length <<= 1) {
+            int span = length / 2;
+            // Twiddle index step, in units of 2 pi / size
+            int stride = size / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0; j < span; j++) {
+                    double wr = cos[j * stride];
+                    double wi = -sin[j * stride];
+                    int a = 2 * (start + j);
+                    int b = a + 2 * span;
+                    double br = data[b] * wr - data[b + 1] * wi;
+                    double bi = data[b] * wi + data[b + 1] * wr;
+                    data[b] = data[a] - br;
+                    data[b + 1] = data[a + 1] - bi;
+                    data[a] += br;
+                    data[a + 1] += bi;
+                }
+            }
+        }
+    }
+}
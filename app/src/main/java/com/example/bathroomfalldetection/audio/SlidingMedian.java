@@ -0,0 +1,191 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Median of the last {@code capacity} values of a stream in O(log capacity) per value.
+ * <p>
+ * The lower half of the window sits in a max-heap and the upper half in a min-heap, so
+ * the median is at the top of one or both. The heaps hold window slots rather than
+ * values, and every slot records where it is in its heap, so the value leaving the
+ * window is removed directly instead of being marked and skipped later. Everything
+ * lives in primitive arrays sized up front: nothing is boxed or allocated per value.
+ */
+public final class SlidingMedian {
+
+    private final int capacity;
+    // Window values by slot, in arrival order
+    private final double[] values;
+    // Max-heap of the lower half and min-heap of the upper half, as slots
+    private final int[] lower;
+    private final int[] upper;
+    // Index of each slot in its heap, bitwise complemented for the upper heap
+    private final int[] position;
+    private int lowerSize;
+    private int upperSize;
+    private int count;
+    private int next;
+
+    public SlidingMedian(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        values = new double[capacity];
+        lower = new int[capacity];
+        upper = new int[capacity];
+        position = new int[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count == capacity;
+    }
+
+    /**
+     * Adds a value, dropping the oldest one once the window is full.
+     */
+    public void add(double value) {
+        if (count == capacity) {
+            remove(next);
+        } else {
+            count++;
+        }
+        values[next] = value;
+        insert(next);
+        next = next + 1 == capacity ? 0 : next + 1;
+    }
+
+    /**
+     * @param age 0 for the newest value, up to {@code size() - 1} for the oldest
+     */
+    public double get(int age) {
+        int i = next - 1 - age;
+        return values[i < 0 ? i + capacity : i];
+    }
+
+    /**
+     * @return the middle value, the mean of the two middle values for an even count,
+     * or NaN when empty
+     */
+    public double median() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double low = values[lower[0]];
+        return lowerSize > upperSize ? low : (low + values[upper[0]]) / 2;
+    }
+
+    public void reset() {
+        lowerSize = 0;
+        upperSize = 0;
+        count = 0;
+        next = 0;
+    }
+
+    private void insert(int slot) {
+        if (lowerSize == 0 || values[slot] <= values[lower[0]]) {
+            place(lower, true, lowerSize++, slot);
+            siftUp(lower, true, lowerSize - 1);
+        } else {
+            place(upper, false, upperSize++, slot);
+            siftUp(upper, false, upperSize - 1);
+        }
+        rebalance();
+    }
+
+    private void remove(int slot) {
+        int p = position[slot];
+        if (p >= 0) {
+            int last = lower[--lowerSize];
+            if (p < lowerSize) {
+                place(lower, true, p, last);
+                fix(lower, true, lowerSize, p);
+            }
+        } else {
+            p = ~p;
+            int last = upper[--upperSize];
+            if (p < upperSize) {
+                place(upper, false, p, last);
+                fix(upper, false, upperSize, p);
+            }
+        }
+        rebalance();
+    }
+
+    /**
+     * Keeps the lower half the same size as the upper half or one larger.
+     */
+    private void rebalance() {
+        if (lowerSize > upperSize + 1) {
+            int slot = lower[0];
+            place(lower, true, 0, lower[--lowerSize]);
+            siftDown(lower, true, lowerSize, 0);
+            place(upper, false, upperSize++, slot);
+            siftUp(upper, false, upperSize - 1);
+        } else if (upperSize > lowerSize) {
+            int slot = upper[0];
+            place(upper, false, 0, upper[--upperSize]);
+            siftDown(upper, false, upperSize, 0);
+            place(lower, true, lowerSize++, slot);
+            siftUp(lower, true, lowerSize - 1);
+        }
+    }
+
+    private void fix(int[] heap, boolean max, int size, int i) {
+        if (i > 0 && above(max, heap[i], heap[(i - 1) / 2])) {
+            siftUp(heap, max, i);
+        } else {
+            siftDown(heap, max, size, i);
+        }
+    }
+
+    private void siftUp(int[] heap, boolean max, int i) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!above(max, slot, heap[parent])) {
+                break;
+            }
+            place(heap, max, i, heap[parent]);
+            i = parent;
+        }
+        place(heap, max, i, slot);
+    }
+
+    private void siftDown(int[] heap, boolean max, int size, int i) {
+        int slot = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && above(max, heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!above(max, heap[child], slot)) {
+                break;
+            }
+            place(heap, max, i, heap[child]);
+            i = child;
+        }
+        place(heap, max, i, slot);
+    }
+
+    /**
+     * @return true if slot {@code a} belongs nearer the top of the heap than slot {@code b}
+     */
+    private boolean above(boolean max, int a, int b) {
+        return max ? values[a] > values[b] : values[a] < values[b];
+    }
+
+    private void place(int[] heap, boolean max, int i, int slot) {
+        heap[i] = slot;
+        position[slot] = max ? i : ~i;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Band energies and spectral flux of audio frames, for telling a body hitting the floor
+ * from running water or a door slam.
+ * <p>
+ * Each frame is Hann windowed, zero padded to the next power of two and transformed
+ * with a {@link RealFft}. The power spectrum is summed into bands given by their edge
+ * frequencies. The flux is the summed rise in magnitude of every bin since the previous
+ * frame: a thud or slam starts abruptly and has a large flux, while running water
+ * barely changes from frame to frame. Divided by the frame's summed magnitude it does
+ * not depend on loudness, and is near 1 for a sound starting out of silence. The window, FFT tables and spectra are all
+ * allocated in the constructor, so a frame allocates nothing. Not thread safe.
+ */
+public final class SpectralFeatures {
+
+    private final int frameLength;
+    private final RealFft fft;
+    private final double[] window;
+    private final double[] buffer;
+    private double[] magnitude;
+    private double[] previous;
+    private final double[] power;
+    // First bin of each band, plus one past the last band
+    private final int[] bandStart;
+    private final double[] bandEnergy;
+    private double totalEnergy;
+    private double magnitudeSum;
+    private double flux = Double.NaN;
+    private boolean hasPrevious;
+
+    /**
+     * @param frameLength samples per frame
+     * @param sampleRate  sample rate in Hz
+     * @param bandEdgesHz ascending band edges, n + 1 of them for n bands
+     */
+    public SpectralFeatures(int frameLength, float sampleRate, float[] bandEdgesHz) {
+        if (bandEdgesHz.length < 2) {
+            throw new IllegalArgumentException("need at least one band");
+        }
+        this.frameLength = frameLength;
+        int size = Math.max(4, Integer.highestOneBit(frameLength - 1) << 1);
+        fft = new RealFft(size);
+        window = new double[frameLength];
+        for (int n = 0; n < frameLength; n++) {
+            window[n] = 0.5 - 0.5 * Math.cos(2 * Math.PI * n / Math.max(1, frameLength - 1));
+        }
+        buffer = new double[size];
+        int bins = size / 2 + 1;
+        magnitude = new double[bins];
+        previous = new double[bins];
+        power = new double[bins];
+        bandStart = new int[bandEdgesHz.length];
+        for (int b = 0; b < bandEdgesHz.length; b++) {
+            int bin = Math.round(bandEdgesHz[b] * size / sampleRate);
+            bandStart[b] = Math.max(0, Math.min(bins, bin));
+        }
+        bandEnergy = new double[bandEdgesHz.length - 1];
+    }
+
+    public int frameLength() {
+        return frameLength;
+    }
+
+    public int fftSize() {
+        return fft.size();
+    }
+
+    public int bandCount() {
+        return bandEnergy.length;
+    }
+
+    /**
+     * Analyses {@link #frameLength()} samples starting at {@code offset}.
+     */
+    public void process(short[] samples, int offset) {
+        for (int n = 0; n < frameLength; n++) {
+            buffer[n] = samples[offset + n] * window[n];
+        }
+        for (int n = frameLength; n < buffer.length; n++) {
+            buffer[n] = 0;
+        }
+        fft.forward(buffer);
+        fft.power(buffer, power);
+
+        double total = 0;
+        double sum = 0;
+        double rise = 0;
+        for (int k = 0; k < power.length; k++) {
+            total += power[k];
+            double m = Math.sqrt(power[k]);
+            magnitude[k] = m;
+            sum += m;
+            if (m > previous[k]) {
+                rise += m - previous[k];
+            }
+        }
+        for (int b = 0; b < bandEnergy.length; b++) {
+            double band = 0;
+            for (int k = bandStart[b]; k < bandStart[b + 1]; k++) {
+                band += power[k];
+            }
+            bandEnergy[b] = band;
+        }
+        totalEnergy = total;
+        magnitudeSum = sum;
+        flux = hasPrevious ? rise : Double.NaN;
+        hasPrevious = true;
+        double[] t = previous;
+        previous = magnitude;
+        magnitude = t;
+    }
+
+    /**
+     * @return power of the last frame in band {@code b}, in squared spectrum units
+     */
+    public double bandEnergy(int b) {
+        return bandEnergy[b];
+    }
+
+    /**
+     * @return share of the last frame's power in band {@code b}, 0 for a silent frame
+     */
+    public double bandFraction(int b) {
+        return totalEnergy > 0 ? bandEnergy[b] / totalEnergy : 0;
+    }
+
+    public double totalEnergy() {
+        return totalEnergy;
+    }
+
+    /**
+     * @return summed magnitude rise over all bins since the previous frame, NaN for the
+     * first frame after a reset
+     */
+    public double flux() {
+        return flux;
+    }
+
+    /**
+     * @return flux as a share of the last frame's summed magnitude, in [0, 1], 0 for a
+     * silent frame and NaN for the first frame after a reset
+     */
+    public double relativeFlux() {
+        return magnitudeSum > 0 ? flux / magnitudeSum : Double.isNaN(flux) ? Double.NaN : 0;
+    }
+
+    public void reset() {
+        hasPrevious = false;
+        flux = Double.NaN;
+        totalEnergy = 0;
+        magnitudeSum = 0;
+        for (int k = 0; k < previous.length; k++) {
+            previous[k] = 0;
+        }
+    }
+}
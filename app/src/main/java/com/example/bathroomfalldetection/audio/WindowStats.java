@@ -0,0 +1,142 @@
+package com.example.bathroomfalldetection.audio;
+
+/**
+ * Minimum, maximum, mean and variance of the last {@code capacity} values of a stream,
+ * each in constant time.
+ * <p>
+ * The extremes come from two monotonic deques of window positions: a new value first
+ * pops every value it makes irrelevant, for example every larger value from the
+ * minimum deque, so the front is always the extreme and each value is pushed and popped
+ * at most once. Mean and variance are updated from the value entering and the value
+ * leaving the window. The update is Welford's, so it stays accurate for the large
+ * squared PCM energies. Everything lives in primitive arrays sized up front.
+ */
+public final class WindowStats {
+
+    private final int capacity;
+    // Window values by position modulo capacity
+    private final double[] values;
+    // Positions of candidate extremes, oldest first, as rings of capacity entries
+    private final long[] minQueue;
+    private final long[] maxQueue;
+    private int minHead;
+    private int minSize;
+    private int maxHead;
+    private int maxSize;
+    private long added;
+    private double mean;
+    private double m2;
+
+    public WindowStats(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        values = new double[capacity];
+        minQueue = new long[capacity];
+        maxQueue = new long[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return (int) Math.min(added, capacity);
+    }
+
+    public boolean isFull() {
+        return added >= capacity;
+    }
+
+    /**
+     * Adds a value, dropping the oldest one once the window is full.
+     */
+    public void add(double value) {
+        long position = added;
+        int slot = (int) (position % capacity);
+        if (position >= capacity) {
+            long expired = position - capacity;
+            if (minQueue[minHead] == expired) {
+                minHead = minHead + 1 == capacity ? 0 : minHead + 1;
+                minSize--;
+            }
+            if (maxQueue[maxHead] == expired) {
+                maxHead = maxHead + 1 == capacity ? 0 : maxHead + 1;
+                maxSize--;
+            }
+            double old = values[slot];
+            double newMean = mean + (value - old) / capacity;
+            m2 += (value - old) * (value - newMean + old - mean);
+            mean = newMean;
+        } else {
+            double delta = value - mean;
+            mean += delta / (position + 1);
+            m2 += delta * (value - mean);
+        }
+        values[slot] = value;
+        added++;
+
+        while (minSize > 0 && values[slot(minQueue, minHead, minSize)] >= value) {
+            minSize--;
+        }
+        minQueue[index(minHead, minSize)] = position;
+        minSize++;
+        while (maxSize > 0 && values[slot(maxQueue, maxHead, maxSize)] <= value) {
+            maxSize--;
+        }
+        maxQueue[index(maxHead, maxSize)] = position;
+        maxSize++;
+    }
+
+    /**
+     * @return smallest value in the window, or NaN when empty
+     */
+    public double min() {
+        return minSize == 0 ? Double.NaN : values[(int) (minQueue[minHead] % capacity)];
+    }
+
+    /**
+     * @return largest value in the window, or NaN when empty
+     */
+    public double max() {
+        return maxSize == 0 ? Double.NaN : values[(int) (maxQueue[maxHead] % capacity)];
+    }
+
+    public double mean() {
+        return added == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return population variance of the window, or NaN when empty
+     */
+    public double variance() {
+        if (added == 0) {
+            return Double.NaN;
+        }
+        // Rounding can take a sliding update just below zero
+        return Math.max(0, m2 / size());
+    }
+
+    public void reset() {
+        added = 0;
+        mean = 0;
+        m2 = 0;
+        minHead = 0;
+        minSize = 0;
+        maxHead = 0;
+        maxSize = 0;
+    }
+
+    /**
+     * @return value slot of the newest entry of a deque
+     */
+    private int slot(long[] queue, int head, int size) {
+        return (int) (queue[index(head, size - 1)] % capacity);
+    }
+
+    private int index(int head, int offset) {
+        int i = head + offset;
+        return i >= capacity ? i - capacity : i;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.bathroomfalldetection.detection;
+
+/**
+ * Second-order IIR filter section with independent state for a fixed number of channels.
+ * <p>
+ * Coefficients follow the RBJ audio EQ cookbook and are shared by all channels; each
+ * channel keeps two state values in transposed direct form II. A sample costs five
+ * multiplies and no allocation. Coefficients can be recomputed in place, for instance
+ * when the real sampling rate turns out to differ from the requested one.
+ */
+public final class Biquad {
+
+    private float b0;
+    private float b1;
+    private float b2;
+    private float a1;
+    private float a2;
+    private final float[] s1;
+    private final float[] s2;
+
+    /**
+     * Creates a pass-through section; call {@link #setLowPass} or {@link #setHighPass}.
+     */
+    public Biquad(int channels) {
+        s1 = new float[channels];
+        s2 = new float[channels];
+        b0 = 1;
+    }
+
+    public static Biquad lowPass(int channels, float cutoffHz, float sampleRateHz, float q) {
+        return new Biquad(channels).setLowPass(cutoffHz, sampleRateHz, q);
+    }
+
+    public static Biquad highPass(int channels, float cutoffHz, float sampleRateHz, float q) {
+        return new Biquad(channels).setHighPass(cutoffHz, sampleRateHz, q);
+    }
+
+    /**
+     * @param q 0.7071 for a Butterworth response
+     */
+    public Biquad setLowPass(float cutoffHz, float sampleRateHz, float q) {
+        double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        set((1 - cos) / 2 / a0, (1 - cos) / a0, (1 - cos) / 2 / a0, -2 * cos / a0, (1 - alpha) / a0);
+        return this;
+    }
+
+    public Biquad setHighPass(float cutoffHz, float sampleRateHz, float q) {
+        double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        set((1 + cos) / 2 / a0, -(1 + cos) / a0, (1 + cos) / 2 / a0, -2 * cos / a0, (1 - alpha) / a0);
+        return this;
+    }
+
+    private void set(double b0, double b1, double b2, double a1, double a2) {
+        this.b0 = (float) b0;
+        this.b1 = (float) b1;
+        this.b2 = (float) b2;
+        this.a1 = (float) a1;
+        this.a2 = (float) a2;
+    }
+
+    public int channels() {
+        return s1.length;
+    }
+
+    public float process(int channel, float x) {
+        float y = b0 * x + s1[channel];
+        s1[channel] = b1 * x - a1 * y + s2[channel];
+        s2[channel] = b2 * x - a2 * y;
+        return y;
+    }
+
+    /**
+     * Sets the state of {@code channel} as if {@code x} had been its input forever, so a
+     * stream starting away from zero doesn't ring.
+     *
+     * @return the steady-state output for {@code x}
+     */
+    public float prime(int channel, float x) {
+        float y = dcGain() * x;
+        s2[channel] = b2 * x - a2 * y;
+        s1[channel] = y - b0 * x;
+        return y;
+    }
+
+    public float dcGain() {
+        return (b0 + b1 + b2) / (1 + a1 + a2);
+    }
+
+    public void reset() {
+        for (int i = 0; i < s1.length; i++) {
+            s1[i] = 0;
+            s2[i] = 0;
+        }
+    }
+}
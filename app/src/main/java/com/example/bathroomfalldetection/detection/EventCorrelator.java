@@ -0,0 +1,181 @@
+package com.example.bathroomfalldetection.detection;
+
+/**
+ * Joins fall candidates from the accelerometer and the microphone, and escalates only
+ * when both saw the same fall.
+ * <p>
+ * Each modality keeps its recent candidates, stamped on the elapsedRealtimeNanos clock
+ * and scored in [0, 1], in a fixed-size ring. When a candidate arrives, candidates of
+ * either modality older than the correlation window are dropped from the front of their
+ * rings, which costs O(1) per candidate over its lifetime. The new candidate is then
+ * paired with the best-scoring candidate of the other modality within the window. The
+ * pair's score is the mean of the two, reduced by up to half as their time difference
+ * approaches the window. If the score reaches the threshold both candidates are used up
+ * and the listener is told. A candidate that never finds a partner expires silently;
+ * that is a false escalation avoided.
+ * <p>
+ * A modality marked unavailable, for example a microphone without permission, is not
+ * waited for: candidates of the other modality are then judged on their own score.
+ * Thread safe, candidates may be added from the sensor and audio threads.
+ */
+public final class EventCorrelator {
+
+    public static final int ACCELEROMETER = 0;
+    public static final int AUDIO = 1;
+    private static final int MODALITIES = 2;
+
+    public interface Listener {
+        /**
+         * Called on the thread that added the deciding candidate.
+         *
+         * @param accelNanos timestamp of the accelerometer candidate, or -1 if it escalated alone
+         * @param audioNanos timestamp of the audio candidate, or -1 if it escalated alone
+         * @param score      combined score
+         */
+        void onCorrelatedFall(long accelNanos, long audioNanos, float score);
+    }
+
+    private final long windowNanos;
+    private final int capacity;
+    private final float threshold;
+    private final Listener listener;
+    private final long[][] timestamps;
+    private final float[][] scores;
+    private final int[] head = new int[MODALITIES];
+    private final int[] size = new int[MODALITIES];
+    private final boolean[] available = {true, true};
+
+    private long candidates;
+    private long escalations;
+    private long expired;
+    private long overflowed;
+
+    /**
+     * @param windowNanos largest time difference between two candidates of the same fall
+     * @param capacity    candidates held per modality
+     * @param threshold   combined score needed to escalate
+     */
+    public EventCorrelator(long windowNanos, int capacity, float threshold, Listener listener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.windowNanos = windowNanos;
+        this.capacity = capacity;
+        this.threshold = threshold;
+        this.listener = listener;
+        timestamps = new long[MODALITIES][capacity];
+        scores = new float[MODALITIES][capacity];
+    }
+
+    public synchronized void setAvailable(int modality, boolean isAvailable) {
+        available[modality] = isAvailable;
+    }
+
+    /**
+     * @param modality       {@link #ACCELEROMETER} or {@link #AUDIO}
+     * @param timestampNanos when the candidate happened, on the elapsedRealtimeNanos clock
+     * @param score          confidence in [0, 1]
+     * @return true if the candidate escalated
+     */
+    public boolean add(int modality, long timestampNanos, float score) {
+        long accelNanos;
+        long audioNanos;
+        float combined;
+        synchronized (this) {
+            candidates++;
+            for (int m = 0; m < MODALITIES; m++) {
+                expire(m, timestampNanos - windowNanos);
+            }
+            int other = 1 - modality;
+            if (!available[other]) {
+                if (score < threshold) {
+                    return false;
+                }
+                combined = score;
+                accelNanos = modality == ACCELEROMETER ? timestampNanos : -1;
+                audioNanos = modality == AUDIO ? timestampNanos : -1;
+            } else {
+                int best = -1;
+                float bestScore = 0;
+                for (int k = 0; k < size[other]; k++) {
+                    int i = index(other, k);
+                    long dt = Math.abs(timestampNanos - timestamps[other][i]);
+                    if (dt > windowNanos) {
+                        continue;
+                    }
+                    float s = (score + scores[other][i]) / 2 * (1 - 0.5f * dt / windowNanos);
+                    if (s > bestScore) {
+                        bestScore = s;
+                        best = k;
+                    }
+                }
+                if (best < 0 || bestScore < threshold) {
+                    push(modality, timestampNanos, score);
+                    return false;
+                }
+                long otherNanos = timestamps[other][index(other, best)];
+                removeAt(other, best);
+                combined = bestScore;
+                accelNanos = modality == ACCELEROMETER ? timestampNanos : otherNanos;
+                audioNanos = modality == AUDIO ? timestampNanos : otherNanos;
+            }
+            escalations++;
+        }
+        listener.onCorrelatedFall(accelNanos, audioNanos, combined);
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (int m = 0; m < MODALITIES; m++) {
+            head[m] = 0;
+            size[m] = 0;
+        }
+    }
+
+    public synchronized String describe() {
+        return "candidates=" + candidates
+                + " escalations=" + escalations
+                + " expired=" + expired
+                + " overflowed=" + overflowed
+                + " pending=" + size[ACCELEROMETER] + "/" + size[AUDIO];
+    }
+
+    private void expire(int modality, long cutoff) {
+        while (size[modality] > 0 && timestamps[modality][head[modality]] < cutoff) {
+            head[modality] = head[modality] + 1 == capacity ? 0 : head[modality] + 1;
+            size[modality]--;
+            expired++;
+        }
+    }
+
+    private void push(int modality, long timestampNanos, float score) {
+        if (size[modality] == capacity) {
+            // Drop the oldest, it is the least likely to still find a partner
+            head[modality] = head[modality] + 1 == capacity ? 0 : head[modality] + 1;
+            size[modality]--;
+            overflowed++;
+        }
+        int i = index(modality, size[modality]);
+        timestamps[modality][i] = timestampNanos;
+        scores[modality][i] = score;
+        size[modality]++;
+    }
+
+    /**
+     * Removes the k-th oldest candidate, shifting the newer ones down. Rings are short.
+     */
+    private void removeAt(int modality, int k) {
+        for (int j = k; j < size[modality] - 1; j++) {
+            int to = index(modality, j);
+            int from = index(modality, j + 1);
+            timestamps[modality][to] = timestamps[modality][from];
+            scores[modality][to] = scores[modality][from];
+        }
+        size[modality]--;
+    }
+
+    private int index(int modality, int k) {
+        int i = head[modality] + k;
+        return i >= capacity ? i - capacity : i;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bathroomfalldetection.detection;
+
+/**
+ * {@link Biquad} sections applied one after the other, each channel independently.
+ * Cascading sections gives steeper filters at the same per-section cost.
+ */
+public final class FilterChain {
+
+    // Section Qs of a fourth-order Butterworth filter: 1 / (2 cos(pi/8)), 1 / (2 cos(3 pi/8))
+    private static final float BUTTERWORTH_Q1 = 0.5411961f;
+    private static final float BUTTERWORTH_Q2 = 1.3065630f;
+
+    private final Biquad[] stages;
+
+    public FilterChain(Biquad... stages) {
+        if (stages.length == 0) {
+            throw new IllegalArgumentException("filter chain needs at least one stage");
+        }
+        for (Biquad stage : stages) {
+            if (stage.channels() != stages[0].channels()) {
+                throw new IllegalArgumentException("stages have different channel counts");
+            }
+        }
+        this.stages = stages.clone();
+    }
+
+    /**
+     * Fourth-order Butterworth low-pass built from two sections.
+     */
+    public static FilterChain butterworthLowPass(int channels, float cutoffHz, float sampleRateHz) {
+        return new FilterChain(new Biquad(channels), new Biquad(channels))
+                .setButterworthLowPass(cutoffHz, sampleRateHz);
+    }
+
+    /**
+     * Fourth-order Butterworth high-pass built from two sections.
+     */
+    public static FilterChain butterworthHighPass(int channels, float cutoffHz, float sampleRateHz) {
+        return new FilterChain(new Biquad(channels), new Biquad(channels))
+                .setButterworthHighPass(cutoffHz, sampleRateHz);
+    }
+
+    /**
+     * Turns a two-section chain into a fourth-order Butterworth low-pass, keeping its state.
+     */
+    public FilterChain setButterworthLowPass(float cutoffHz, float sampleRateHz) {
+        checkButterworth();
+        stages[0].setLowPass(cutoffHz, sampleRateHz, BUTTERWORTH_Q1);
+        stages[1].setLowPass(cutoffHz, sampleRateHz, BUTTERWORTH_Q2);
+        return this;
+    }
+
+    /**
+     * Turns a two-section chain into a fourth-order Butterworth high-pass, keeping its state.
+     */
+    public FilterChain setButterworthHighPass(float cutoffHz, float sampleRateHz) {
+        checkButterworth();
+        stages[0].setHighPass(cutoffHz, sampleRateHz, BUTTERWORTH_Q1);
+        stages[1].setHighPass(cutoffHz, sampleRateHz, BUTTERWORTH_Q2);
+        return this;
+    }
+
+    private void checkButterworth() {
+        if (stages.length != 2) {
+            throw new IllegalStateException("fourth-order Butterworth needs two stages, not " + stages.length);
+        }
+    }
+
+    public Biquad stage(int i) {
+        return stages[i];
+    }
+
+    public int length() {
+        return stages.length;
+    }
+
+    public float process(int channel, float x) {
+        for (Biquad stage : stages) {
+            x = stage.process(channel, x);
+        }
+        return x;
+    }
+
+    /**
+     * @see Biquad#prime
+     */
+    public float prime(int channel, float x) {
+        for (Biquad stage : stages) {
+            x = stage.prime(channel, x);
+        }
+        return x;
+    }
+
+    public void reset() {
+        for (Biquad stage : stages) {
+            stage.reset();
+        }
+    }
+}
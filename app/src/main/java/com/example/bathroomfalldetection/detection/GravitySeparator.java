@@ -0,0 +1,97 @@
+package com.example.bathroomfalldetection.detection;
+
+/**
+ * Splits raw accelerometer samples into gravity and linear acceleration, per axis.
+ * <p>
+ * Gravity is what a fourth-order Butterworth low-pass keeps of the signal, and linear
+ * acceleration is the rest of it, so the two always add up to the raw sample. The
+ * results are left in public fields after each {@link #process} call, so nothing is
+ * allocated per sample. The first sample primes the chain, so there is no start-up
+ * transient pretending the phone was accelerating.
+ * <p>
+ * The cutoff is relative to the sampling rate given here. Android only treats the
+ * requested rate as a hint, so call {@link #setSampleRate} once the real rate is known.
+ */
+public final class GravitySeparator {
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+
+    private final float cutoffHz;
+    private final FilterChain lowPass;
+    private boolean primed;
+
+    public float gravityX;
+    public float gravityY;
+    public float gravityZ;
+    public float linearX;
+    public float linearY;
+    public float linearZ;
+
+    /**
+     * @param cutoffHz below this is gravity, above it body motion; a few tenths of a Hz
+     */
+    public GravitySeparator(float sampleRateHz, float cutoffHz) {
+        if (!(cutoffHz > 0 && cutoffHz < sampleRateHz / 2)) {
+            throw new IllegalArgumentException("cutoff must be below the Nyquist rate: " + cutoffHz);
+        }
+        this.cutoffHz = cutoffHz;
+        lowPass = FilterChain.butterworthLowPass(3, cutoffHz, sampleRateHz);
+    }
+
+    /**
+     * Recomputes the filters for a new sampling rate, keeping their state.
+     */
+    public void setSampleRate(float sampleRateHz) {
+        float cutoff = Math.min(cutoffHz, sampleRateHz * 0.45f);
+        lowPass.setButterworthLowPass(cutoff, sampleRateHz);
+    }
+
+    public void process(float x, float y, float z) {
+        if (!primed) {
+            gravityX = lowPass.prime(X, x);
+            gravityY = lowPass.prime(Y, y);
+            gravityZ = lowPass.prime(Z, z);
+            primed = true;
+        } else {
+            gravityX = lowPass.process(X, x);
+            gravityY = lowPass.process(Y, y);
+            gravityZ = lowPass.process(Z, z);
+        }
+        linearX = x - gravityX;
+        linearY = y - gravityY;
+        linearZ = z - gravityZ;
+    }
+
+    /**
+     * @return squared magnitude of the current linear acceleration
+     */
+    public float linearMagnitudeSquared() {
+        return linearX * linearX + linearY * linearY + linearZ * linearZ;
+    }
+
+    /**
+     * @return magnitude of the current gravity estimate
+     */
+    public float gravityMagnitude() {
+        return (float) Math.sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ);
+    }
+
+    /**
+     * @return component of the current linear acceleration along gravity, negative when
+     * the phone accelerates towards the ground
+     */
+    public float linearAlongGravity() {
+        float g = gravityMagnitude();
+        if (g == 0) {
+            return 0;
+        }
+        return (linearX * gravityX + linearY * gravityY + linearZ * gravityZ) / g;
+    }
+
+    public void reset() {
+        lowPass.reset();
+        primed = false;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds PCM frames through the whole detector and checks which impacts reach the listener.
+ */
+public class AcousticImpactDetectorTest {
+
+    private static final int L = 17;
+    private static final double CMF_TH = 1.6e7;
+    private static final int FRAME = 4000;
+    private static final long FRAME_NANOS = 90702948L;
+    private static final long REFRACTORY_NANOS = 1000000000L;
+
+    private static final float[] BANDS = {0, 250, 1000, 4000, 22050};
+
+    private final List<Long> impacts = new ArrayList<>();
+    private final List<Double> spectralScores = new ArrayList<>();
+    private final List<Double> fluxes = new ArrayList<>();
+    private AcousticImpactDetector detector;
+
+    private final AcousticImpactDetector.Listener listener = new AcousticImpactDetector.Listener() {
+        public void onImpact(long timestampNanos, double pulse) {
+            assertTrue(pulse > 0);
+            impacts.add(timestampNanos);
+            spectralScores.add(detector.getImpactSpectralScore());
+            fluxes.add(detector.getImpactFlux());
+        }
+
+        public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+        }
+    };
+
+    @Test
+    public void loudFrame_reachesListener() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        feed(detector, 60, 30);
+        assertEquals(1, impacts.size());
+        assertEquals(30 * FRAME_NANOS, (long) impacts.get(0));
+    }
+
+    @Test
+    public void quietFrames_reportNothing() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        feed(detector, 60);
+        assertTrue(impacts.isEmpty());
+    }
+
+    @Test
+    public void secondImpactWithinRefractory_isDropped() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        // 5 frames apart is under the refractory second, 20 frames apart is over it
+        feed(detector, 80, 30, 35, 55);
+        assertEquals(2, impacts.size());
+        assertEquals(30 * FRAME_NANOS, (long) impacts.get(0));
+        assertEquals(55 * FRAME_NANOS, (long) impacts.get(1));
+    }
+
+    @Test
+    public void reset_reportsFirstImpactAgain() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        feed(detector, 60, 30);
+        detector.reset();
+        // Stamps restart at 0, behind the last impact
+        feed(detector, 60, 30);
+        assertEquals(2, impacts.size());
+    }
+
+    @Test
+    public void spectralScore_favoursLowThudOverHighBurst() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        detector.setSpectralFeatures(new SpectralFeatures(FRAME, 44100, BANDS), 0.5, 0.5);
+        feedTone(detector, 100, 60, 30);
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        detector.setSpectralFeatures(new SpectralFeatures(FRAME, 44100, BANDS), 0.5, 0.5);
+        feedTone(detector, 3000, 60, 30);
+        assertEquals(2, impacts.size());
+        assertEquals(1, spectralScores.get(0), 1e-9);
+        assertTrue(spectralScores.get(1) < 0.1);
+    }
+
+    @Test
+    public void spectralScore_isOneWithoutFeatures() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        feed(detector, 60, 30);
+        assertEquals(1, spectralScores.get(0), 1e-9);
+    }
+
+    @Test
+    public void gateReopening_doesNotTakeFluxAcrossTheGap() {
+        detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, REFRACTORY_NANOS, listener);
+        detector.setSpectralFeatures(new SpectralFeatures(FRAME, 44100, BANDS), 0.5, 0.5);
+        detector.setGate(new AudioGate(CMF_TH / 4, 0.1f, L, L));
+        // The gate holds open for L frames after the first thud and is closed by the second
+        feed(detector, 80, 30, 55);
+        assertEquals(2, impacts.size());
+        assertTrue(Double.isNaN(fluxes.get(1)));
+    }
+
+    private static void feed(AcousticImpactDetector detector, int count, int... loud) {
+        feedTone(detector, 100, count, loud);
+    }
+
+    /**
+     * Quiet hiss with a loud tone at {@code pitchHz} in each of the {@code loud} frames.
+     */
+    private static void feedTone(AcousticImpactDetector detector, int pitchHz, int count, int... loud) {
+        Random random = new Random(1);
+        short[] frame = new short[FRAME];
+        for (int f = 0; f < count; f++) {
+            boolean thud = false;
+            for (int l : loud) {
+                thud |= l == f;
+            }
+            for (int i = 0; i < FRAME; i++) {
+                double s = 100 * random.nextGaussian();
+                if (thud) {
+                    s += 20000 * Math.sin(2 * Math.PI * pitchHz * i / 44100);
+                }
+                frame[i] = (short) s;
+            }
+            detector.onFrame(f * FRAME_NANOS, frame, 0, FRAME);
+        }
+    }
+}
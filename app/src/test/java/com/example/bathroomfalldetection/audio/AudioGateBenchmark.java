@@ -0,0 +1,82 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the cost of the acoustic detector with and without the gate on mostly quiet
+ * audio with occasional thuds. Left out of the unit tests, run with
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public class AudioGateBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME = 4000;
+    private static final int L = 17;
+    private static final double CMF_TH = 1.6e7;
+    private static final float[] BANDS = {0, 250, 1000, 4000, SAMPLE_RATE / 2f};
+    private static final long FRAME_NANOS = FRAME * 1000000000L / SAMPLE_RATE;
+    // One thud every 100 frames, about 9 s
+    private static final int THUD_EVERY = 100;
+    private static final int FRAMES = 3000;
+
+    @Test
+    public void gate_keepsImpactsAndSavesTime() {
+        short[][] audio = new short[THUD_EVERY][FRAME];
+        Random random = new Random(1);
+        for (int f = 0; f < THUD_EVERY; f++) {
+            for (int n = 0; n < FRAME; n++) {
+                double s = random.nextGaussian() * 300;
+                if (f == THUD_EVERY / 2) {
+                    s += 20000 * Math.exp(-n / 800.0) * Math.sin(2 * Math.PI * 80 * n / SAMPLE_RATE);
+                }
+                audio[f][n] = (short) s;
+            }
+        }
+
+        long[] ungated = run(audio, false);
+        long[] gated = run(audio, true);
+        System.out.printf("acoustic detector: ungated %.1f us/frame, gated %.1f us/frame%n",
+                ungated[1] / 1e3 / FRAMES, gated[1] / 1e3 / FRAMES);
+        assertEquals(FRAMES / THUD_EVERY, ungated[0]);
+        assertEquals(ungated[0], gated[0]);
+        assertTrue(gated[1] < ungated[1]);
+    }
+
+    /**
+     * @return impacts found and nanoseconds spent, over a second pass once warmed up
+     */
+    private static long[] run(short[][] audio, boolean gated) {
+        final long[] impacts = new long[1];
+        AcousticImpactDetector detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, 0,
+                new AcousticImpactDetector.Listener() {
+                    public void onImpact(long timestampNanos, double pulse) {
+                        impacts[0]++;
+                    }
+
+                    public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+                    }
+                });
+        detector.setSpectralFeatures(new SpectralFeatures(FRAME, SAMPLE_RATE, BANDS), 0.5, 0.5);
+        if (gated) {
+            detector.setGate(new AudioGate(CMF_TH / 4, 0.1f, L, L));
+        }
+        long t = 0;
+        for (int f = 0; f < FRAMES; f++, t += FRAME_NANOS) {
+            short[] frame = audio[f % THUD_EVERY];
+            detector.onFrame(t, frame, 0, FRAME);
+        }
+        impacts[0] = 0;
+        long start = System.nanoTime();
+        for (int f = 0; f < FRAMES; f++, t += FRAME_NANOS) {
+            short[] frame = audio[f % THUD_EVERY];
+            detector.onFrame(t, frame, 0, FRAME);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(detector.describe());
+        return new long[]{impacts[0], elapsed};
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the gate keeps every impact the ungated detector finds and stays shut for
+ * loud broadband noise.
+ */
+public class AudioGateTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME = 4000;
+    private static final int L = 17;
+    private static final double CMF_TH = 1.6e7;
+    private static final float[] BANDS = {0, 250, 1000, 4000, SAMPLE_RATE / 2f};
+    private static final long FRAME_NANOS = FRAME * 1000000000L / SAMPLE_RATE;
+    // One thud every 100 frames, about 9 s
+    private static final int THUD_EVERY = 100;
+    private static final int FRAMES = 1000;
+
+    @Test
+    public void gate_keepsImpacts() {
+        short[][] audio = new short[THUD_EVERY][FRAME];
+        Random random = new Random(1);
+        for (int f = 0; f < THUD_EVERY; f++) {
+            for (int n = 0; n < FRAME; n++) {
+                double s = random.nextGaussian() * 300;
+                if (f == THUD_EVERY / 2) {
+                    s += 20000 * Math.exp(-n / 800.0) * Math.sin(2 * Math.PI * 80 * n / SAMPLE_RATE);
+                }
+                audio[f][n] = (short) s;
+            }
+        }
+        assertEquals(FRAMES / THUD_EVERY, impacts(audio, false));
+        assertEquals(FRAMES / THUD_EVERY, impacts(audio, true));
+    }
+
+    @Test
+    public void gate_staysShutForLoudHiss() {
+        AudioGate gate = new AudioGate(CMF_TH / 4, 0.1f, L, L);
+        short[] frame = new short[FRAME];
+        Random random = new Random(1);
+        for (int n = 0; n < FRAME; n++) {
+            // As loud as a thud but broadband, like running water
+            frame[n] = (short) (random.nextGaussian() * 8000);
+        }
+        assertFalse(gate.process(0, frame, 0, FRAME));
+        for (int n = 0; n < FRAME; n++) {
+            frame[n] = (short) (8000 * Math.sin(2 * Math.PI * 80 * n / SAMPLE_RATE));
+        }
+        assertTrue(gate.process(FRAME_NANOS, frame, 0, FRAME));
+        assertTrue(gate.justOpened());
+        assertEquals(1, gate.historySize());
+    }
+
+    private static int impacts(short[][] audio, boolean gated) {
+        final int[] impacts = new int[1];
+        AcousticImpactDetector detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, 0,
+                new AcousticImpactDetector.Listener() {
+                    public void onImpact(long timestampNanos, double pulse) {
+                        impacts[0]++;
+                    }
+
+                    public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+                    }
+                });
+        detector.setSpectralFeatures(new SpectralFeatures(FRAME, SAMPLE_RATE, BANDS), 0.5, 0.5);
+        if (gated) {
+            detector.setGate(new AudioGate(CMF_TH / 4, 0.1f, L, L));
+        }
+        for (int f = 0; f < FRAMES; f++) {
+            detector.onFrame(f * FRAME_NANOS, audio[f % THUD_EVERY], 0, FRAME);
+        }
+        return impacts[0];
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes the writer's output with a straightforward IMA-ADPCM decoder and compares it
+ * with the input.
+ */
+public class ImaAdpcmWavWriterTest {
+
+    private static final int SAMPLE_RATE = 8000;
+    // Two full blocks and part of a third
+    private static final int SAMPLES = 2 * ImaAdpcmWavWriter.SAMPLES_PER_BLOCK + 500;
+    private static final int HEADER = 60;
+
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    @Test
+    public void header_describesBlocks() throws IOException {
+        byte[] wav = write(tone());
+        int blocks = 3;
+        int dataSize = blocks * ImaAdpcmWavWriter.BLOCK_ALIGN;
+        assertEquals(HEADER + dataSize, wav.length);
+        assertEquals("RIFF", tag(wav, 0));
+        assertEquals(wav.length - 8, getInt(wav, 4));
+        assertEquals("WAVE", tag(wav, 8));
+        assertEquals("fmt ", tag(wav, 12));
+        assertEquals(20, getInt(wav, 16));
+        assertEquals(0x11, getShort(wav, 20));
+        assertEquals(1, getShort(wav, 22));
+        assertEquals(SAMPLE_RATE, getInt(wav, 24));
+        assertEquals(SAMPLE_RATE * ImaAdpcmWavWriter.BLOCK_ALIGN / ImaAdpcmWavWriter.SAMPLES_PER_BLOCK,
+                getInt(wav, 28));
+        assertEquals(ImaAdpcmWavWriter.BLOCK_ALIGN, getShort(wav, 32));
+        assertEquals(4, getShort(wav, 34));
+        assertEquals(2, getShort(wav, 36));
+        assertEquals(ImaAdpcmWavWriter.SAMPLES_PER_BLOCK, getShort(wav, 38));
+        assertEquals("fact", tag(wav, 40));
+        assertEquals(4, getInt(wav, 44));
+        assertEquals(SAMPLES, getInt(wav, 48));
+        assertEquals("data", tag(wav, 52));
+        assertEquals(dataSize, getInt(wav, 56));
+    }
+
+    @Test
+    public void decoded_followsInput() throws IOException {
+        short[] pcm = tone();
+        short[] decoded = decode(write(pcm));
+        assertEquals(3 * ImaAdpcmWavWriter.SAMPLES_PER_BLOCK, decoded.length);
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            signal += (double) pcm[i] * pcm[i];
+            noise += (double) (pcm[i] - decoded[i]) * (pcm[i] - decoded[i]);
+        }
+        // 4 bits per sample keep a steady tone well above 20 dB
+        assertTrue(10 * Math.log10(signal / noise) > 20);
+        // Each block starts from its first sample in the clear
+        assertEquals(pcm[0], decoded[0]);
+        assertEquals(pcm[ImaAdpcmWavWriter.SAMPLES_PER_BLOCK], decoded[ImaAdpcmWavWriter.SAMPLES_PER_BLOCK]);
+    }
+
+    @Test
+    public void lastBlock_isPaddedWithSilence() throws IOException {
+        short[] decoded = decode(write(tone()));
+        // The step adapts down from the tone, the end of the padding is silent
+        for (int i = decoded.length - 100; i < decoded.length; i++) {
+            assertTrue("sample " + i + " is " + decoded[i], Math.abs(decoded[i]) < 16);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void moreSamplesThanAnnounced_fails() throws IOException {
+        ImaAdpcmWavWriter writer = new ImaAdpcmWavWriter(new ByteArrayOutputStream(), SAMPLE_RATE, 10);
+        writer.write(new short[11], 0, 11);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishBeforeAllSamples_fails() throws IOException {
+        ImaAdpcmWavWriter writer = new ImaAdpcmWavWriter(new ByteArrayOutputStream(), SAMPLE_RATE, 10);
+        writer.write(new short[5], 0, 5);
+        writer.finish();
+    }
+
+    /**
+     * A 440 Hz tone at two thirds of full scale.
+     */
+    private static short[] tone() {
+        short[] pcm = new short[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            pcm[i] = (short) (10000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        return pcm;
+    }
+
+    /**
+     * Writes in odd-sized chunks that straddle the blocks.
+     */
+    private static byte[] write(short[] pcm) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImaAdpcmWavWriter writer = new ImaAdpcmWavWriter(bytes, SAMPLE_RATE, pcm.length);
+        for (int i = 0; i < pcm.length; i += 333) {
+            writer.write(pcm, i, Math.min(333, pcm.length - i));
+        }
+        writer.finish();
+        return bytes.toByteArray();
+    }
+
+    private static short[] decode(byte[] wav) {
+        int blocks = (wav.length - HEADER) / ImaAdpcmWavWriter.BLOCK_ALIGN;
+        short[] pcm = new short[blocks * ImaAdpcmWavWriter.SAMPLES_PER_BLOCK];
+        int n = 0;
+        for (int b = 0; b < blocks; b++) {
+            int p = HEADER + b * ImaAdpcmWavWriter.BLOCK_ALIGN;
+            int predictor = (short) getShort(wav, p);
+            int index = wav[p + 2];
+            pcm[n++] = (short) predictor;
+            for (int i = 4; i < ImaAdpcmWavWriter.BLOCK_ALIGN; i++) {
+                for (int shift = 0; shift <= 4; shift += 4) {
+                    int nibble = (wav[p + i] >> shift) & 15;
+                    int step = STEP_TABLE[index];
+                    int delta = step >> 3;
+                    if ((nibble & 4) != 0) {
+                        delta += step;
+                    }
+                    if ((nibble & 2) != 0) {
+                        delta += step >> 1;
+                    }
+                    if ((nibble & 1) != 0) {
+                        delta += step >> 2;
+                    }
+                    predictor += (nibble & 8) != 0 ? -delta : delta;
+                    predictor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, predictor));
+                    index = Math.max(0, Math.min(STEP_TABLE.length - 1, index + INDEX_TABLE[nibble]));
+                    pcm[n++] = (short) predictor;
+                }
+            }
+        }
+        return pcm;
+    }
+
+    private static String tag(byte[] b, int p) {
+        return new String(b, p, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static int getInt(byte[] b, int p) {
+        return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 | (b[p + 3] & 0xff) << 24;
+    }
+
+    private static int getShort(byte[] b, int p) {
+        return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the noise floor tracker per frame. Left out of the unit tests, run with
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public class NoiseFloorTrackerBenchmark {
+
+    private static final int ITERATIONS = 10000000;
+
+    @Test
+    public void tracker_framesPerSecond() {
+        NoiseFloorTracker tracker = new NoiseFloorTracker(8, 4, 0.5, 1.2);
+        Random random = new Random(1);
+        double[] energies = new double[1024];
+        for (int i = 0; i < energies.length; i++) {
+            energies[i] = 1e6 * Math.abs(random.nextGaussian());
+        }
+        double sink = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += tracker.add(energies[i & 1023]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += tracker.add(energies[i & 1023]);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("noise floor: %.0f frames/s, %.1f ns each%n",
+                ITERATIONS * 1e9 / elapsed, (double) elapsed / ITERATIONS);
+        assertTrue(sink > 0);
+    }
+}
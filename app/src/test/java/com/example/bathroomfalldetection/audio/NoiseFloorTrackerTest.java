@@ -0,0 +1,74 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the noise floor follows a running shower and keeps the acoustic detector
+ * quiet in it.
+ */
+public class NoiseFloorTrackerTest {
+
+    private static final int L = 17;
+    private static final double CMF_TH = 1.6e7;
+
+    @Test
+    public void floor_followsBackgroundNotBursts() {
+        NoiseFloorTracker tracker = new NoiseFloorTracker(8, 4, 0.5, 1.0);
+        for (int f = 0; f < 100; f++) {
+            tracker.add(f % 20 == 0 ? 1e9 : 1e5);
+        }
+        // Decayed bursts leave a trace in the smoothed energy, but only a small one
+        assertEquals(1e5, tracker.floor(), 2e3);
+        // Shower turned on: the floor catches up within about one window...
+        for (int f = 0; f < 30; f++) {
+            tracker.add(5e7);
+        }
+        assertTrue(tracker.floor() < 1e6);
+        for (int f = 0; f < 20; f++) {
+            tracker.add(5e7);
+        }
+        assertEquals(5e7, tracker.floor(), 1e4);
+        // ...and drops as soon as it stops
+        tracker.add(1e5);
+        assertTrue(tracker.floor() < 3e7);
+    }
+
+    @Test
+    public void showerAlertsOnlyOnThud() {
+        assertTrue(impactsInShower(false) > 10);
+        assertEquals(1, impactsInShower(true));
+    }
+
+    /**
+     * Two minutes of shower with splashes, one thud well above it.
+     */
+    private static int impactsInShower(boolean tracked) {
+        final int[] impacts = new int[1];
+        AcousticImpactDetector detector = new AcousticImpactDetector(L, CMF_TH, 0.000225, 0,
+                new AcousticImpactDetector.Listener() {
+                    public void onImpact(long timestampNanos, double pulse) {
+                        impacts[0]++;
+                    }
+
+                    public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+                    }
+                });
+        if (tracked) {
+            detector.setNoiseFloor(new NoiseFloorTracker(8, 4, 0.5, 1.2), 20);
+        }
+        Random random = new Random(1);
+        for (int f = 0; f < 1300; f++) {
+            // Shower at RMS 6000, splashes doubling the energy now and then
+            double energy = 3.6e7 * (1 + Math.abs(random.nextGaussian()));
+            if (f == 1000) {
+                energy = 4e9;
+            }
+            detector.onEnergy(f * 90000000L, energy);
+        }
+        return impacts[0];
+    }
+}
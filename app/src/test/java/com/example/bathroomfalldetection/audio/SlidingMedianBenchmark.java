@@ -0,0 +1,42 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the sliding median at window lengths far beyond the detector's default. Left
+ * out of the unit tests, run with {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public class SlidingMedianBenchmark {
+
+    private static final int ITERATIONS = 2000000;
+
+    @Test
+    public void median_updatesPerSecond() {
+        for (int length : new int[]{17, 257, 4097}) {
+            SlidingMedian median = new SlidingMedian(length);
+            Random random = new Random(1);
+            double[] values = new double[1024];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = random.nextGaussian();
+            }
+            double sink = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                median.add(values[i & 1023]);
+                sink += median.median();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                median.add(values[i & 1023]);
+                sink += median.median();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("sliding median, window %d: %.0f updates/s, %.1f ns each%n",
+                    length, ITERATIONS * 1e9 / elapsed, (double) elapsed / ITERATIONS);
+            assertFalse(Double.isNaN(sink));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sliding median against sorting every window, and the conditional median
+ * filter on a single burst.
+ */
+public class SlidingMedianTest {
+
+    @Test
+    public void median_matchesSortedWindow() {
+        Random random = new Random(1);
+        for (int length = 1; length <= 40; length++) {
+            SlidingMedian median = new SlidingMedian(length);
+            double[] history = new double[5 * length];
+            for (int i = 0; i < history.length; i++) {
+                // Few distinct values so duplicates are exercised
+                history[i] = random.nextInt(8);
+                median.add(history[i]);
+                int n = Math.min(i + 1, length);
+                assertEquals(n, median.size());
+                double[] window = Arrays.copyOfRange(history, i + 1 - n, i + 1);
+                Arrays.sort(window);
+                assertEquals("length " + length + " at " + i, expected(window), median.median(), 0);
+                assertEquals(history[i - n + 1], median.get(n - 1), 0);
+            }
+        }
+    }
+
+    @Test
+    public void median_averagesMiddlePairForEvenCount() {
+        SlidingMedian median = new SlidingMedian(4);
+        median.add(4);
+        median.add(1);
+        median.add(3);
+        median.add(2);
+        // Sorted 1 2 3 4: both middle values, not the upper pair
+        assertEquals(2.5, median.median(), 0);
+        median.add(10);
+        median.add(9);
+        // 4 and 1 leave: 2 3 9 10
+        assertEquals(6, median.median(), 0);
+    }
+
+    @Test
+    public void conditionalMedianFilter_isolatesBurst() {
+        ConditionalMedianFilter filter = new ConditionalMedianFilter(17, 100);
+        double maxPulse = 0;
+        for (int i = 0; i < 200; i++) {
+            filter.add(i == 100 ? 1000 : 10);
+            if (filter.isFull()) {
+                maxPulse = Math.max(maxPulse, filter.pulse());
+            }
+        }
+        assertEquals(990, maxPulse, 0);
+    }
+
+    private static double expected(double[] sorted) {
+        int n = sorted.length;
+        return (n & 1) == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures spectral analysis of audio frames against real time. Left out of the unit
+ * tests, run with {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public class SpectralFeaturesBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME = 4000;
+    private static final float[] BANDS = {0, 250, 1000, 4000, SAMPLE_RATE / 2f};
+    private static final int FRAMES = 2000;
+
+    @Test
+    public void features_fasterThanRealTime() {
+        SpectralFeatures features = new SpectralFeatures(FRAME, SAMPLE_RATE, BANDS);
+        short[] audio = new short[FRAME * 16];
+        Random random = new Random(1);
+        for (int n = 0; n < audio.length; n++) {
+            audio[n] = (short) (random.nextGaussian() * 3000);
+        }
+        double sink = 0;
+        for (int f = 0; f < FRAMES; f++) {
+            features.process(audio, (f & 15) * FRAME);
+            sink += features.totalEnergy();
+        }
+        long start = System.nanoTime();
+        for (int f = 0; f < FRAMES; f++) {
+            features.process(audio, (f & 15) * FRAME);
+            sink += features.totalEnergy();
+        }
+        long elapsed = System.nanoTime() - start;
+        double audioSeconds = (double) FRAMES * FRAME / SAMPLE_RATE;
+        double speed = audioSeconds / (elapsed * 1e-9);
+        System.out.printf("spectral features: %.1f us per %d-sample frame, %.0fx real time%n",
+                elapsed * 1e-3 / FRAMES, FRAME, speed);
+        assertTrue(sink > 0);
+        assertTrue(speed > 1);
+    }
+}
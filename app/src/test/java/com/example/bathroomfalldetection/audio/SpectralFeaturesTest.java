@@ -0,0 +1,83 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the real FFT against a direct DFT, and that the spectral features tell a low
+ * thud from steady hiss.
+ */
+public class SpectralFeaturesTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME = 4000;
+    private static final float[] BANDS = {0, 250, 1000, 4000, SAMPLE_RATE / 2f};
+
+    @Test
+    public void fft_matchesDirectDft() {
+        Random random = new Random(1);
+        for (int size = 4; size <= 512; size <<= 1) {
+            double[] x = new double[size];
+            for (int n = 0; n < size; n++) {
+                x[n] = random.nextGaussian();
+            }
+            double[] data = x.clone();
+            RealFft fft = new RealFft(size);
+            fft.forward(data);
+            for (int k = 0; k <= size / 2; k++) {
+                double re = 0;
+                double im = 0;
+                for (int n = 0; n < size; n++) {
+                    re += x[n] * Math.cos(2 * Math.PI * k * n / size);
+                    im -= x[n] * Math.sin(2 * Math.PI * k * n / size);
+                }
+                if (k == 0) {
+                    assertEquals(re, data[0], 1e-9);
+                } else if (k == size / 2) {
+                    assertEquals(re, data[1], 1e-9);
+                } else {
+                    assertEquals("size " + size + " bin " + k, re, data[2 * k], 1e-9);
+                    assertEquals("size " + size + " bin " + k, im, data[2 * k + 1], 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void features_separateLowThudFromSteadyHiss() {
+        SpectralFeatures features = new SpectralFeatures(FRAME, SAMPLE_RATE, BANDS);
+        short[] frame = new short[FRAME];
+        Random random = new Random(1);
+        double hissFlux = 0;
+        double hissRelativeFlux = 0;
+        for (int f = 0; f < 20; f++) {
+            for (int n = 0; n < FRAME; n++) {
+                frame[n] = (short) (random.nextGaussian() * 500);
+            }
+            features.process(frame, 0);
+            if (f > 0) {
+                hissFlux = Math.max(hissFlux, features.flux());
+                hissRelativeFlux = Math.max(hissRelativeFlux, features.relativeFlux());
+            } else {
+                assertTrue(Double.isNaN(features.flux()));
+            }
+        }
+        // White noise spreads over the bands in proportion to their width
+        assertTrue(features.bandFraction(3) > 0.8);
+
+        // A decaying 80 Hz thud starting a quarter into the frame, over the same hiss
+        for (int n = 0; n < FRAME; n++) {
+            int t = n - FRAME / 4;
+            double thud = t < 0 ? 0 : 20000 * Math.exp(-t / 400.0) * Math.sin(2 * Math.PI * 80 * t / SAMPLE_RATE);
+            frame[n] = (short) (thud + random.nextGaussian() * 500);
+        }
+        features.process(frame, 0);
+        assertTrue(features.bandFraction(0) > 0.8);
+        assertTrue(features.flux() > 2 * hissFlux);
+        assertTrue(features.relativeFlux() > 1.5 * hissRelativeFlux);
+        assertTrue(features.relativeFlux() <= 1);
+    }
+}
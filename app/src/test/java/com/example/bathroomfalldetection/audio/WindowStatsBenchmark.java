@@ -0,0 +1,46 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the normalized variance test per frame. Left out of the unit tests, run with
+ * {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public class WindowStatsBenchmark {
+
+    private static final int ITERATIONS = 5000000;
+
+    @Test
+    public void normalizedVariance_framesPerSecond() {
+        AcousticImpactDetector detector = new AcousticImpactDetector(17, 1.6e7, 0.000225, 0,
+                new AcousticImpactDetector.Listener() {
+                    public void onImpact(long timestampNanos, double pulse) {
+                    }
+
+                    public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+                    }
+                });
+        Random random = new Random(1);
+        double[] energies = new double[1024];
+        for (int i = 0; i < energies.length; i++) {
+            energies[i] = 1e6 * Math.abs(random.nextGaussian());
+        }
+        for (int i = 0; i < ITERATIONS; i++) {
+            detector.onEnergy(i, energies[i & 1023]);
+        }
+        double sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            detector.onEnergy(i, energies[i & 1023]);
+            sink += detector.getNormalizedVariance();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("acoustic detector: %.0f frames/s, %.1f ns each%n",
+                ITERATIONS * 1e9 / elapsed, (double) elapsed / ITERATIONS);
+        assertFalse(Double.isNaN(sink));
+    }
+}
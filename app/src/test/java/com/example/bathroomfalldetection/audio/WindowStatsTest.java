@@ -0,0 +1,71 @@
+package com.example.bathroomfalldetection.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sliding window statistics against recomputing each window, and the
+ * normalized variance test on a single loud frame.
+ */
+public class WindowStatsTest {
+
+    @Test
+    public void stats_matchRecomputedWindow() {
+        Random random = new Random(1);
+        for (int length = 1; length <= 20; length++) {
+            WindowStats stats = new WindowStats(length);
+            double[] history = new double[10 * length];
+            for (int i = 0; i < history.length; i++) {
+                // PCM energies, large enough to expose cancellation
+                history[i] = 1e7 * (1 + random.nextInt(5)) + random.nextGaussian() * 1e5;
+                stats.add(history[i]);
+                int n = Math.min(i + 1, length);
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                double sum = 0;
+                for (int j = i + 1 - n; j <= i; j++) {
+                    min = Math.min(min, history[j]);
+                    max = Math.max(max, history[j]);
+                    sum += history[j];
+                }
+                double mean = sum / n;
+                double squares = 0;
+                for (int j = i + 1 - n; j <= i; j++) {
+                    squares += (history[j] - mean) * (history[j] - mean);
+                }
+                assertEquals(min, stats.min(), 0);
+                assertEquals(max, stats.max(), 0);
+                assertEquals(mean, stats.mean(), 1e-6 * mean);
+                assertEquals(squares / n, stats.variance(), 1e-6 * (squares / n) + 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void detector_reportsIsolatedBurstOnly() {
+        final int[] bursts = new int[1];
+        AcousticImpactDetector detector = new AcousticImpactDetector(17, 1e9, 0.000225, 0,
+                new AcousticImpactDetector.Listener() {
+                    public void onImpact(long timestampNanos, double pulse) {
+                    }
+
+                    public void onIsolatedBurst(long timestampNanos, double normalizedVariance) {
+                        assertEquals(300, timestampNanos);
+                        bursts[0]++;
+                    }
+                });
+        Random random = new Random(1);
+        for (int i = 0; i < 400; i++) {
+            // Steady noise with one loud frame
+            double energy = i == 300 ? 1e8 : 1e5 + random.nextGaussian() * 1e3;
+            detector.onEnergy(i, energy);
+            if (i > 17 && i != 300) {
+                assertTrue(detector.getNormalizedVariance() > 0.000225);
+            }
+        }
+        assertEquals(1, bursts[0]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.bathroomfalldetection.detection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveThresholdTest {
+
+    private static final float G = 9.80665f;
+
+    @Test
+    public void thresholds_followLearnedExtremes() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold();
+        feed(threshold, 1, AdaptiveThreshold.WARM_UP_SAMPLES, 4f);
+        assertTrue(threshold.isCalibrated());
+        // 60% of the 1st percentile of a uniform spread
+        assertEquals(0.6f * (G - 4f + 0.02f * 8f), threshold.freeFallThreshold(), 0.1f);
+        // The spread rule wins: mean plus six standard deviations of the uniform spread
+        assertEquals(G + 6 * 8f / (float) Math.sqrt(12), threshold.impactThreshold(), 0.1f);
+    }
+
+    @Test
+    public void thresholds_areClamped() {
+        AdaptiveThreshold still = new AdaptiveThreshold();
+        // A phone that never moves would otherwise get a hair trigger
+        feed(still, 2, AdaptiveThreshold.WARM_UP_SAMPLES, 0.01f);
+        assertEquals(5.0f, still.freeFallThreshold(), 0);
+        assertEquals(2 * G, still.impactThreshold(), 1e-4f);
+    }
+
+    @Test
+    public void beforeWarmUp_isNotCalibrated() {
+        AdaptiveThreshold threshold = new AdaptiveThreshold();
+        feed(threshold, 3, AdaptiveThreshold.WARM_UP_SAMPLES - 1, 4f);
+        assertFalse(threshold.isCalibrated());
+    }
+
+    @Test
+    public void writeThenRead_givesSameThresholds() throws IOException {
+        AdaptiveThreshold original = new AdaptiveThreshold();
+        feed(original, 4, AdaptiveThreshold.WARM_UP_SAMPLES, 4f);
+        AdaptiveThreshold restored = new AdaptiveThreshold();
+        restored.readFrom(read(write(original)));
+        assertEquals(original.sampleCount(), restored.sampleCount());
+        assertTrue(restored.isCalibrated());
+        assertEquals(original.freeFallThreshold(), restored.freeFallThreshold(), 0);
+        assertEquals(original.impactThreshold(), restored.impactThreshold(), 0);
+    }
+
+    @Test
+    public void otherVersion_isIgnored() throws IOException {
+        AdaptiveThreshold original = new AdaptiveThreshold();
+        feed(original, 5, 100, 4f);
+        byte[] state = write(original);
+        ByteBuffer.wrap(state).putInt(0, 99);
+        AdaptiveThreshold restored = new AdaptiveThreshold();
+        restored.onSample(G);
+        restored.readFrom(read(state));
+        assertEquals(1, restored.sampleCount());
+    }
+
+    @Test
+    public void corruptState_isRejectedAndForgotten() throws IOException {
+        AdaptiveThreshold original = new AdaptiveThreshold();
+        feed(original, 6, 100, 4f);
+        byte[] state = write(original);
+        // The low quantile's count, after the version and the running stats
+        ByteBuffer.wrap(state).putLong(4 + 24, -5);
+        assertForgotten(state);
+        // Truncated
+        assertForgotten(Arrays.copyOf(write(original), 40));
+    }
+
+    private static void assertForgotten(byte[] state) {
+        AdaptiveThreshold restored = new AdaptiveThreshold();
+        restored.onSample(G);
+        try {
+            restored.readFrom(read(state));
+            fail();
+        } catch (IOException e) {
+            // Nothing half-restored is kept
+            assertEquals(0, restored.sampleCount());
+            assertEquals(0, restored.getStats().mean(), 0);
+        }
+    }
+
+    /**
+     * Feeds magnitudes spread uniformly up to {@code spread} m/s^2 either side of 1 g.
+     */
+    private static void feed(AdaptiveThreshold threshold, long seed, long count, float spread) {
+        Random random = new Random(seed);
+        for (long i = 0; i < count; i++) {
+            threshold.onSample(G + (2 * random.nextFloat() - 1) * spread);
+        }
+    }
+
+    private static byte[] write(AdaptiveThreshold threshold) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        threshold.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream read(byte[] state) {
+        return new DataInputStream(new ByteArrayInputStream(state));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.bathroomfalldetection.detection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventCorrelatorTest {
+
+    private static final long MS = 1000000L;
+    private static final long WINDOW_NANOS = 1500 * MS;
+    private static final float THRESHOLD = 0.5f;
+
+    private final List<long[]> falls = new ArrayList<>();
+    private final List<Float> scores = new ArrayList<>();
+
+    private final EventCorrelator.Listener listener = new EventCorrelator.Listener() {
+        public void onCorrelatedFall(long accelNanos, long audioNanos, float score) {
+            falls.add(new long[]{accelNanos, audioNanos});
+            scores.add(score);
+        }
+    };
+
+    @Test
+    public void candidatesWithinWindow_escalateOnce() {
+        EventCorrelator correlator = new EventCorrelator(WINDOW_NANOS, 8, THRESHOLD, listener);
+        assertFalse(correlator.add(EventCorrelator.ACCELEROMETER, 0, 1f));
+        assertTrue(correlator.add(EventCorrelator.AUDIO, 500 * MS, 1f));
+        assertEquals(1, falls.size());
+        assertArrayEquals(new long[]{0, 500 * MS}, falls.get(0));
+        // A third of the window apart costs a sixth of the score
+        assertEquals(1 - 0.5f / 3, scores.get(0), 1e-6f);
+        // Both candidates are used up
+        assertFalse(correlator.add(EventCorrelator.AUDIO, 600 * MS, 1f));
+        assertEquals(1, falls.size());
+    }
+
+    @Test
+    public void audioBeforeAccelerometer_alsoPairs() {
+        EventCorrelator correlator = new EventCorrelator(WINDOW_NANOS, 8, THRESHOLD, listener);
+        assertFalse(correlator.add(EventCorrelator.AUDIO, 1000 * MS, 1f));
+        assertTrue(correlator.add(EventCorrelator.ACCELEROMETER, 900 * MS, 1f));
+        assertArrayEquals(new long[]{900 * MS, 1000 * MS}, falls.get(0));
+    }
+
+    @Test
+    public void candidatesOutsideWindow_expireWithoutEscalating() {
+        EventCorrelator correlator = new EventCorrelator(WINDOW_NANOS, 8, THRESHOLD, listener);
+        assertFalse(correlator.add(EventCorrelator.ACCELEROMETER, 0, 1f));
+        assertFalse(correlator.add(EventCorrelator.AUDIO, WINDOW_NANOS + 1, 1f));
+        assertTrue(falls.isEmpty());
+        assertTrue(correlator.describe(), correlator.describe().contains("expired=1"));
+        assertTrue(correlator.describe(), correlator.describe().contains("pending=0/1"));
+    }
+
+    @Test
+    public void weakPair_isHeldBack() {
+        EventCorrelator correlator = new EventCorrelator(WINDOW_NANOS, 8, THRESHOLD, listener);
+        assertFalse(correlator.add(EventCorrelator.ACCELEROMETER, 0, 0.6f));
+        assertFalse(correlator.add(EventCorrelator.AUDIO, 0, 0.2f));
+        assertTrue(falls.isEmpty());
+        assertTrue(correlator.describe(), correlator.describe().contains("pending=1/1"));
+    }
+
+    @Test
+    public void fullRing_dropsOldestCandidate() {
+        EventCorrelator correlator = new EventCorrelator(WINDOW_NANOS, 2, THRESHOLD, listener);
+        correlator.add(EventCorrelator.ACCELEROMETER, 0, 1f);
+        correlator.add(EventCorrelator.ACCELEROMETER, MS, 0.2f);
+        correlator.add(EventCorrelator.ACCELEROMETER, 2 * MS, 0.2f);
+        assertTrue(correlator.describe(), correlator.describe().contains("overflowed=1"));
+        // Only the strong first candidate would have been enough
+        assertFalse(correlator.add(EventCorrelator.AUDIO, 3 * MS, 0.8f));
+        assertTrue(falls.isEmpty());
+    }
+
+    @Test
+    public void unavailableModality_isNotWaitedFor() {
+        EventCorrelator correlator = new EventCorrelator(WINDOW_NANOS, 8, THRESHOLD, listener);
+        correlator.setAvailable(EventCorrelator.AUDIO, false);
+        assertFalse(correlator.add(EventCorrelator.ACCELEROMETER, 0, 0.4f));
+        assertTrue(correlator.add(EventCorrelator.ACCELEROMETER, MS, 0.6f));
+        assertArrayEquals(new long[]{MS, -1}, falls.get(0));
+        assertEquals(0.6f, scores.get(0), 1e-6f);
+        // Candidates judged alone are not kept for a partner
+        correlator.setAvailable(EventCorrelator.AUDIO, true);
+        assertFalse(correlator.add(EventCorrelator.AUDIO, 2 * MS, 1f));
+        assertEquals(1, falls.size());
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.bathroomfalldetection.detection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the gravity/linear acceleration split on the JVM. Left out of the unit tests,
+ * run with {@code ./gradlew :app:testDebugUnitTest -Pbenchmarks}.
+ */
+public class GravitySeparatorBenchmark {
+
+    private static final float GRAVITY = 9.81f;
+    private static final float RATE = 50f;
+    private static final float CUTOFF = 0.3f;
+    private static final int WARM_UP = 1000000;
+    private static final int ITERATIONS = 10000000;
+
+    @Test
+    public void separator_samplesPerSecond() {
+        GravitySeparator separator = new GravitySeparator(RATE, CUTOFF);
+        float[] xs = new float[1024];
+        float[] ys = new float[1024];
+        float[] zs = new float[1024];
+        Random random = new Random(1);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = (float) random.nextGaussian();
+            ys[i] = (float) random.nextGaussian();
+            zs[i] = GRAVITY + (float) random.nextGaussian();
+        }
+        double sink = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            separator.process(xs[i & 1023], ys[i & 1023], zs[i & 1023]);
+            sink += separator.gravityZ;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            separator.process(xs[i & 1023], ys[i & 1023], zs[i & 1023]);
+            sink += separator.gravityZ;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("gravity separator: %.0f samples/s, %.1f ns each%n",
+                ITERATIONS * 1e9 / elapsed, (double) elapsed / ITERATIONS);
+        // Noise averages out of the gravity estimate
+        assertEquals(GRAVITY, sink / (WARM_UP + ITERATIONS), 0.05);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.bathroomfalldetection.detection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the gravity/linear acceleration split separates a tilted gravity vector
+ * from body motion.
+ */
+public class GravitySeparatorTest {
+
+    private static final float GRAVITY = 9.81f;
+    private static final float RATE = 50f;
+    private static final float CUTOFF = 0.3f;
+
+    @Test
+    public void separator_splitsGravityFromMotion() {
+        GravitySeparator separator = new GravitySeparator(RATE, CUTOFF);
+        float gx = 0.6f * GRAVITY;
+        float gz = 0.8f * GRAVITY;
+        for (int i = 0; i < 30 * RATE; i++) {
+            // 3 Hz shaking along y on top of a tilted gravity vector
+            float shake = 2f * (float) Math.sin(2 * Math.PI * 3 * i / RATE);
+            separator.process(gx, shake, gz);
+            if (i == 0) {
+                // Primed: no start-up transient
+                assertEquals(gx, separator.gravityX, 1e-3f);
+                assertEquals(0f, separator.linearX, 1e-3f);
+            }
+        }
+        assertEquals(gx, separator.gravityX, 1e-2f);
+        assertEquals(0f, separator.gravityY, 0.05f);
+        assertEquals(gz, separator.gravityZ, 1e-2f);
+        assertEquals(0f, separator.linearX, 1e-2f);
+        assertEquals(0f, separator.linearZ, 1e-2f);
+        float peak = 0;
+        for (int i = 0; i < RATE; i++) {
+            float shake = 2f * (float) Math.sin(2 * Math.PI * 3 * i / RATE);
+            separator.process(gx, shake, gz);
+            peak = Math.max(peak, Math.abs(separator.linearY));
+        }
+        assertEquals(2f, peak, 0.1f);
+    }
+
+    @Test
+    public void gravityAndLinear_addUpToRawSample() {
+        GravitySeparator separator = new GravitySeparator(RATE, CUTOFF);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            float x = (float) random.nextGaussian();
+            float y = 5 * (float) random.nextGaussian();
+            float z = GRAVITY + (float) random.nextGaussian();
+            separator.process(x, y, z);
+            assertEquals(x, separator.gravityX + separator.linearX, 1e-4f);
+            assertEquals(y, separator.gravityY + separator.linearY, 1e-4f);
+            assertEquals(z, separator.gravityZ + separator.linearZ, 1e-4f);
+        }
+    }
+
+    @Test
+    public void freeFall_cancelsGravity() {
+        GravitySeparator separator = new GravitySeparator(RATE, CUTOFF);
+        float gx = 0.6f * GRAVITY;
+        float gz = 0.8f * GRAVITY;
+        for (int i = 0; i < 10 * RATE; i++) {
+            separator.process(gx, 0, gz);
+        }
+        assertEquals(0f, separator.linearAlongGravity(), 1e-3f);
+        // A third of a second with nothing measured, whichever way the phone is tilted
+        for (int i = 0; i < RATE / 3; i++) {
+            separator.process(0, 0, 0);
+        }
+        assertEquals(-GRAVITY, separator.linearAlongGravity(), 0.5f);
+        assertEquals(GRAVITY, separator.gravityMagnitude(), 0.5f);
+    }
+
+    @Test
+    public void setSampleRate_keepsCutoffInHz() {
+        GravitySeparator separator = new GravitySeparator(RATE, CUTOFF);
+        separator.setSampleRate(5f);
+        separator.process(0, 0, GRAVITY);
+        for (int i = 0; i < 20 * 5; i++) {
+            separator.process(0, 0, 0);
+        }
+        // 20 s is many time constants at 0.3 Hz, whatever the rate
+        assertEquals(0f, separator.gravityZ, 0.1f);
+    }
+}
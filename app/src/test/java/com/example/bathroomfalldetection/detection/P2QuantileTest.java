@@ -0,0 +1,150 @@
+package com.example.bathroomfalldetection.detection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class P2QuantileTest {
+
+    private static final int VALUES = 20000;
+
+    @Test
+    public void estimate_tracksSortedQuantile() {
+        Random random = new Random(1);
+        double[] gaussian = new double[VALUES];
+        double[] skewed = new double[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            gaussian[i] = 9.81 + random.nextGaussian();
+            skewed[i] = Math.exp(random.nextGaussian());
+        }
+        for (double p : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            assertRank(gaussian, p);
+            assertRank(skewed, p);
+        }
+    }
+
+    @Test
+    public void firstFiveValues_areExact() {
+        P2Quantile median = new P2Quantile(0.5);
+        for (double x : new double[]{5, 1, 4, 2}) {
+            median.add(x);
+            assertFalse(median.isReady());
+            assertTrue(Double.isNaN(median.value()));
+        }
+        median.add(3);
+        assertTrue(median.isReady());
+        assertEquals(3, median.value(), 0);
+    }
+
+    @Test
+    public void reset_forgetsValues() {
+        P2Quantile median = new P2Quantile(0.5);
+        for (int i = 0; i < 10; i++) {
+            median.add(i);
+        }
+        median.reset();
+        assertEquals(0, median.count());
+        assertTrue(Double.isNaN(median.value()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileOutsideUnitInterval_isRejected() {
+        new P2Quantile(1);
+    }
+
+    @Test
+    public void writeThenRead_continuesIdentically() throws IOException {
+        Random random = new Random(2);
+        P2Quantile original = new P2Quantile(0.9);
+        for (int i = 0; i < 1000; i++) {
+            original.add(random.nextGaussian());
+        }
+        P2Quantile restored = new P2Quantile(0.9);
+        restored.readFrom(read(write(original)));
+        assertEquals(original.count(), restored.count());
+        for (int i = 0; i < 1000; i++) {
+            double x = random.nextGaussian();
+            original.add(x);
+            restored.add(x);
+            assertEquals(original.value(), restored.value(), 0);
+        }
+    }
+
+    @Test
+    public void markersOutOfOrder_areRejected() throws IOException {
+        P2Quantile original = new P2Quantile(0.5);
+        for (int i = 0; i < 100; i++) {
+            original.add(i);
+        }
+        byte[] state = write(original);
+        // Second marker height above the third
+        ByteBuffer.wrap(state).putDouble(8 + 24, 1e300);
+        assertRejected(state);
+    }
+
+    @Test
+    public void badPositions_areRejected() throws IOException {
+        P2Quantile original = new P2Quantile(0.5);
+        for (int i = 0; i < 100; i++) {
+            original.add(i);
+        }
+        byte[] state = write(original);
+        // Count no longer matches the last marker's rank
+        ByteBuffer.wrap(state).putLong(0, 50);
+        assertRejected(state);
+        state = write(original);
+        ByteBuffer.wrap(state).putLong(0, -1);
+        assertRejected(state);
+    }
+
+    /**
+     * Checks that the estimate has close to a fraction {@code p} of the values below it.
+     */
+    private static void assertRank(double[] values, double p) {
+        P2Quantile estimator = new P2Quantile(p);
+        for (double x : values) {
+            estimator.add(x);
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double estimate = estimator.value();
+        int below = 0;
+        while (below < sorted.length && sorted[below] < estimate) {
+            below++;
+        }
+        assertEquals("p=" + p, p, (double) below / sorted.length, 0.01);
+    }
+
+    private static void assertRejected(byte[] state) {
+        P2Quantile restored = new P2Quantile(0.5);
+        restored.add(7);
+        try {
+            restored.readFrom(read(state));
+            fail();
+        } catch (IOException e) {
+            // Left as it was
+            assertEquals(1, restored.count());
+        }
+    }
+
+    private static byte[] write(P2Quantile quantile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        quantile.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream read(byte[] state) {
+        return new DataInputStream(new ByteArrayInputStream(state));
+    }
+}
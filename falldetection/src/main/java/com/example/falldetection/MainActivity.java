@@ -2,6 +2,16 @@ package com.example.falldetection;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.falldetection.detection.AdaptiveThreshold;
+import com.example.falldetection.detection.ClassifierLoader;
+import com.example.falldetection.detection.FallDetectionPipeline;
+import com.example.falldetection.detection.FallDetector;
+import com.example.falldetection.detection.FallEvent;
+import com.example.falldetection.detection.SamplingRateGovernor;
+import com.example.falldetection.detection.ShadowEvaluator;
+import com.example.falldetection.metrics.StageLatency;
+import com.example.falldetection.recording.BlackBoxRecorder;
+
 import android.app.Activity;
 import android.app.ListActivity;
 import android.bluetooth.BluetoothAdapter;
@@ -11,18 +21,31 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * Based heavily on:
  * https://github.com/android/connectivity-samples/tree/master/BluetoothChat/#readme
@@ -57,11 +80,48 @@ public class MainActivity extends AppCompatActivity {
      // Fall detection variables
     private SensorManager sensorManager;
     private Sensor accelSensor;
-    private double ACCEL_THRESHOLD = 3.0; // TODO: Choose accelerometer threshold
-    private int FALL_COUNT_THRESH = 1;
-    private int fallCount = 0;
+    private float ACCEL_THRESHOLD = 3.0f; // TODO: Choose accelerometer threshold
+    private FallDetectionPipeline pipeline;
+    private final AdaptiveThreshold adaptiveThreshold = new AdaptiveThreshold();
+    private final String THRESHOLD_STATE_FILENAME = "adaptive_threshold.bin";
+    private final String CLASSIFIER_FILENAME = "fall_classifier.bin";
+    private final float CLASSIFIER_THRESHOLD = 0.5f;
+
+    // Black box recording of raw samples, frozen into an incident file on a fall
+    private BlackBoxRecorder blackBox;
+    // Writes incident files, so the ingestion thread only copies the samples
+    private ExecutorService incidentExecutor;
+    private final String BLACK_BOX_FILENAME = "black_box.bin";
+    private final String INCIDENT_DIRECTORY = "incidents";
+    private final int BLACK_BOX_CAPACITY = 65536; // ~20 min at SENSOR_DELAY_GAME
+    private final long INCIDENT_BEFORE_NANOS = 20L * 1000 * 1000 * 1000;
+    private final int INCIDENT_AFTER_MS = 5 * 1000;
+    private SensorSessionManager sensorSessions;
+    private SensorIngestion sensorIngestion;
+    // Let the sensor hub batch samples so the CPU can sleep between deliveries
+    private final int SAMPLING_PERIOD_US = SensorManager.SENSOR_DELAY_GAME;
+    private final int MAX_REPORT_LATENCY_US = 1000 * 1000;
+    // Sample slowly while the phone lies still, fast while it moves
+    private final int IDLE_SAMPLING_PERIOD_US = SensorManager.SENSOR_DELAY_NORMAL;
+    private final float ACTIVE_MOTION_VARIANCE = 0.5f;
+    private final float IDLE_MOTION_VARIANCE = 0.05f;
+    private final long IDLE_COOLDOWN_NANOS = 30L * 1000 * 1000 * 1000;
     private boolean alertSent;
 
+    // Shadow detectors try other settings on the live stream, for logging only
+    private ExecutorService shadowExecutor;
+    private ShadowEvaluator shadowEvaluator;
+    private final int SHADOW_RING_CAPACITY = 4096; // ~20 s at SENSOR_DELAY_GAME
+
+    // Impact-to-alert latency per stage, times on the elapsedRealtimeNanos clock
+    private final int STAGE_IMPACT = 0;
+    private final int STAGE_CONFIRMED = 1;
+    private final int STAGE_DECIDED = 2;
+    private final int STAGE_ALERT_SENT = 3;
+    private final StageLatency alertLatency =
+            new StageLatency("impact", "confirmed", "decided", "alert_sent");
+    private final String LATENCY_FILENAME = "alert_latency.csv";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -93,6 +153,24 @@ public class MainActivity extends AppCompatActivity {
         // Accelerometer/sensor setup
         sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
         accelSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        FallDetector.Config config = new FallDetector.Config();
+        config.freeFallThreshold = ACCEL_THRESHOLD;
+        FallDetector.Config fixedConfig = config.copy();
+        loadThresholdState();
+        pipeline = new FallDetectionPipeline(config, fallListener, adaptiveThreshold);
+        loadClassifier();
+        // Gyroscope and barometer are optional, fusion uses whichever the phone has
+        Sensor gyroSensor = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        Sensor pressureSensor = sensorManager.getDefaultSensor(Sensor.TYPE_PRESSURE);
+        sensorSessions = SensorSessionManager.getInstance(this);
+        sensorIngestion = new SensorIngestion(sensorSessions, accelSensor, gyroSensor,
+                pressureSensor, pipeline);
+        sensorIngestion.setRateGovernor(
+                new SamplingRateGovernor(ACTIVE_MOTION_VARIANCE, IDLE_MOTION_VARIANCE, IDLE_COOLDOWN_NANOS),
+                IDLE_SAMPLING_PERIOD_US, SAMPLING_PERIOD_US,
+                sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION));
+        openBlackBox();
+        startShadowMode(fixedConfig);
     }
 
 
@@ -119,6 +197,33 @@ public class MainActivity extends AppCompatActivity {
         if (mCommService != null) {
             mCommService.stop();
         }
+        // Close the recording on the thread that writes it, before ingestion stops
+        sensorIngestion.post(new Runnable() {
+            public void run() {
+                closeBlackBox();
+            }
+        });
+        // Returns once the queued samples are handled, nothing hands work to the executors after
+        sensorIngestion.stop();
+        sensorIngestion.setShadowEvaluator(null);
+        shadowExecutor.shutdown();
+        // Lets an incident file already handed over finish
+        incidentExecutor.shutdown();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        Log.d("SensorSessions", sensorSessions.describe());
+        Log.d("Shadow", shadowEvaluator.describe());
+        dumpLatency();
+        // The learner is only touched on the ingestion thread, so save it from there
+        sensorIngestion.post(new Runnable() {
+            public void run() {
+                saveThresholdState();
+                Log.d("SensorJitter", sensorIngestion.getJitterMonitor().describe());
+            }
+        });
     }
 
     @Override
@@ -135,7 +240,7 @@ public class MainActivity extends AppCompatActivity {
                 mCommService.start();
             }
         }
-        sensorManager.registerListener(accelListener, accelSensor, SensorManager.SENSOR_DELAY_NORMAL);
+        sensorIngestion.start(SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US);
     }
 
     /**
@@ -319,43 +424,190 @@ public class MainActivity extends AppCompatActivity {
         ensureDiscoverable();
     }
 
-    public void onClickPairOptions(View v) {
-
-        Intent serverIntent = new Intent(this, DeviceListActivity.class);
-        startActivityForResult(serverIntent, REQUEST_CONNECT_DEVICE_INSECURE);
+    /**
+     * Restores what the adaptive threshold learned in earlier runs, if anything.
+     */
+    private void loadThresholdState() {
+        File f = new File(getFilesDir(), THRESHOLD_STATE_FILENAME);
+        if (!f.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            adaptiveThreshold.readFrom(in);
+            in.close();
+        } catch (IOException e) {
+            Log.e("Exception", "Threshold state read failed: " + e.toString());
+            adaptiveThreshold.reset();
+        }
     }
 
+    /**
+     * Uses a fall classifier model if one has been installed, otherwise every fall the
+     * detector finds raises an alert.
+     */
+    private void loadClassifier() {
+        File f = new File(getFilesDir(), CLASSIFIER_FILENAME);
+        if (!f.exists()) {
+            return;
+        }
+        try {
+            InputStream in = new FileInputStream(f);
+            pipeline.setClassifier(ClassifierLoader.load(in), CLASSIFIER_THRESHOLD);
+            in.close();
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e("Exception", "Classifier load failed: " + e.toString());
+        }
+    }
 
-    // TODO: Do something with the accelerometer
-    public SensorEventListener accelListener = new SensorEventListener() {
-        public void onAccuracyChanged(Sensor sensor, int acc) {
+    private void dumpLatency() {
+        try {
+            alertLatency.dump(new File(getFilesDir(), LATENCY_FILENAME));
+        } catch (IOException e) {
+            Log.e("Exception", "Latency dump failed: " + e.toString());
         }
+    }
+
+    /**
+     * Runs alternative configurations next to the live detector. Their falls are only logged.
+     */
+    private void startShadowMode(FallDetector.Config fixedConfig) {
+        shadowExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "ShadowDetectors");
+            }
+        });
+        shadowEvaluator = new ShadowEvaluator(shadowExecutor, new ShadowEvaluator.Listener() {
+            public void onShadowFall(String name, FallEvent event) {
+                Log.d("Shadow", name + " would have alerted: " + event);
+            }
 
-        public void onSensorChanged(SensorEvent event) {
-//            double[] copy = new double[3];
-            double length = 0.0;
-            for (int i = 0; i < 3; i++) {
-//                copy[i] = event.values[i];
-                length += event.values[i] * event.values[i];
+            public void onShadowDropped(String name) {
+                Log.w("Shadow", name + " fell behind the live stream, dropped");
             }
-            length = Math.sqrt(length);
-//            Log.d("Accelerometer", Arrays.toString(event.values) + " length: " + length);
-            // TODO: Do something
-            if (length < ACCEL_THRESHOLD) {
-                boolean fallDetected = true;
-                fallCount += 1;
-                Log.d("Accelerometer", "Fall detected!!!!!");
-                // If falling motion is consecutive
-                // TODO: Make it adaptive
-                if (fallCount > FALL_COUNT_THRESH && !alertSent) {
-                    // TODO: Send message to bluetooth receiver
-                    Log.d("Accelerometer", "Sending message to receiver");
-                    sendMessage("alert");
-                    alertSent = true;
+        }, SHADOW_RING_CAPACITY);
+        // Compare the learned thresholds against the fixed ones, and a stricter impact
+        shadowEvaluator.add("fixed-thresholds", fixedConfig);
+        FallDetector.Config strictImpact = fixedConfig.copy();
+        strictImpact.impactThreshold = 3.0f * FallDetector.GRAVITY;
+        shadowEvaluator.add("impact-3g", strictImpact);
+        sensorIngestion.setShadowEvaluator(shadowEvaluator);
+    }
+
+    private void openBlackBox() {
+        incidentExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "IncidentWriter");
+            }
+        });
+        try {
+            blackBox = new BlackBoxRecorder(new File(getFilesDir(), BLACK_BOX_FILENAME), BLACK_BOX_CAPACITY);
+            sensorIngestion.setRecorder(blackBox);
+        } catch (IOException e) {
+            Log.e("Exception", "Black box open failed: " + e.toString());
+        }
+    }
+
+    private void closeBlackBox() {
+        if (blackBox == null) {
+            return;
+        }
+        sensorIngestion.setRecorder(null);
+        try {
+            blackBox.close();
+        } catch (IOException e) {
+            Log.e("Exception", "Black box close failed: " + e.toString());
+        }
+        blackBox = null;
+    }
+
+    /**
+     * Once the motion after the fall has been recorded too, copies the samples around
+     * the fall out of the black box and has them written on the incident executor.
+     * Called on the ingestion thread.
+     */
+    private void saveIncident(final FallEvent event) {
+        if (blackBox == null) {
+            return;
+        }
+        sensorIngestion.postDelayed(new Runnable() {
+            public void run() {
+                if (blackBox == null) {
+                    return;
+                }
+                long start = event.hadFreeFall() ? event.freeFallStartNanos : event.impactNanos;
+                File dir = new File(getFilesDir(), INCIDENT_DIRECTORY);
+                dir.mkdirs();
+                File f = new File(dir, "incident_" + System.currentTimeMillis() + ".bin");
+                boolean started = blackBox.freezeInBackground(start - INCIDENT_BEFORE_NANOS,
+                        event.confirmedNanos + INCIDENT_AFTER_MS * 1000000L, f, incidentExecutor,
+                        new BlackBoxRecorder.FreezeListener() {
+                            public void onFrozen(File out, int samples) {
+                                Log.d("BlackBox", "Saved " + samples + " samples to " + out.getName());
+                            }
+
+                            public void onFreezeFailed(File out, IOException e) {
+                                Log.e("Exception", "Incident save failed: " + e.toString());
+                            }
+                        });
+                if (!started) {
+                    Log.w("BlackBox", "Previous incident still being written, skipped " + f.getName());
                 }
-            } else {
-                fallCount = 0;
             }
+        }, INCIDENT_AFTER_MS);
+    }
+
+    private void saveThresholdState() {
+        File f = new File(getFilesDir(), THRESHOLD_STATE_FILENAME);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+            adaptiveThreshold.writeTo(out);
+            out.close();
+        } catch (IOException e) {
+            Log.e("Exception", "Threshold state write failed: " + e.toString());
+        }
+    }
+
+    public void onClickPairOptions(View v) {
+
+        Intent serverIntent = new Intent(this, DeviceListActivity.class);
+        startActivityForResult(serverIntent, REQUEST_CONNECT_DEVICE_INSECURE);
+    }
+
+
+    /**
+     * Sends an alert to the receiver once per fall until the user cancels it.
+     * Called on the sensor ingestion thread.
+     */
+    private final FallDetector.Listener fallListener = new FallDetector.Listener() {
+        public void onFall(final FallEvent event) {
+            // The detector's times are sensor timestamps
+            alertLatency.mark(STAGE_IMPACT, sensorIngestion.toElapsedRealtime(event.impactNanos));
+            alertLatency.mark(STAGE_CONFIRMED, sensorIngestion.toElapsedRealtime(event.confirmedNanos));
+            alertLatency.mark(STAGE_DECIDED, SystemClock.elapsedRealtimeNanos());
+            Log.d("Accelerometer", "Fall detected: " + event);
+            shadowEvaluator.onLiveFall(event);
+            saveIncident(event);
+            runOnUiThread(new Runnable() {
+                public void run() {
+                    if (!alertSent) {
+                        Log.d("Accelerometer", "Sending message to receiver");
+                        sendMessage("alert");
+                        alertLatency.mark(STAGE_ALERT_SENT, SystemClock.elapsedRealtimeNanos());
+                        alertSent = true;
+                    }
+                }
+            });
         }
     };
 
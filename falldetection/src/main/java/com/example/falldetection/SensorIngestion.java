@@ -0,0 +1,387 @@
+package com.example.falldetection;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.falldetection.detection.FallDetectionPipeline;
+import com.example.falldetection.detection.SamplingRateGovernor;
+import com.example.falldetection.detection.SensorJitterMonitor;
+import com.example.falldetection.detection.SensorFusion;
+import com.example.falldetection.detection.ShadowEvaluator;
+import com.example.falldetection.recording.BlackBoxRecorder;
+
+/**
+ * Delivers accelerometer samples to a {@link FallDetectionPipeline} on a dedicated
+ * background thread, optionally letting the sensor hub batch them.
+ * <p>
+ * With a non-zero max report latency the hardware FIFO fills while the application
+ * processor sleeps, and the whole batch is delivered back to back on the ingestion
+ * thread. When the detector starts tracking a fall candidate the FIFO is flushed so
+ * the rest of the candidate is seen without waiting for the next batch. The detector
+ * only looks at {@code SensorEvent.timestamp}, so batched and unbatched delivery of the
+ * same samples give the same decisions.
+ * <p>
+ * If a gyroscope or barometer is given, all streams go through a {@link SensorFusion}
+ * and the pipeline receives fused frames instead of raw samples. Raw accelerometer
+ * samples also go to the {@link BlackBoxRecorder} and the {@link ShadowEvaluator}, if set.
+ * <p>
+ * With a {@link SamplingRateGovernor} the sampling period follows the amount of motion:
+ * slow while the phone lies still, fast as soon as it moves. A significant motion
+ * sensor, if given, wakes the fast rate while the accelerometer runs slow. Every rate
+ * change goes through {@link #register}, and registrations go through the process-wide
+ * {@link SensorSessionManager} so restarting never leaves a duplicate subscription behind.
+ * <p>
+ * Accelerometer timestamps also go through a {@link SensorJitterMonitor}, and a warning
+ * is logged whenever the OS delivers noticeably fewer samples than requested.
+ * <p>
+ * The pipeline and its listeners are called on the ingestion thread.
+ */
+public class SensorIngestion implements SensorEventListener2 {
+
+    private static final String TAG = "SensorIngestion";
+
+    // How long an accelerometer sample may wait for gyroscope data, on top of batching
+    private static final long FUSION_LATENCY_NANOS = 100 * 1000000L;
+    private static final long JITTER_WINDOW_NANOS = 10 * 1000 * 1000000L;
+    // Sensor timestamps are elapsedRealtimeNanos on most devices but not all. Measured on
+    // the first accelerometer event after each start, a difference under the tolerance
+    // plus the batching latency is delivery delay
+    private static final long SENSOR_CLOCK_TOLERANCE_NANOS = 1000 * 1000000L;
+
+    private final SensorSessionManager sessions;
+    private final SensorManager sensorManager;
+    private final Sensor sensor;
+    private final Sensor gyroscope;
+    private final Sensor barometer;
+    private final FallDetectionPipeline pipeline;
+
+    private HandlerThread thread;
+    private Handler handler;
+    private SensorFusion fusion;
+    private volatile BlackBoxRecorder recorder;
+    private volatile ShadowEvaluator shadows;
+    private boolean batching;
+    private int latencyUs;
+    private boolean wasCandidate;
+    private long sensorClockOffset;
+    private boolean sensorClockMeasured;
+
+    private SamplingRateGovernor governor;
+    private int slowPeriodUs;
+    private int fastPeriodUs;
+    private Sensor significantMotion;
+    private int currentPeriodUs;
+    private final SensorJitterMonitor jitter = new SensorJitterMonitor(JITTER_WINDOW_NANOS);
+
+    public SensorIngestion(SensorSessionManager sessions, Sensor sensor, FallDetectionPipeline pipeline) {
+        this(sessions, sensor, null, null, pipeline);
+    }
+
+    /**
+     * @param gyroscope a TYPE_GYROSCOPE sensor, or null
+     * @param barometer a TYPE_PRESSURE sensor, or null
+     */
+    public SensorIngestion(SensorSessionManager sessions, Sensor sensor, Sensor gyroscope,
+                           Sensor barometer, FallDetectionPipeline pipeline) {
+        this.sessions = sessions;
+        this.sensorManager = sessions.getSensorManager();
+        this.sensor = sensor;
+        this.gyroscope = gyroscope;
+        this.barometer = barometer;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Lets {@code governor} pick the sampling period. Call before {@link #start}, whose
+     * period argument is then ignored.
+     *
+     * @param significantMotion a TYPE_SIGNIFICANT_MOTION sensor to wake on, or null
+     */
+    public synchronized void setRateGovernor(SamplingRateGovernor governor, int slowPeriodUs,
+                                             int fastPeriodUs, Sensor significantMotion) {
+        this.governor = governor;
+        this.slowPeriodUs = slowPeriodUs;
+        this.fastPeriodUs = fastPeriodUs;
+        this.significantMotion = significantMotion;
+    }
+
+    /**
+     * Starts delivery. Does nothing if already started.
+     *
+     * @param samplingPeriodUs   requested sampling period, or one of the SENSOR_DELAY constants
+     * @param maxReportLatencyUs how long samples may wait in the hardware FIFO; 0 disables batching
+     */
+    public synchronized void start(int samplingPeriodUs, int maxReportLatencyUs) {
+        if (thread != null) {
+            return;
+        }
+        // An absolute priority: MORE_FAVORABLE is only a step above the default, and a
+        // batch arriving while the UI is busy must still be handled before the next one
+        thread = new HandlerThread("SensorIngestion", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        batching = maxReportLatencyUs > 0 && sensor.getFifoMaxEventCount() > 0;
+        if (maxReportLatencyUs > 0 && !batching) {
+            Log.d(TAG, "Sensor has no FIFO, falling back to unbatched delivery");
+        }
+        latencyUs = batching ? maxReportLatencyUs : 0;
+        wasCandidate = false;
+        sensorClockMeasured = false;
+        if (gyroscope != null || barometer != null) {
+            fusion = new SensorFusion(FUSION_LATENCY_NANOS + latencyUs * 1000L,
+                    minPeriodUs() * 1000L, gyroscope != null, pipeline);
+        } else {
+            fusion = null;
+        }
+        if (governor != null) {
+            register(periodFor(governor.getRate()));
+            updateWakeTrigger();
+        } else {
+            register(samplingPeriodUs);
+        }
+    }
+
+    /**
+     * @return the shortest period the accelerometer or gyroscope can deliver at, 0 if unknown
+     */
+    private int minPeriodUs() {
+        int period = sensor.getMinDelay();
+        if (gyroscope != null && gyroscope.getMinDelay() > 0) {
+            period = period > 0 ? Math.min(period, gyroscope.getMinDelay()) : gyroscope.getMinDelay();
+        }
+        return period;
+    }
+
+    /**
+     * (Re-)registers every sensor at {@code periodUs}. The only place sensors get registered.
+     */
+    private synchronized void register(int periodUs) {
+        if (handler == null) {
+            return;
+        }
+        sessions.release(this);
+        currentPeriodUs = periodUs;
+        jitter.setRequestedPeriodNanos(periodNanos(periodUs));
+        if (!sessions.acquire(sensor, periodUs, latencyUs, handler, this)) {
+            Log.w(TAG, "Accelerometer registration refused");
+        }
+        if (gyroscope != null && !sessions.acquire(gyroscope, periodUs, latencyUs, handler, this)) {
+            Log.w(TAG, "Gyroscope registration refused");
+        }
+        if (barometer != null
+                && !sessions.acquire(barometer, SensorManager.SENSOR_DELAY_NORMAL, latencyUs, handler, this)) {
+            Log.w(TAG, "Barometer registration refused");
+        }
+    }
+
+    /**
+     * @return the nominal period of {@code periodUs} in nanoseconds, 0 for as fast as possible
+     */
+    private static long periodNanos(int periodUs) {
+        switch (periodUs) {
+            case SensorManager.SENSOR_DELAY_FASTEST:
+                return 0;
+            case SensorManager.SENSOR_DELAY_GAME:
+                return 20 * 1000000L;
+            case SensorManager.SENSOR_DELAY_UI:
+                return 66667 * 1000L;
+            case SensorManager.SENSOR_DELAY_NORMAL:
+                return 200 * 1000000L;
+            default:
+                return periodUs * 1000L;
+        }
+    }
+
+    private int periodFor(SamplingRateGovernor.Rate rate) {
+        return rate == SamplingRateGovernor.Rate.SLOW ? slowPeriodUs : fastPeriodUs;
+    }
+
+    /**
+     * Arms the significant motion trigger while running slow, disarms it otherwise.
+     */
+    private void updateWakeTrigger() {
+        if (significantMotion == null) {
+            return;
+        }
+        if (governor.getRate() == SamplingRateGovernor.Rate.SLOW) {
+            sensorManager.requestTriggerSensor(wakeListener, significantMotion);
+        } else {
+            sensorManager.cancelTriggerSensor(wakeListener, significantMotion);
+        }
+    }
+
+    private void onRateChanged() {
+        Log.d(TAG, "Sampling rate now " + governor.getRate());
+        register(periodFor(governor.getRate()));
+        updateWakeTrigger();
+    }
+
+    private final TriggerEventListener wakeListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            // Delivered on the main thread, the governor lives on the ingestion thread
+            post(new Runnable() {
+                public void run() {
+                    if (governor.wake()) {
+                        onRateChanged();
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * @return the sampling period sensors are currently registered at
+     */
+    public int getSamplingPeriodUs() {
+        return currentPeriodUs;
+    }
+
+    /**
+     * Stops delivery and waits for the ingestion thread to finish what is already queued,
+     * so nothing runs on it once this returns.
+     */
+    public void stop() {
+        HandlerThread stopping;
+        synchronized (this) {
+            if (thread == null) {
+                return;
+            }
+            if (significantMotion != null) {
+                sensorManager.cancelTriggerSensor(wakeListener, significantMotion);
+            }
+            sessions.release(this);
+            stopping = thread;
+            stopping.quitSafely();
+            thread = null;
+            handler = null;
+        }
+        // Outside the lock: a queued sample may still change rate, and register() takes it
+        if (Thread.currentThread() != stopping) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param recorder where to record raw accelerometer samples, or null to stop recording
+     */
+    public void setRecorder(BlackBoxRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @param shadows alternative detectors to feed raw accelerometer samples, or null
+     */
+    public void setShadowEvaluator(ShadowEvaluator shadows) {
+        this.shadows = shadows;
+    }
+
+    /**
+     * Runs {@code task} on the ingestion thread, after any samples already queued.
+     *
+     * @return false if ingestion is not running
+     */
+    public synchronized boolean post(Runnable task) {
+        return handler != null && handler.post(task);
+    }
+
+    /**
+     * Runs {@code task} on the ingestion thread after {@code delayMillis}.
+     *
+     * @return false if ingestion is not running
+     */
+    public synchronized boolean postDelayed(Runnable task, long delayMillis) {
+        return handler != null && handler.postDelayed(task, delayMillis);
+    }
+
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * @return the accelerometer delivery statistics; only read them on the ingestion thread
+     */
+    public SensorJitterMonitor getJitterMonitor() {
+        return jitter;
+    }
+
+    /**
+     * Puts a sensor timestamp on the elapsedRealtimeNanos clock. Only call it on the
+     * ingestion thread, after the first accelerometer sample.
+     */
+    public long toElapsedRealtime(long sensorNanos) {
+        return sensorNanos + sensorClockOffset;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] v = event.values;
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            if (!sensorClockMeasured) {
+                sensorClockOffset = SystemClock.elapsedRealtimeNanos() - event.timestamp;
+                if (Math.abs(sensorClockOffset) < SENSOR_CLOCK_TOLERANCE_NANOS + latencyUs * 1000L) {
+                    sensorClockOffset = 0;
+                }
+                sensorClockMeasured = true;
+            }
+            if (jitter.onSample(event.timestamp) && jitter.isThrottled()) {
+                Log.w(TAG, "Sensor delivery throttled: " + jitter.describe());
+            }
+            BlackBoxRecorder r = recorder;
+            if (r != null) {
+                r.record(event.timestamp, v[0], v[1], v[2]);
+            }
+            ShadowEvaluator s = shadows;
+            if (s != null) {
+                s.onSample(event.timestamp, v[0], v[1], v[2]);
+            }
+        }
+        if (fusion == null) {
+            pipeline.onSample(event.timestamp, v[0], v[1], v[2]);
+        } else {
+            switch (event.sensor.getType()) {
+                case Sensor.TYPE_ACCELEROMETER:
+                    fusion.onAccelerometer(event.timestamp, v[0], v[1], v[2]);
+                    break;
+                case Sensor.TYPE_GYROSCOPE:
+                    fusion.onGyroscope(event.timestamp, v[0], v[1], v[2]);
+                    break;
+                case Sensor.TYPE_PRESSURE:
+                    fusion.onPressure(event.timestamp, v[0]);
+                    break;
+            }
+        }
+        boolean candidate = pipeline.getDetector().isCandidate();
+        if (candidate && !wasCandidate && batching) {
+            // Don't wait for the next batch to find out how the candidate ends
+            sessions.flush(this);
+        }
+        wasCandidate = candidate;
+        if (governor != null && event.sensor.getType() == Sensor.TYPE_ACCELEROMETER
+                && governor.onSample(event.timestamp, pipeline.getFeatures().magnitudeVariance(), candidate)) {
+            onRateChanged();
+        }
+    }
+
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+        Log.d(TAG, "FIFO flushed");
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.falldetection;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns every sensor registration in the process.
+ * <p>
+ * There is at most one {@link SensorManager} registration per sensor and sampling
+ * period. Listeners that {@link #acquire} the same sensor and period share it, and
+ * acquiring again with a listener that is already subscribed does nothing, so repeated
+ * {@code onResume()} calls cannot stack up duplicate deliveries. The registration is
+ * dropped when its last listener is {@link #release released}.
+ * <p>
+ * Each registration counts the callbacks it delivers and keeps the delivered rate over
+ * the last second, see {@link #getSessions()}.
+ */
+public class SensorSessionManager {
+
+    private static final long RATE_WINDOW_NANOS = 1000 * 1000000L;
+
+    private static SensorSessionManager instance;
+
+    private final SensorManager sensorManager;
+    private final List<Session> sessions = new ArrayList<>();
+
+    public static synchronized SensorSessionManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new SensorSessionManager((SensorManager)
+                    context.getApplicationContext().getSystemService(Context.SENSOR_SERVICE));
+        }
+        return instance;
+    }
+
+    SensorSessionManager(SensorManager sensorManager) {
+        this.sensorManager = sensorManager;
+    }
+
+    /**
+     * Subscribes {@code listener} to {@code sensor} at {@code samplingPeriodUs}.
+     * <p>
+     * If the registration already exists the listener joins it, and receives events on
+     * the thread and with the report latency of whoever created it.
+     *
+     * @param sensor   the sensor, or null if the device has none
+     * @param handler  where to deliver events, or null for the main thread
+     * @return false if there is no sensor or the {@link SensorManager} refused to register
+     *         it, in which case nothing is kept
+     */
+    public synchronized boolean acquire(Sensor sensor, int samplingPeriodUs, int maxReportLatencyUs,
+                                        Handler handler, SensorEventListener listener) {
+        if (sensor == null) {
+            return false;
+        }
+        Session session = find(sensor, samplingPeriodUs);
+        if (session == null) {
+            session = new Session(sensor, samplingPeriodUs);
+            session.add(listener);
+            if (!sensorManager.registerListener(session, sensor, samplingPeriodUs, maxReportLatencyUs, handler)) {
+                return false;
+            }
+            sessions.add(session);
+        } else {
+            session.add(listener);
+        }
+        return true;
+    }
+
+    public synchronized boolean acquire(Sensor sensor, int samplingPeriodUs, SensorEventListener listener) {
+        return acquire(sensor, samplingPeriodUs, 0, null, listener);
+    }
+
+    /**
+     * Unsubscribes {@code listener} from every sensor, dropping registrations nobody uses.
+     */
+    public synchronized void release(SensorEventListener listener) {
+        for (int i = sessions.size() - 1; i >= 0; i--) {
+            Session session = sessions.get(i);
+            if (session.remove(listener) && session.isEmpty()) {
+                sensorManager.unregisterListener(session);
+                sessions.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Flushes the FIFO of every sensor {@code listener} is subscribed to.
+     */
+    public synchronized void flush(SensorEventListener listener) {
+        for (Session session : sessions) {
+            if (session.contains(listener)) {
+                sensorManager.flush(session);
+            }
+        }
+    }
+
+    public SensorManager getSensorManager() {
+        return sensorManager;
+    }
+
+    /**
+     * @return a copy of the current registrations, for reporting
+     */
+    public synchronized List<Session> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    /**
+     * @return one line per registration with its listener count and callback rate
+     */
+    public synchronized String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (Session session : sessions) {
+            sb.append(session).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private Session find(Sensor sensor, int samplingPeriodUs) {
+        for (Session session : sessions) {
+            if (session.sensor == sensor && session.samplingPeriodUs == samplingPeriodUs) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One registration with the {@link SensorManager}, fanned out to its listeners.
+     */
+    public static final class Session implements SensorEventListener2 {
+
+        private final Sensor sensor;
+        private final int samplingPeriodUs;
+        // Copied on change so dispatch never allocates or locks
+        private volatile SensorEventListener[] listeners = new SensorEventListener[0];
+
+        // Written only by the delivering thread
+        private volatile long callbackCount = 0;
+        private volatile float callbacksPerSecond = 0;
+        private long windowStart = -1;
+        private long windowStartCount = 0;
+
+        Session(Sensor sensor, int samplingPeriodUs) {
+            this.sensor = sensor;
+            this.samplingPeriodUs = samplingPeriodUs;
+        }
+
+        public Sensor getSensor() {
+            return sensor;
+        }
+
+        public int getSamplingPeriodUs() {
+            return samplingPeriodUs;
+        }
+
+        public int getListenerCount() {
+            return listeners.length;
+        }
+
+        /**
+         * @return callbacks delivered since the registration was made
+         */
+        public long getCallbackCount() {
+            return callbackCount;
+        }
+
+        /**
+         * @return callbacks delivered per second over the last full second
+         */
+        public float getCallbacksPerSecond() {
+            return callbacksPerSecond;
+        }
+
+        boolean contains(SensorEventListener listener) {
+            for (SensorEventListener l : listeners) {
+                if (l == listener) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(SensorEventListener listener) {
+            if (contains(listener)) {
+                return;
+            }
+            SensorEventListener[] updated = new SensorEventListener[listeners.length + 1];
+            System.arraycopy(listeners, 0, updated, 0, listeners.length);
+            updated[listeners.length] = listener;
+            listeners = updated;
+        }
+
+        boolean remove(SensorEventListener listener) {
+            SensorEventListener[] current = listeners;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == listener) {
+                    SensorEventListener[] updated = new SensorEventListener[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, i);
+                    System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                    listeners = updated;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isEmpty() {
+            return listeners.length == 0;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            long count = callbackCount + 1;
+            callbackCount = count;
+            long t = event.timestamp;
+            if (windowStart < 0) {
+                windowStart = t;
+                windowStartCount = count;
+            } else if (t - windowStart >= RATE_WINDOW_NANOS) {
+                callbacksPerSecond = (count - windowStartCount) * 1e9f / (t - windowStart);
+                windowStart = t;
+                windowStartCount = count;
+            }
+            for (SensorEventListener listener : listeners) {
+                listener.onSensorChanged(event);
+            }
+        }
+
+        @Override
+        public void onFlushCompleted(Sensor sensor) {
+            for (SensorEventListener listener : listeners) {
+                if (listener instanceof SensorEventListener2) {
+                    ((SensorEventListener2) listener).onFlushCompleted(sensor);
+                }
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            for (SensorEventListener listener : listeners) {
+                listener.onAccuracyChanged(sensor, accuracy);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return sensor.getName() + " @" + samplingPeriodUs + "us: " + listeners.length
+                    + " listener(s), " + callbackCount + " callbacks, "
+                    + callbacksPerSecond + "/s";
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.falldetection.detection;
+
+/**
+ * Fixed-capacity ring buffer of accelerometer samples.
+ * <p>
+ * Samples are stored as parallel primitive arrays (timestamp, x, y, z and the squared
+ * magnitude) so that writing a sample from {@code onSensorChanged} never allocates.
+ * Every sample gets a monotonically increasing sequence number; the buffer keeps the
+ * most recent {@link #capacity()} of them.
+ * <p>
+ * Not thread safe: write and read from the thread that delivers sensor events.
+ */
+public final class AccelSampleBuffer {
+
+    private final int mask;
+    private final long[] timestamps;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+    private final float[] magnitudesSq;
+
+    /**
+     * Number of samples ever written, which is also the sequence number of the next sample.
+     */
+    private long count = 0;
+
+    /**
+     * @param minCapacity minimum number of samples to keep, rounded up to a power of two
+     */
+    public AccelSampleBuffer(int minCapacity) {
+        if (minCapacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + minCapacity);
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        timestamps = new long[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        zs = new float[capacity];
+        magnitudesSq = new float[capacity];
+    }
+
+    /**
+     * Appends a sample, overwriting the oldest one when full.
+     *
+     * @return the squared magnitude of the sample
+     */
+    public float add(long timestampNanos, float x, float y, float z) {
+        int i = (int) (count & mask);
+        float magnitudeSq = x * x + y * y + z * z;
+        timestamps[i] = timestampNanos;
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+        magnitudesSq[i] = magnitudeSq;
+        count++;
+        return magnitudeSq;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return number of samples currently held
+     */
+    public int size() {
+        return count < capacity() ? (int) count : capacity();
+    }
+
+    /**
+     * @return number of samples ever written
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return sequence number of the oldest sample still held
+     */
+    public long oldestSequence() {
+        return count - size();
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public long latestTimestamp() {
+        return timestamps[(int) ((count - 1) & mask)];
+    }
+
+    public float latestMagnitudeSquared() {
+        return magnitudesSq[(int) ((count - 1) & mask)];
+    }
+
+    public long timestampAt(long sequence) {
+        return timestamps[(int) (sequence & mask)];
+    }
+
+    public float xAt(long sequence) {
+        return xs[(int) (sequence & mask)];
+    }
+
+    public float yAt(long sequence) {
+        return ys[(int) (sequence & mask)];
+    }
+
+    public float zAt(long sequence) {
+        return zs[(int) (sequence & mask)];
+    }
+
+    public float magnitudeSquaredAt(long sequence) {
+        return magnitudesSq[(int) (sequence & mask)];
+    }
+
+    /**
+     * Points {@code out} at the newest {@code n} samples (or fewer if not enough are held).
+     *
+     * @return the window, for chaining
+     */
+    public AccelWindow latest(int n, AccelWindow out) {
+        int length = Math.min(n, size());
+        out.set(this, count - length, length);
+        return out;
+    }
+
+    /**
+     * Points {@code out} at every held sample with a timestamp at or after {@code fromNanos}.
+     * Uses a binary search, so it is O(log capacity).
+     *
+     * @return the window, for chaining
+     */
+    public AccelWindow since(long fromNanos, AccelWindow out) {
+        long lo = oldestSequence();
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestampAt(mid) < fromNanos) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        out.set(this, lo, (int) (count - lo));
+        return out;
+    }
+}
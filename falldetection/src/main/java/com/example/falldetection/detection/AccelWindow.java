@@ -0,0 +1,67 @@
+package com.example.falldetection.detection;
+
+/**
+ * Read-only view over a contiguous run of samples in an {@link AccelSampleBuffer}.
+ * <p>
+ * A view does not copy data; index {@code 0} is the oldest sample of the window. Views
+ * are meant to be allocated once and re-pointed with {@link AccelSampleBuffer#latest}
+ * or {@link AccelSampleBuffer#since}. A view goes stale once the buffer has wrapped past
+ * its first sample, see {@link #isValid()}.
+ */
+public final class AccelWindow {
+
+    private AccelSampleBuffer buffer;
+    private long start;
+    private int length;
+
+    void set(AccelSampleBuffer buffer, long start, int length) {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = length;
+    }
+
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @return sequence number of the first sample in the window
+     */
+    public long startSequence() {
+        return start;
+    }
+
+    /**
+     * @return true if none of the samples in the window have been overwritten
+     */
+    public boolean isValid() {
+        return buffer != null && start >= buffer.oldestSequence();
+    }
+
+    public long timestamp(int i) {
+        return buffer.timestampAt(start + i);
+    }
+
+    public float x(int i) {
+        return buffer.xAt(start + i);
+    }
+
+    public float y(int i) {
+        return buffer.yAt(start + i);
+    }
+
+    public float z(int i) {
+        return buffer.zAt(start + i);
+    }
+
+    public float magnitudeSquared(int i) {
+        return buffer.magnitudeSquaredAt(start + i);
+    }
+
+    /**
+     * @return time covered by the window in nanoseconds, or 0 for fewer than two samples
+     */
+    public long durationNanos() {
+        return length < 2 ? 0 : timestamp(length - 1) - timestamp(0);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.falldetection.detection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Learns the wearer's everyday acceleration magnitudes and derives the free-fall and
+ * impact thresholds from them.
+ * <p>
+ * Keeps a running mean and variance plus streaming estimates of the 1st and 99th
+ * percentile of the magnitude, all in constant memory. The free-fall threshold sits a
+ * fixed fraction below the lowest magnitudes seen in normal activity and the impact
+ * threshold above the highest, both clamped to ranges that keep detection working if
+ * the learned state is off. Until enough samples have been seen the configured
+ * thresholds are left alone.
+ * <p>
+ * Only feed samples taken while no fall candidate is being tracked, or falls will be
+ * learned as normal activity.
+ */
+public final class AdaptiveThreshold {
+
+    private static final int STATE_VERSION = 1;
+
+    /**
+     * Samples to see before the learned thresholds are used, a few minutes of wear.
+     */
+    public static final long WARM_UP_SAMPLES = 30000;
+
+    private static final float MIN_FREE_FALL = 2.0f;
+    private static final float MAX_FREE_FALL = 5.0f;
+    private static final float MIN_IMPACT = 2.0f * FallDetector.GRAVITY;
+    private static final float MAX_IMPACT = 4.0f * FallDetector.GRAVITY;
+
+    // Free fall is well below the lowest everyday magnitude...
+    private static final float FREE_FALL_SCALE = 0.6f;
+    // ...and an impact well above the highest.
+    private static final float IMPACT_SCALE = 1.3f;
+    private static final float IMPACT_SIGMAS = 6.0f;
+
+    private final RunningStats stats = new RunningStats();
+    private final P2Quantile low = new P2Quantile(0.01);
+    private final P2Quantile high = new P2Quantile(0.99);
+
+    /**
+     * @param magnitude acceleration magnitude in m/s^2
+     */
+    public void onSample(float magnitude) {
+        stats.add(magnitude);
+        low.add(magnitude);
+        high.add(magnitude);
+    }
+
+    public boolean isCalibrated() {
+        return stats.count() >= WARM_UP_SAMPLES;
+    }
+
+    public long sampleCount() {
+        return stats.count();
+    }
+
+    public RunningStats getStats() {
+        return stats;
+    }
+
+    public float freeFallThreshold() {
+        return clamp((float) low.value() * FREE_FALL_SCALE, MIN_FREE_FALL, MAX_FREE_FALL);
+    }
+
+    public float impactThreshold() {
+        float fromQuantile = (float) high.value() * IMPACT_SCALE;
+        float fromSpread = (float) (stats.mean() + IMPACT_SIGMAS * stats.standardDeviation());
+        return clamp(Math.max(fromQuantile, fromSpread), MIN_IMPACT, MAX_IMPACT);
+    }
+
+    /**
+     * Copies the learned thresholds into {@code config} once calibrated.
+     *
+     * @return true if the config was changed
+     */
+    public boolean applyTo(FallDetector.Config config) {
+        if (!isCalibrated()) {
+            return false;
+        }
+        config.freeFallThreshold = freeFallThreshold();
+        config.impactThreshold = impactThreshold();
+        return true;
+    }
+
+    public void reset() {
+        stats.reset();
+        low.reset();
+        high.reset();
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(STATE_VERSION);
+        stats.writeTo(out);
+        low.writeTo(out);
+        high.writeTo(out);
+    }
+
+    /**
+     * Restores state saved by {@link #writeTo}. State from another version is ignored.
+     *
+     * @throws IOException if the state is truncated or inconsistent, in which case
+     *                     everything learned is dropped
+     */
+    public void readFrom(DataInput in) throws IOException {
+        if (in.readInt() != STATE_VERSION) {
+            return;
+        }
+        try {
+            stats.readFrom(in);
+            low.readFrom(in);
+            high.readFrom(in);
+        } catch (IOException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
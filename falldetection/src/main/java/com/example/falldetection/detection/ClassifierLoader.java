@@ -0,0 +1,67 @@
+package com.example.falldetection.detection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads and writes fall classifier models in a compact binary format.
+ * <p>
+ * Layout (big endian): the magic {@code "FDCM"}, a format version, a model type byte,
+ * then the model body written by the model's {@code writeTo}.
+ */
+public final class ClassifierLoader {
+
+    private static final int MAGIC = 0x4644434D; // "FDCM"
+    private static final int VERSION = 1;
+
+    public static final byte TYPE_LOGISTIC_REGRESSION = 1;
+    public static final byte TYPE_TREE_ENSEMBLE = 2;
+
+    // Sanity limits so a corrupt file cannot make us allocate gigabytes
+    static final int MAX_FEATURES = 1024;
+    static final int MAX_TREES = 10000;
+    static final int MAX_NODES = 1 << 20;
+
+    private ClassifierLoader() {
+    }
+
+    public static FallClassifier load(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a fall classifier model");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model version " + version);
+        }
+        byte type = data.readByte();
+        switch (type) {
+            case TYPE_LOGISTIC_REGRESSION:
+                return LogisticRegressionClassifier.readFrom(data);
+            case TYPE_TREE_ENSEMBLE:
+                return TreeEnsembleClassifier.readFrom(data);
+            default:
+                throw new IOException("Unknown model type " + type);
+        }
+    }
+
+    public static void save(FallClassifier classifier, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        if (classifier instanceof LogisticRegressionClassifier) {
+            data.writeByte(TYPE_LOGISTIC_REGRESSION);
+        } else if (classifier instanceof TreeEnsembleClassifier) {
+            data.writeByte(TYPE_TREE_ENSEMBLE);
+        } else {
+            throw new IllegalArgumentException("Unsupported classifier " + classifier.getClass());
+        }
+        classifier.writeTo(data);
+        data.flush();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.falldetection.detection;
+
+/**
+ * Debounces a boolean condition by how long it holds, measured on sample timestamps.
+ * <p>
+ * The debounced state turns on once the condition has held for the enter duration and
+ * off once it has been false for the exit duration, so short glitches are ignored in
+ * both directions. A condition counts as held from the first sample that saw it to the
+ * latest sample that still does; a contrary sample never extends it. Durations
+ * therefore come out the same at any sampling rate, with gaps from dropped samples, and
+ * for batched samples delivered in a burst, up to one sample period; counting samples
+ * would give 20 ms on one phone and 200 ms on another.
+ * <p>
+ * Allocation free; not thread safe.
+ */
+public final class DurationDebouncer {
+
+    private final long enterNanos;
+    private final long exitNanos;
+
+    private boolean active;
+    // First sample disagreeing with the debounced state, or -1
+    private long changeSince = -1;
+    private long activeSince = -1;
+    private long inactiveSince = -1;
+
+    /**
+     * @param enterNanos how long the condition must hold to turn on; 0 turns on at once
+     * @param exitNanos  how long it must be false to turn off again; 0 turns off at once
+     */
+    public DurationDebouncer(long enterNanos, long exitNanos) {
+        if (enterNanos < 0 || exitNanos < 0) {
+            throw new IllegalArgumentException("durations must not be negative");
+        }
+        this.enterNanos = enterNanos;
+        this.exitNanos = exitNanos;
+    }
+
+    /**
+     * Feeds the condition seen at one sample. Timestamps must not go backwards.
+     *
+     * @return the debounced state
+     */
+    public boolean update(long timestampNanos, boolean condition) {
+        if (condition != active) {
+            if (changeSince < 0) {
+                changeSince = timestampNanos;
+            }
+            if (timestampNanos - changeSince >= hold()) {
+                flip();
+            }
+        } else {
+            changeSince = -1;
+        }
+        return active;
+    }
+
+    private long hold() {
+        return active ? exitNanos : enterNanos;
+    }
+
+    private void flip() {
+        active = !active;
+        if (active) {
+            activeSince = changeSince;
+        } else {
+            inactiveSince = changeSince;
+        }
+        changeSince = -1;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @return true if the state turned on at any point since the last {@link #reset}
+     */
+    public boolean hasBeenActive() {
+        return activeSince >= 0;
+    }
+
+    /**
+     * @return when the condition started to hold for the latest turn on, or -1
+     */
+    public long getActiveSinceNanos() {
+        return activeSince;
+    }
+
+    /**
+     * @return when the condition stopped holding for the latest turn off, or -1
+     */
+    public long getInactiveSinceNanos() {
+        return inactiveSince;
+    }
+
+    /**
+     * @return when the condition started to disagree with the state, or -1 if it agrees
+     */
+    public long getPendingSinceNanos() {
+        return changeSince;
+    }
+
+    public void reset() {
+        active = false;
+        changeSince = -1;
+        activeSince = -1;
+        inactiveSince = -1;
+    }
+}
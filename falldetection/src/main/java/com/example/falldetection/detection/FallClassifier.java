@@ -0,0 +1,29 @@
+package com.example.falldetection.detection;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Scores a window of accelerometer features, see {@link FeatureExtractor#snapshot}.
+ * <p>
+ * Implementations work on primitive arrays only and must not allocate in
+ * {@link #score}, so they can run on the sensor thread.
+ */
+public interface FallClassifier {
+
+    /**
+     * @param features feature values, indexed like {@link FeatureExtractor}'s constants
+     * @return probability that the features belong to a fall, in [0, 1]
+     */
+    float score(float[] features);
+
+    /**
+     * @return number of features the model reads
+     */
+    int featureCount();
+
+    /**
+     * Writes the model body in the format read by {@link ClassifierLoader}.
+     */
+    void writeTo(DataOutput out) throws IOException;
+}
@@ -0,0 +1,150 @@
+package com.example.falldetection.detection;
+
+/**
+ * Everything that happens to an accelerometer sample between the sensor callback and a
+ * fall decision. Kept free of Android classes so it can also run on a plain JVM.
+ */
+public class FallDetectionPipeline implements FusedFrame.Listener {
+
+    private static final int SAMPLE_BUFFER_CAPACITY = 2048; // ~10 s at SENSOR_DELAY_FASTEST
+    // Learned thresholds move slowly, no need to recompute them every sample
+    private static final int THRESHOLD_UPDATE_INTERVAL = 256;
+    private static final long FEATURE_WINDOW_NANOS = 1000 * 1000000L;
+    private static final int FEATURE_WINDOW_MAX_SAMPLES = 512;
+    // Features for the classifier are taken from just after the impact
+    private static final long CLASSIFIER_CAPTURE_NANOS = 500 * 1000000L;
+
+    private final AccelSampleBuffer samples = new AccelSampleBuffer(SAMPLE_BUFFER_CAPACITY);
+    private final FeatureExtractor features =
+            new FeatureExtractor(FEATURE_WINDOW_NANOS, FEATURE_WINDOW_MAX_SAMPLES);
+    private final FallDetector detector;
+    private final AdaptiveThreshold adaptiveThreshold;
+    private int samplesSinceThresholdUpdate = 0;
+
+    private final FallDetector.Listener listener;
+    private FallClassifier classifier;
+    private float classifierThreshold;
+    private final float[] candidateFeatures = new float[FeatureExtractor.FEATURE_COUNT];
+    private int rejectedCount = 0;
+
+    public FallDetectionPipeline(FallDetector.Config config, FallDetector.Listener listener) {
+        this(config, listener, null);
+    }
+
+    /**
+     * @param adaptiveThreshold learns the thresholds from the stream, or null to keep the
+     *                          ones in {@code config}
+     */
+    public FallDetectionPipeline(FallDetector.Config config, FallDetector.Listener listener,
+                                 AdaptiveThreshold adaptiveThreshold) {
+        this.listener = listener;
+        detector = new FallDetector(config, new FallDetector.Listener() {
+            public void onFall(FallEvent event) {
+                onDetectorFall(event);
+            }
+        });
+        this.adaptiveThreshold = adaptiveThreshold;
+        if (adaptiveThreshold != null && adaptiveThreshold.applyTo(config)) {
+            detector.updateThresholds();
+        }
+    }
+
+    /**
+     * Lets {@code classifier} veto falls from the detector: a fall is only reported if
+     * the features captured right after its impact score at least {@code threshold}.
+     * Falls the gyroscope or barometer corroborated are reported whatever the score.
+     *
+     * @param classifier the model, or null to report every detector fall
+     */
+    public void setClassifier(FallClassifier classifier, float threshold) {
+        if (classifier != null && classifier.featureCount() > FeatureExtractor.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Classifier reads " + classifier.featureCount()
+                    + " features, only " + FeatureExtractor.FEATURE_COUNT + " are extracted");
+        }
+        this.classifier = classifier;
+        this.classifierThreshold = threshold;
+    }
+
+    /**
+     * @return number of detector falls the classifier has rejected
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Feeds one accelerometer sample. Does not allocate.
+     */
+    public void onSample(long timestampNanos, float x, float y, float z) {
+        float magnitudeSq = samples.add(timestampNanos, x, y, z);
+        features.onSample(timestampNanos, x, y, z, magnitudeSq);
+        detector.onSample(timestampNanos, magnitudeSq);
+        captureFeatures(timestampNanos);
+        learn(magnitudeSq);
+    }
+
+    /**
+     * Feeds one fused frame from {@link SensorFusion}. Does not allocate.
+     */
+    @Override
+    public void onFrame(FusedFrame frame) {
+        float magnitudeSq = samples.add(frame.timestampNanos, frame.x, frame.y, frame.z);
+        features.onSample(frame.timestampNanos, frame.x, frame.y, frame.z, magnitudeSq);
+        detector.onMotionContext(frame.rotationRate, frame.altitude, frame.altitudeChange);
+        detector.onSample(frame.timestampNanos, magnitudeSq);
+        captureFeatures(frame.timestampNanos);
+        learn(magnitudeSq);
+    }
+
+    private void captureFeatures(long timestampNanos) {
+        if (classifier != null && detector.getPhase() == FallDetector.Phase.AWAIT_STILLNESS
+                && timestampNanos - detector.getImpactNanos() <= CLASSIFIER_CAPTURE_NANOS) {
+            features.snapshot(candidateFeatures);
+        }
+    }
+
+    private void onDetectorFall(FallEvent event) {
+        if (classifier != null && !event.corroborated
+                && classifier.score(candidateFeatures) < classifierThreshold) {
+            rejectedCount++;
+            return;
+        }
+        if (listener != null) {
+            listener.onFall(event);
+        }
+    }
+
+    private void learn(float magnitudeSq) {
+        if (adaptiveThreshold != null && !detector.isCandidate()) {
+            adaptiveThreshold.onSample((float) Math.sqrt(magnitudeSq));
+            if (++samplesSinceThresholdUpdate >= THRESHOLD_UPDATE_INTERVAL) {
+                samplesSinceThresholdUpdate = 0;
+                if (adaptiveThreshold.applyTo(detector.getConfig())) {
+                    detector.updateThresholds();
+                }
+            }
+        }
+    }
+
+    public AccelSampleBuffer getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the sliding-window features, updated before the detector sees each sample
+     */
+    public FeatureExtractor getFeatures() {
+        return features;
+    }
+
+    public FallDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * @return the threshold learner, or null if thresholds are fixed
+     */
+    public AdaptiveThreshold getAdaptiveThreshold() {
+        return adaptiveThreshold;
+    }
+}
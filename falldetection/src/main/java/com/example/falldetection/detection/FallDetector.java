@@ -0,0 +1,296 @@
+package com.example.falldetection.detection;
+
+/**
+ * Multi-phase fall detector: free fall, then an impact peak, then lying still.
+ * <p>
+ * Phases are timed with sample timestamps rather than by counting samples, so the same
+ * configuration behaves the same at any sensor rate. Each sample costs a handful of
+ * comparisons; thresholds are kept squared so no square root is taken per sample.
+ * <p>
+ * A fall does not need a free-fall phase: an impact on its own is enough to start
+ * waiting for stillness, which catches slumps and slips that never drop below the
+ * free-fall threshold. A phone toss that is caught, or picked up right after landing,
+ * never reaches the stillness phase.
+ * <p>
+ * When given {@link #onMotionContext motion context} the detector also records the peak rotation rate and
+ * the height lost over the candidate, and marks the fall as corroborated if either is
+ * large enough, or if the phone ends up that far below its recent average height.
+ */
+public final class FallDetector {
+
+    public static final float GRAVITY = 9.80665f;
+
+    private static final long MS = 1000000L;
+
+    /**
+     * Detector parameters. Magnitudes are in m/s^2, durations in nanoseconds.
+     */
+    public static final class Config {
+        /**
+         * Magnitude below which the phone is considered to be in free fall.
+         */
+        public float freeFallThreshold = 3.0f;
+        /**
+         * Shortest free fall that counts; shorter dips are ignored.
+         */
+        public long minFreeFallNanos = 60 * MS;
+        /**
+         * How long the magnitude must stay above the free-fall threshold to end a free
+         * fall, so a tumbling phone's brief spikes don't cut it short. An impact ends it at once.
+         */
+        public long freeFallExitNanos = 30 * MS;
+        /**
+         * Magnitude above which a sample counts as an impact.
+         */
+        public float impactThreshold = 2.5f * GRAVITY;
+        /**
+         * How long after free fall ends an impact may still arrive.
+         */
+        public long impactWindowNanos = 1000 * MS;
+        /**
+         * Largest deviation from 1 g that still counts as lying still.
+         */
+        public float stillnessTolerance = 1.5f;
+        /**
+         * How long the phone must stay still after the impact to confirm a fall.
+         */
+        public long stillnessNanos = 1500 * MS;
+        /**
+         * Give up on a candidate if stillness has not been confirmed this long after the impact.
+         */
+        public long stillnessTimeoutNanos = 5000 * MS;
+        /**
+         * Rotation rate in rad/s during a fall that corroborates it.
+         */
+        public float corroborationRotationRate = 3.0f;
+        /**
+         * Height drop in meters during a fall that corroborates it.
+         */
+        public float corroborationAltitudeDrop = 0.4f;
+
+        public Config copy() {
+            Config c = new Config();
+            c.freeFallThreshold = freeFallThreshold;
+            c.minFreeFallNanos = minFreeFallNanos;
+            c.freeFallExitNanos = freeFallExitNanos;
+            c.impactThreshold = impactThreshold;
+            c.impactWindowNanos = impactWindowNanos;
+            c.stillnessTolerance = stillnessTolerance;
+            c.stillnessNanos = stillnessNanos;
+            c.stillnessTimeoutNanos = stillnessTimeoutNanos;
+            c.corroborationRotationRate = corroborationRotationRate;
+            c.corroborationAltitudeDrop = corroborationAltitudeDrop;
+            return c;
+        }
+    }
+
+    /**
+     * Receives confirmed falls, on the thread that feeds the detector.
+     */
+    public interface Listener {
+        void onFall(FallEvent event);
+    }
+
+    public enum Phase {
+        IDLE, FREE_FALL, AWAIT_IMPACT, AWAIT_STILLNESS
+    }
+
+    private final Config config;
+    private final Listener listener;
+
+    private float freeFallThresholdSq;
+    private float impactThresholdSq;
+    private float stillLowSq;
+    private float stillHighSq;
+
+    private final DurationDebouncer freeFall;
+
+    private Phase phase = Phase.IDLE;
+    private long freeFallStart = -1;
+    private long freeFallEnd = -1;
+    private long impactTime = -1;
+    private float peakSq = 0;
+    private long stillStart = -1;
+
+    // Latest gyroscope/barometer context, NaN when not fed
+    private float rotationRate = Float.NaN;
+    private float altitude = Float.NaN;
+    private float altitudeChange = Float.NaN;
+    private float peakRotation = Float.NaN;
+    private float startAltitude = Float.NaN;
+    private float lowestAltitude = Float.NaN;
+
+    public FallDetector(Config config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+        freeFall = new DurationDebouncer(config.minFreeFallNanos, config.freeFallExitNanos);
+        updateThresholds();
+    }
+
+    /**
+     * Re-reads the magnitude thresholds from the config. Call after changing them.
+     */
+    public void updateThresholds() {
+        freeFallThresholdSq = config.freeFallThreshold * config.freeFallThreshold;
+        impactThresholdSq = config.impactThreshold * config.impactThreshold;
+        float low = Math.max(0f, GRAVITY - config.stillnessTolerance);
+        float high = GRAVITY + config.stillnessTolerance;
+        stillLowSq = low * low;
+        stillHighSq = high * high;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return timestamp of the current candidate's impact, or -1 before one
+     */
+    public long getImpactNanos() {
+        return impactTime;
+    }
+
+    /**
+     * @return true while a fall candidate is being tracked
+     */
+    public boolean isCandidate() {
+        return phase != Phase.IDLE;
+    }
+
+    public void reset() {
+        phase = Phase.IDLE;
+        freeFall.reset();
+        freeFallStart = -1;
+        freeFallEnd = -1;
+        impactTime = -1;
+        peakSq = 0;
+        stillStart = -1;
+        peakRotation = Float.NaN;
+        startAltitude = Float.NaN;
+        lowestAltitude = Float.NaN;
+    }
+
+    /**
+     * Records the rotation rate and altitude at the next sample, from a {@link FusedFrame}.
+     * Call before {@link #onSample} for each frame.
+     *
+     * @param altitudeChange altitude relative to its recent average, see {@link FusedFrame#altitudeChange}
+     */
+    public void onMotionContext(float rotationRate, float altitude, float altitudeChange) {
+        this.rotationRate = rotationRate;
+        this.altitude = altitude;
+        this.altitudeChange = altitudeChange;
+        if (phase != Phase.IDLE) {
+            // NaN-safe: comparisons with NaN are false
+            if (!(peakRotation >= rotationRate)) {
+                peakRotation = rotationRate;
+            }
+            if (!(lowestAltitude <= altitude)) {
+                lowestAltitude = altitude;
+            }
+        }
+    }
+
+    /**
+     * Feeds one sample.
+     *
+     * @param timestampNanos sensor timestamp of the sample
+     * @param magnitudeSq    squared acceleration magnitude
+     */
+    public void onSample(long timestampNanos, float magnitudeSq) {
+        switch (phase) {
+            case IDLE:
+                if (magnitudeSq < freeFallThresholdSq) {
+                    phase = Phase.FREE_FALL;
+                    freeFall.update(timestampNanos, true);
+                    freeFallStart = timestampNanos;
+                    freeFallEnd = timestampNanos;
+                    startContext();
+                } else if (magnitudeSq > impactThresholdSq) {
+                    freeFallStart = -1;
+                    freeFallEnd = -1;
+                    startContext();
+                    startImpact(timestampNanos, magnitudeSq);
+                }
+                break;
+            case FREE_FALL:
+                boolean low = magnitudeSq < freeFallThresholdSq;
+                if (freeFall.update(timestampNanos, low)) {
+                    if (low) {
+                        freeFallEnd = timestampNanos;
+                    } else if (magnitudeSq > impactThresholdSq) {
+                        long exitSince = freeFall.getPendingSinceNanos();
+                        freeFallEnd = exitSince >= 0 ? exitSince : timestampNanos;
+                        phase = Phase.AWAIT_IMPACT;
+                        onSample(timestampNanos, magnitudeSq);
+                    }
+                } else if (freeFall.hasBeenActive()) {
+                    freeFallEnd = freeFall.getInactiveSinceNanos();
+                    phase = Phase.AWAIT_IMPACT;
+                    onSample(timestampNanos, magnitudeSq);
+                } else if (!low) {
+                    // Too short to be a fall, but the sample may still be an impact
+                    reset();
+                    onSample(timestampNanos, magnitudeSq);
+                }
+                break;
+            case AWAIT_IMPACT:
+                if (magnitudeSq > impactThresholdSq) {
+                    startImpact(timestampNanos, magnitudeSq);
+                } else if (timestampNanos - freeFallEnd > config.impactWindowNanos) {
+                    reset();
+                }
+                break;
+            case AWAIT_STILLNESS:
+                if (magnitudeSq > peakSq) {
+                    peakSq = magnitudeSq;
+                }
+                if (magnitudeSq >= stillLowSq && magnitudeSq <= stillHighSq) {
+                    if (stillStart < 0) {
+                        stillStart = timestampNanos;
+                    } else if (timestampNanos - stillStart >= config.stillnessNanos) {
+                        confirm(timestampNanos);
+                        break;
+                    }
+                } else {
+                    stillStart = -1;
+                }
+                if (timestampNanos - impactTime > config.stillnessTimeoutNanos) {
+                    reset();
+                }
+                break;
+        }
+    }
+
+    private void startContext() {
+        peakRotation = rotationRate;
+        startAltitude = altitude;
+        lowestAltitude = altitude;
+    }
+
+    private void startImpact(long timestampNanos, float magnitudeSq) {
+        phase = Phase.AWAIT_STILLNESS;
+        impactTime = timestampNanos;
+        peakSq = magnitudeSq;
+        stillStart = -1;
+    }
+
+    private void confirm(long timestampNanos) {
+        float drop = startAltitude - lowestAltitude;
+        // NaN-safe: without barometer data both height tests fail
+        boolean corroborated = peakRotation >= config.corroborationRotationRate
+                || drop >= config.corroborationAltitudeDrop
+                || -altitudeChange >= config.corroborationAltitudeDrop;
+        FallEvent event = new FallEvent(freeFallStart, freeFallEnd, impactTime,
+                (float) Math.sqrt(peakSq), stillStart, timestampNanos,
+                peakRotation, drop, corroborated);
+        reset();
+        if (listener != null) {
+            listener.onFall(event);
+        }
+    }
+}
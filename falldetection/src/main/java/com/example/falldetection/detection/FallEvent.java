@@ -0,0 +1,80 @@
+package com.example.falldetection.detection;
+
+/**
+ * A confirmed fall, with the timing of each phase that led to it.
+ * <p>
+ * All timestamps are in the {@code SensorEvent.timestamp} clock (nanoseconds).
+ */
+public final class FallEvent {
+
+    /**
+     * Start of the free-fall phase, or -1 if the fall was detected from the impact alone.
+     */
+    public final long freeFallStartNanos;
+    /**
+     * End of the free-fall phase, or -1 if there was none.
+     */
+    public final long freeFallEndNanos;
+    /**
+     * Time of the first sample above the impact threshold.
+     */
+    public final long impactNanos;
+    /**
+     * Largest acceleration magnitude seen after the impact, in m/s^2.
+     */
+    public final float peakMagnitude;
+    /**
+     * Start of the post-impact inactivity that confirmed the fall.
+     */
+    public final long stillnessStartNanos;
+    /**
+     * Time of the sample that confirmed the fall.
+     */
+    public final long confirmedNanos;
+    /**
+     * Largest rotation rate during the fall in rad/s, or NaN without gyroscope data.
+     */
+    public final float peakRotationRate;
+    /**
+     * How far the phone dropped during the fall in meters, or NaN without barometer data.
+     */
+    public final float altitudeDrop;
+    /**
+     * True if the rotation or the height drop backs up the accelerometer.
+     */
+    public final boolean corroborated;
+
+    public FallEvent(long freeFallStartNanos, long freeFallEndNanos, long impactNanos,
+                     float peakMagnitude, long stillnessStartNanos, long confirmedNanos,
+                     float peakRotationRate, float altitudeDrop, boolean corroborated) {
+        this.freeFallStartNanos = freeFallStartNanos;
+        this.freeFallEndNanos = freeFallEndNanos;
+        this.impactNanos = impactNanos;
+        this.peakMagnitude = peakMagnitude;
+        this.stillnessStartNanos = stillnessStartNanos;
+        this.confirmedNanos = confirmedNanos;
+        this.peakRotationRate = peakRotationRate;
+        this.altitudeDrop = altitudeDrop;
+        this.corroborated = corroborated;
+    }
+
+    public boolean hadFreeFall() {
+        return freeFallStartNanos >= 0;
+    }
+
+    public long freeFallDurationNanos() {
+        return hadFreeFall() ? freeFallEndNanos - freeFallStartNanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FallEvent{freeFall=" + freeFallDurationNanos() / 1000000 + "ms"
+                + ", impactAt=" + impactNanos
+                + ", peak=" + peakMagnitude
+                + ", stillFor=" + (confirmedNanos - stillnessStartNanos) / 1000000 + "ms"
+                + ", confirmedAt=" + confirmedNanos
+                + ", rotation=" + peakRotationRate
+                + ", drop=" + altitudeDrop + "m"
+                + ", corroborated=" + corroborated + "}";
+    }
+}
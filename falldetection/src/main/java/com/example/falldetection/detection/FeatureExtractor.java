@@ -0,0 +1,270 @@
+package com.example.falldetection.detection;
+
+/**
+ * Keeps sliding-window accelerometer features up to date, one sample at a time.
+ * <p>
+ * The window covers the last {@code windowNanos} of samples by timestamp. Sums for the
+ * signal magnitude area and the magnitude variance are updated as samples enter and
+ * leave the window, and the peaks of the magnitude and the jerk are tracked with
+ * monotonic deques, so every update is O(1) amortized and allocation free. Detectors
+ * read the features through the getters or {@link #snapshot} instead of rescanning raw
+ * samples.
+ * <p>
+ * Not thread safe: update and read from the thread that feeds the pipeline.
+ */
+public final class FeatureExtractor {
+
+    /**
+     * Indices into the array filled by {@link #snapshot}.
+     */
+    public static final int SIGNAL_MAGNITUDE_AREA = 0;
+    public static final int MAGNITUDE_PEAK = 1;
+    public static final int JERK = 2;
+    public static final int JERK_PEAK = 3;
+    public static final int MAGNITUDE_VARIANCE = 4;
+    public static final int TILT_DEGREES = 5;
+    public static final int FEATURE_COUNT = 6;
+
+    // Time constants of the gravity estimate and of the upright reference it is compared to
+    private static final float GRAVITY_TAU_SECONDS = 0.5f;
+    private static final float REFERENCE_TAU_SECONDS = 30f;
+
+    private final long windowNanos;
+    private final int mask;
+
+    private final long[] timestamps;
+    private final float[] magnitudes;
+    private final float[] absSums;
+    private final float[] jerks;
+    private long head = 0;
+    private long tail = 0;
+
+    // Monotonic deques of sequence numbers, values decreasing from front to back
+    private final long[] magnitudeDeque;
+    private long magnitudeFront = 0;
+    private long magnitudeBack = 0;
+    private final long[] jerkDeque;
+    private long jerkFront = 0;
+    private long jerkBack = 0;
+
+    private double sumAbs = 0;
+    private double sumMagnitude = 0;
+    private double sumMagnitudeSq = 0;
+    private int evictionsSinceResync = 0;
+
+    private boolean hasPrevious = false;
+    private long previousTimestamp;
+    private float previousX;
+    private float previousY;
+    private float previousZ;
+    private float jerk = 0;
+
+    private float gravityX;
+    private float gravityY;
+    private float gravityZ;
+    private float referenceX;
+    private float referenceY;
+    private float referenceZ;
+
+    /**
+     * @param windowNanos   length of the sliding window
+     * @param maxSamples    most samples the window may hold, rounded up to a power of two;
+     *                      older samples are dropped early if the rate is higher
+     */
+    public FeatureExtractor(long windowNanos, int maxSamples) {
+        this.windowNanos = windowNanos;
+        int capacity = Integer.highestOneBit(Math.max(2, maxSamples));
+        if (capacity < maxSamples) {
+            capacity <<= 1;
+        }
+        mask = capacity - 1;
+        timestamps = new long[capacity];
+        magnitudes = new float[capacity];
+        absSums = new float[capacity];
+        jerks = new float[capacity];
+        magnitudeDeque = new long[capacity];
+        jerkDeque = new long[capacity];
+    }
+
+    public void onSample(long timestampNanos, float x, float y, float z, float magnitudeSq) {
+        float magnitude = (float) Math.sqrt(magnitudeSq);
+        if (hasPrevious) {
+            float dt = (timestampNanos - previousTimestamp) * 1e-9f;
+            if (dt > 0) {
+                float dx = x - previousX;
+                float dy = y - previousY;
+                float dz = z - previousZ;
+                jerk = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / dt;
+                float a = dt / (GRAVITY_TAU_SECONDS + dt);
+                gravityX += a * (x - gravityX);
+                gravityY += a * (y - gravityY);
+                gravityZ += a * (z - gravityZ);
+                float r = dt / (REFERENCE_TAU_SECONDS + dt);
+                referenceX += r * (gravityX - referenceX);
+                referenceY += r * (gravityY - referenceY);
+                referenceZ += r * (gravityZ - referenceZ);
+            }
+        } else {
+            gravityX = referenceX = x;
+            gravityY = referenceY = y;
+            gravityZ = referenceZ = z;
+        }
+        hasPrevious = true;
+        previousTimestamp = timestampNanos;
+        previousX = x;
+        previousY = y;
+        previousZ = z;
+
+        if (tail - head > mask) {
+            evictOldest();
+        }
+        int i = (int) (tail & mask);
+        float absSum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        timestamps[i] = timestampNanos;
+        magnitudes[i] = magnitude;
+        absSums[i] = absSum;
+        jerks[i] = jerk;
+        sumAbs += absSum;
+        sumMagnitude += magnitude;
+        sumMagnitudeSq += magnitudeSq;
+
+        while (magnitudeBack > magnitudeFront
+                && magnitudes[(int) (magnitudeDeque[(int) ((magnitudeBack - 1) & mask)] & mask)] <= magnitude) {
+            magnitudeBack--;
+        }
+        magnitudeDeque[(int) (magnitudeBack++ & mask)] = tail;
+        while (jerkBack > jerkFront
+                && jerks[(int) (jerkDeque[(int) ((jerkBack - 1) & mask)] & mask)] <= jerk) {
+            jerkBack--;
+        }
+        jerkDeque[(int) (jerkBack++ & mask)] = tail;
+        tail++;
+
+        long cutoff = timestampNanos - windowNanos;
+        while (tail - head > 1 && timestamps[(int) (head & mask)] < cutoff) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        int i = (int) (head & mask);
+        sumAbs -= absSums[i];
+        sumMagnitude -= magnitudes[i];
+        sumMagnitudeSq -= (double) magnitudes[i] * magnitudes[i];
+        if (magnitudeBack > magnitudeFront && magnitudeDeque[(int) (magnitudeFront & mask)] == head) {
+            magnitudeFront++;
+        }
+        if (jerkBack > jerkFront && jerkDeque[(int) (jerkFront & mask)] == head) {
+            jerkFront++;
+        }
+        head++;
+        // Re-add the sums now and then so rounding errors cannot pile up
+        if (++evictionsSinceResync > mask) {
+            evictionsSinceResync = 0;
+            resync();
+        }
+    }
+
+    private void resync() {
+        sumAbs = 0;
+        sumMagnitude = 0;
+        sumMagnitudeSq = 0;
+        for (long s = head; s < tail; s++) {
+            int i = (int) (s & mask);
+            sumAbs += absSums[i];
+            sumMagnitude += magnitudes[i];
+            sumMagnitudeSq += (double) magnitudes[i] * magnitudes[i];
+        }
+    }
+
+    /**
+     * Forgets every sample, as if newly created.
+     */
+    public void reset() {
+        head = 0;
+        tail = 0;
+        magnitudeFront = 0;
+        magnitudeBack = 0;
+        jerkFront = 0;
+        jerkBack = 0;
+        sumAbs = 0;
+        sumMagnitude = 0;
+        sumMagnitudeSq = 0;
+        evictionsSinceResync = 0;
+        hasPrevious = false;
+        jerk = 0;
+    }
+
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return mean of |x| + |y| + |z| over the window, in m/s^2
+     */
+    public float signalMagnitudeArea() {
+        return size() == 0 ? 0 : (float) (sumAbs / size());
+    }
+
+    /**
+     * @return largest signal vector magnitude in the window, in m/s^2
+     */
+    public float magnitudePeak() {
+        return magnitudeBack == magnitudeFront ? 0
+                : magnitudes[(int) (magnitudeDeque[(int) (magnitudeFront & mask)] & mask)];
+    }
+
+    /**
+     * @return jerk between the last two samples, in m/s^3
+     */
+    public float jerk() {
+        return jerk;
+    }
+
+    /**
+     * @return largest jerk in the window, in m/s^3
+     */
+    public float jerkPeak() {
+        return jerkBack == jerkFront ? 0
+                : jerks[(int) (jerkDeque[(int) (jerkFront & mask)] & mask)];
+    }
+
+    /**
+     * @return population variance of the magnitude over the window
+     */
+    public float magnitudeVariance() {
+        int n = size();
+        if (n == 0) {
+            return 0;
+        }
+        double mean = sumMagnitude / n;
+        return (float) Math.max(0, sumMagnitudeSq / n - mean * mean);
+    }
+
+    /**
+     * @return angle in degrees between the current gravity direction and the long-term
+     * one, i.e. how far the phone has been tipped over
+     */
+    public float tiltDegrees() {
+        float dot = gravityX * referenceX + gravityY * referenceY + gravityZ * referenceZ;
+        float norms = (float) Math.sqrt((gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ)
+                * (referenceX * referenceX + referenceY * referenceY + referenceZ * referenceZ));
+        if (norms == 0) {
+            return 0;
+        }
+        float cos = Math.max(-1f, Math.min(1f, dot / norms));
+        return (float) Math.toDegrees(Math.acos(cos));
+    }
+
+    /**
+     * Copies every feature into {@code out}, indexed by the constants in this class.
+     */
+    public void snapshot(float[] out) {
+        out[SIGNAL_MAGNITUDE_AREA] = signalMagnitudeArea();
+        out[MAGNITUDE_PEAK] = magnitudePeak();
+        out[JERK] = jerk();
+        out[JERK_PEAK] = jerkPeak();
+        out[MAGNITUDE_VARIANCE] = magnitudeVariance();
+        out[TILT_DEGREES] = tiltDegrees();
+    }
+}
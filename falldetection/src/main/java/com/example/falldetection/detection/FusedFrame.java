@@ -0,0 +1,30 @@
+package com.example.falldetection.detection;
+
+/**
+ * One accelerometer sample together with the rotation rate and altitude at the same
+ * instant. Produced by {@link SensorFusion}, which reuses a single instance: copy out
+ * anything needed after {@link Listener#onFrame} returns.
+ */
+public final class FusedFrame {
+
+    public long timestampNanos;
+    public float x;
+    public float y;
+    public float z;
+    /**
+     * Magnitude of the rotation rate in rad/s, or NaN if there is no gyroscope data yet.
+     */
+    public float rotationRate;
+    /**
+     * Pressure altitude in meters, or NaN if there is no barometer data yet.
+     */
+    public float altitude;
+    /**
+     * Altitude relative to its slow-moving average in meters, or NaN without barometer data.
+     */
+    public float altitudeChange;
+
+    public interface Listener {
+        void onFrame(FusedFrame frame);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.falldetection.detection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Logistic regression over standardized features:
+ * {@code sigmoid(bias + sum(weight[i] * (x[i] - mean[i]) / scale[i]))}.
+ */
+public final class LogisticRegressionClassifier implements FallClassifier {
+
+    private final float[] means;
+    private final float[] invScales;
+    private final float[] weights;
+    private final float bias;
+
+    public LogisticRegressionClassifier(float[] means, float[] scales, float[] weights, float bias) {
+        if (means.length != weights.length || scales.length != weights.length) {
+            throw new IllegalArgumentException("means, scales and weights differ in length");
+        }
+        this.means = means.clone();
+        this.weights = weights.clone();
+        this.bias = bias;
+        invScales = new float[scales.length];
+        for (int i = 0; i < scales.length; i++) {
+            invScales[i] = scales[i] == 0 ? 0 : 1f / scales[i];
+        }
+    }
+
+    @Override
+    public float score(float[] features) {
+        float z = bias;
+        for (int i = 0; i < weights.length; i++) {
+            z += weights[i] * (features[i] - means[i]) * invScales[i];
+        }
+        return (float) (1.0 / (1.0 + Math.exp(-z)));
+    }
+
+    @Override
+    public int featureCount() {
+        return weights.length;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            out.writeFloat(means[i]);
+            out.writeFloat(invScales[i] == 0 ? 0 : 1f / invScales[i]);
+            out.writeFloat(weights[i]);
+        }
+        out.writeFloat(bias);
+    }
+
+    static LogisticRegressionClassifier readFrom(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n <= 0 || n > ClassifierLoader.MAX_FEATURES) {
+            throw new IOException("Bad feature count " + n);
+        }
+        float[] means = new float[n];
+        float[] scales = new float[n];
+        float[] weights = new float[n];
+        for (int i = 0; i < n; i++) {
+            means[i] = in.readFloat();
+            scales[i] = in.readFloat();
+            weights[i] = in.readFloat();
+        }
+        return new LogisticRegressionClassifier(means, scales, weights, in.readFloat());
+    }
+}
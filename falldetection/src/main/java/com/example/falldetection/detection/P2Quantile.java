@@ -0,0 +1,177 @@
+package com.example.falldetection.detection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Streaming quantile estimate using the P-square algorithm (Jain and Chlamtac, 1985).
+ * <p>
+ * Keeps five markers whose heights track the minimum, the p/2, p and (1+p)/2 quantiles
+ * and the maximum, adjusting them with a piecewise-parabolic fit as values arrive. Uses
+ * constant memory and a fixed amount of work per value, regardless of stream length.
+ */
+public final class P2Quantile {
+
+    private final double p;
+    private final double[] heights = new double[5];
+    private final double[] positions = new double[5];
+    private final double[] desired = new double[5];
+    private final double[] increments;
+    private long count;
+
+    /**
+     * @param p the quantile to track, in (0, 1)
+     */
+    public P2Quantile(double p) {
+        if (!(p > 0 && p < 1)) {
+            throw new IllegalArgumentException("quantile must be in (0, 1): " + p);
+        }
+        this.p = p;
+        increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+    }
+
+    public double quantile() {
+        return p;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return true once enough values have been seen for {@link #value()} to be meaningful
+     */
+    public boolean isReady() {
+        return count >= 5;
+    }
+
+    /**
+     * @return the current estimate, or NaN before five values have been seen
+     */
+    public double value() {
+        return isReady() ? heights[2] : Double.NaN;
+    }
+
+    public void add(double x) {
+        if (count < 5) {
+            // Insertion sort the first five values into the markers
+            int i = (int) count;
+            while (i > 0 && heights[i - 1] > x) {
+                heights[i] = heights[i - 1];
+                i--;
+            }
+            heights[i] = x;
+            count++;
+            if (count == 5) {
+                for (int j = 0; j < 5; j++) {
+                    positions[j] = j + 1;
+                }
+                desired[0] = 1;
+                desired[1] = 1 + 2 * p;
+                desired[2] = 1 + 4 * p;
+                desired[3] = 3 + 2 * p;
+                desired[4] = 5;
+            }
+            return;
+        }
+        count++;
+
+        int k;
+        if (x < heights[0]) {
+            heights[0] = x;
+            k = 0;
+        } else if (x < heights[1]) {
+            k = 0;
+        } else if (x < heights[2]) {
+            k = 1;
+        } else if (x < heights[3]) {
+            k = 2;
+        } else if (x <= heights[4]) {
+            k = 3;
+        } else {
+            heights[4] = x;
+            k = 3;
+        }
+        for (int i = k + 1; i < 5; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            desired[i] += increments[i];
+        }
+
+        for (int i = 1; i < 4; i++) {
+            double d = desired[i] - positions[i];
+            if ((d >= 1 && positions[i + 1] - positions[i] > 1)
+                    || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int s = d > 0 ? 1 : -1;
+                double h = parabolic(i, s);
+                if (heights[i - 1] < h && h < heights[i + 1]) {
+                    heights[i] = h;
+                } else {
+                    heights[i] += s * (heights[i + s] - heights[i]) / (positions[i + s] - positions[i]);
+                }
+                positions[i] += s;
+            }
+        }
+    }
+
+    private double parabolic(int i, int s) {
+        double nPrev = positions[i - 1];
+        double n = positions[i];
+        double nNext = positions[i + 1];
+        return heights[i] + s / (nNext - nPrev)
+                * ((n - nPrev + s) * (heights[i + 1] - heights[i]) / (nNext - n)
+                + (nNext - n - s) * (heights[i] - heights[i - 1]) / (n - nPrev));
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        for (int i = 0; i < 5; i++) {
+            out.writeDouble(heights[i]);
+            out.writeDouble(positions[i]);
+            out.writeDouble(desired[i]);
+        }
+    }
+
+    /**
+     * Restores state saved by {@link #writeTo}, leaving this unchanged if it is inconsistent.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        long count = in.readLong();
+        double[] heights = new double[5];
+        double[] positions = new double[5];
+        double[] desired = new double[5];
+        for (int i = 0; i < 5; i++) {
+            heights[i] = in.readDouble();
+            positions[i] = in.readDouble();
+            desired[i] = in.readDouble();
+        }
+        if (count < 0) {
+            throw new IOException("Bad quantile count " + count);
+        }
+        for (int i = 1; i < Math.min(count, 5); i++) {
+            if (!(heights[i - 1] <= heights[i])) {
+                throw new IOException("Quantile markers out of order");
+            }
+        }
+        if (count >= 5) {
+            // The end markers hold the minimum and maximum, at ranks 1 and count
+            boolean ordered = positions[0] == 1 && positions[4] == count;
+            for (int i = 1; i < 5; i++) {
+                ordered &= positions[i - 1] < positions[i];
+            }
+            if (!ordered) {
+                throw new IOException("Bad quantile marker positions");
+            }
+        }
+        this.count = count;
+        System.arraycopy(heights, 0, this.heights, 0, 5);
+        System.arraycopy(positions, 0, this.positions, 0, 5);
+        System.arraycopy(desired, 0, this.desired, 0, 5);
+    }
+}
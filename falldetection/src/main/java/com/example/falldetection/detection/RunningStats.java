@@ -0,0 +1,69 @@
+package com.example.falldetection.detection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Running mean and variance using Welford's algorithm. Constant memory, a few flops per
+ * value, and numerically stable over very long streams.
+ */
+public final class RunningStats {
+
+    private long count;
+    private double mean;
+    private double m2;
+
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    /**
+     * @return sample variance, or 0 with fewer than two values
+     */
+    public double variance() {
+        return count < 2 ? 0 : m2 / (count - 1);
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    public void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+    }
+
+    /**
+     * Restores state saved by {@link #writeTo}, leaving this unchanged if it is inconsistent.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        long count = in.readLong();
+        double mean = in.readDouble();
+        double m2 = in.readDouble();
+        if (count < 0 || Double.isNaN(mean) || Double.isInfinite(mean) || !(m2 >= 0) || Double.isInfinite(m2)) {
+            throw new IOException("Bad running stats: count " + count + ", mean " + mean + ", m2 " + m2);
+        }
+        this.count = count;
+        this.mean = mean;
+        this.m2 = m2;
+    }
+}
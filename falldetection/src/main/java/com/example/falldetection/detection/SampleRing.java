@@ -0,0 +1,100 @@
+package com.example.falldetection.detection;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer, single-consumer queue of accelerometer samples.
+ * <p>
+ * Samples are stored in parallel primitive arrays and handed over with ordered writes
+ * of the head and tail positions, so neither side locks, blocks or allocates. When the
+ * ring is full {@link #offer} fails instead of waiting, leaving it to the producer to
+ * decide what to drop.
+ */
+public final class SampleRing {
+
+    public interface Sink {
+        void onSample(long timestampNanos, float x, float y, float z);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final long[] timestamps;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+
+    // Next position to read, written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // Next position to write, written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+    // Producer's last view of head, saves reading the shared counter on every offer
+    private long cachedHead;
+
+    /**
+     * @param minCapacity rounded up to a power of two
+     */
+    public SampleRing(int minCapacity) {
+        if (minCapacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + minCapacity);
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        this.capacity = capacity;
+        mask = capacity - 1;
+        timestamps = new long[capacity];
+        xs = new float[capacity];
+        ys = new float[capacity];
+        zs = new float[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Producer side.
+     *
+     * @return false, without waiting, if the ring is full
+     */
+    public boolean offer(long timestampNanos, float x, float y, float z) {
+        long t = tail.get();
+        if (t - cachedHead >= capacity) {
+            cachedHead = head.get();
+            if (t - cachedHead >= capacity) {
+                return false;
+            }
+        }
+        int i = (int) (t & mask);
+        timestamps[i] = timestampNanos;
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side: passes up to {@code max} of the oldest samples to {@code sink}.
+     *
+     * @return number of samples passed
+     */
+    public int drain(Sink sink, int max) {
+        long h = head.get();
+        int n = (int) Math.min(max, tail.get() - h);
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((h + k) & mask);
+            sink.onSample(timestamps[i], xs[i], ys[i], zs[i]);
+        }
+        head.lazySet(h + n);
+        return n;
+    }
+
+    /**
+     * @return samples waiting; exact only when called from the producer or consumer
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.falldetection.detection;
+
+/**
+ * Decides when the accelerometer should run fast and when it can run slow.
+ * <p>
+ * Motion energy is the variance of the acceleration magnitude over the feature window.
+ * As soon as it rises above the active level, or a fall candidate starts, the governor
+ * switches to {@link Rate#FAST}. It only drops back to {@link Rate#SLOW} after the
+ * energy has stayed below the idle level for the whole cooldown, so a pause in walking
+ * does not make it flap. Decisions are made on sensor timestamps.
+ */
+public final class SamplingRateGovernor {
+
+    public enum Rate {
+        SLOW, FAST
+    }
+
+    private final float activeVariance;
+    private final float idleVariance;
+    private final long cooldownNanos;
+
+    private Rate rate = Rate.FAST;
+    private long quietSince = -1;
+
+    /**
+     * @param activeVariance magnitude variance, in (m/s^2)^2, that switches to the fast rate
+     * @param idleVariance   magnitude variance below which the phone counts as still
+     * @param cooldownNanos  how long it must stay still before switching to the slow rate
+     */
+    public SamplingRateGovernor(float activeVariance, float idleVariance, long cooldownNanos) {
+        if (idleVariance > activeVariance) {
+            throw new IllegalArgumentException("idle level above active level");
+        }
+        this.activeVariance = activeVariance;
+        this.idleVariance = idleVariance;
+        this.cooldownNanos = cooldownNanos;
+    }
+
+    public Rate getRate() {
+        return rate;
+    }
+
+    /**
+     * @param magnitudeVariance current value of {@link FeatureExtractor#magnitudeVariance()}
+     * @param candidate         whether the detector is tracking a fall candidate
+     * @return true if the rate changed
+     */
+    public boolean onSample(long timestampNanos, float magnitudeVariance, boolean candidate) {
+        if (candidate || magnitudeVariance > activeVariance) {
+            quietSince = -1;
+            return setRate(Rate.FAST);
+        }
+        if (magnitudeVariance < idleVariance) {
+            if (quietSince < 0) {
+                quietSince = timestampNanos;
+            } else if (rate == Rate.FAST && timestampNanos - quietSince >= cooldownNanos) {
+                return setRate(Rate.SLOW);
+            }
+        } else {
+            quietSince = -1;
+        }
+        return false;
+    }
+
+    /**
+     * Switches to the fast rate right away, e.g. on a significant motion trigger.
+     *
+     * @return true if the rate changed
+     */
+    public boolean wake() {
+        quietSince = -1;
+        return setRate(Rate.FAST);
+    }
+
+    private boolean setRate(Rate newRate) {
+        if (rate == newRate) {
+            return false;
+        }
+        rate = newRate;
+        return true;
+    }
+}
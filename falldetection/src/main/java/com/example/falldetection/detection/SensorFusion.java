@@ -0,0 +1,220 @@
+package com.example.falldetection.detection;
+
+/**
+ * Aligns accelerometer, gyroscope and barometer streams on their sensor timestamps.
+ * <p>
+ * The accelerometer drives the output: every accelerometer sample becomes one
+ * {@link FusedFrame}. A sample is held back until a gyroscope sample at or after its
+ * timestamp has arrived, so the rotation rate can be interpolated between the two
+ * gyroscope samples around it; if the gyroscope lags by more than the latency bound the
+ * frame is emitted with the newest rotation rate instead. Pressure changes slowly and
+ * is taken from the newest barometer sample at or before the frame.
+ * <p>
+ * All state lives in fixed-size primitive rings, so memory is bounded whatever the
+ * relative sensor rates, and nothing is allocated per sample. The rings are sized to
+ * hold every sample that can arrive within the latency bound at the fastest sensor
+ * rate, so with batching no frame loses its gyroscope data to a full ring. Not thread
+ * safe: feed all three streams from the same thread.
+ */
+public final class SensorFusion {
+
+    // Assumed when the sensors do not report their fastest period
+    private static final long DEFAULT_MIN_PERIOD_NANOS = 2 * 1000000L;
+
+    // Time constant of the altitude baseline, long compared to a fall
+    private static final float ALTITUDE_BASELINE_TAU_SECONDS = 10f;
+    private static final float SEA_LEVEL_PRESSURE_HPA = 1013.25f;
+
+    private final FusedFrame.Listener listener;
+    private final FusedFrame frame = new FusedFrame();
+    private final long maxLatencyNanos;
+    private final boolean hasGyroscope;
+    private final int ringSize;
+    private final int mask;
+
+    // Accelerometer samples waiting for gyroscope data
+    private final long[] pendingTs;
+    private final float[] pendingX;
+    private final float[] pendingY;
+    private final float[] pendingZ;
+    private long pendingHead = 0;
+    private long pendingTail = 0;
+
+    private final long[] gyroTs;
+    private final float[] gyroRate;
+    private long gyroCount = 0;
+    private long gyroCursor = 0;
+
+    private final long[] pressureTs;
+    private final float[] pressureAltitude;
+    private final float[] pressureChange;
+    private long pressureCount = 0;
+    private long pressureCursor = 0;
+    private float altitudeBaseline = Float.NaN;
+
+    /**
+     * @param maxLatencyNanos longest an accelerometer sample may wait for gyroscope data,
+     *                        including any hardware batching
+     * @param minPeriodNanos  shortest period between samples of any of the sensors, or 0
+     *                        if unknown
+     * @param hasGyroscope    false to emit frames immediately without rotation rate
+     */
+    public SensorFusion(long maxLatencyNanos, long minPeriodNanos, boolean hasGyroscope,
+                        FusedFrame.Listener listener) {
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.hasGyroscope = hasGyroscope;
+        this.listener = listener;
+        ringSize = ringSizeFor(maxLatencyNanos, minPeriodNanos > 0 ? minPeriodNanos : DEFAULT_MIN_PERIOD_NANOS);
+        mask = ringSize - 1;
+        pendingTs = new long[ringSize];
+        pendingX = new float[ringSize];
+        pendingY = new float[ringSize];
+        pendingZ = new float[ringSize];
+        gyroTs = new long[ringSize];
+        gyroRate = new float[ringSize];
+        pressureTs = new long[ringSize];
+        pressureAltitude = new float[ringSize];
+        pressureChange = new float[ringSize];
+    }
+
+    /**
+     * @return the smallest power of two holding every sample within the latency bound,
+     * plus the one on either side of it
+     */
+    static int ringSizeFor(long maxLatencyNanos, long minPeriodNanos) {
+        long samples = maxLatencyNanos / minPeriodNanos + 2;
+        int size = Integer.highestOneBit((int) Math.min(samples, 1 << 20));
+        return size < samples ? size << 1 : size;
+    }
+
+    /**
+     * @return samples held per sensor stream
+     */
+    public int ringSize() {
+        return ringSize;
+    }
+
+    public void onAccelerometer(long timestampNanos, float x, float y, float z) {
+        if (pendingTail - pendingHead == ringSize) {
+            emitOldest();
+        }
+        int i = (int) (pendingTail & mask);
+        pendingTs[i] = timestampNanos;
+        pendingX[i] = x;
+        pendingY[i] = y;
+        pendingZ[i] = z;
+        pendingTail++;
+        drain(timestampNanos);
+    }
+
+    public void onGyroscope(long timestampNanos, float x, float y, float z) {
+        int i = (int) (gyroCount & mask);
+        gyroTs[i] = timestampNanos;
+        gyroRate[i] = (float) Math.sqrt(x * x + y * y + z * z);
+        gyroCount++;
+        drain(timestampNanos);
+    }
+
+    /**
+     * @param pressureHpa atmospheric pressure in hPa, as reported by TYPE_PRESSURE
+     */
+    public void onPressure(long timestampNanos, float pressureHpa) {
+        float altitude = (float) (44330.0 * (1.0 - Math.pow(pressureHpa / SEA_LEVEL_PRESSURE_HPA, 1.0 / 5.255)));
+        if (Float.isNaN(altitudeBaseline)) {
+            altitudeBaseline = altitude;
+        } else {
+            long previous = pressureTs[(int) ((pressureCount - 1) & mask)];
+            float dt = (timestampNanos - previous) * 1e-9f;
+            float alpha = Math.min(1f, dt / ALTITUDE_BASELINE_TAU_SECONDS);
+            altitudeBaseline += alpha * (altitude - altitudeBaseline);
+        }
+        int i = (int) (pressureCount & mask);
+        pressureTs[i] = timestampNanos;
+        pressureAltitude[i] = altitude;
+        pressureChange[i] = altitude - altitudeBaseline;
+        pressureCount++;
+    }
+
+    /**
+     * Emits every held-back accelerometer sample regardless of gyroscope data.
+     */
+    public void flush() {
+        while (pendingHead < pendingTail) {
+            emitOldest();
+        }
+    }
+
+    private void drain(long now) {
+        while (pendingHead < pendingTail) {
+            long t = pendingTs[(int) (pendingHead & mask)];
+            boolean gyroCaughtUp = !hasGyroscope
+                    || (gyroCount > 0 && gyroTs[(int) ((gyroCount - 1) & mask)] >= t);
+            if (!gyroCaughtUp && now - t < maxLatencyNanos) {
+                break;
+            }
+            emitOldest();
+        }
+    }
+
+    private void emitOldest() {
+        int i = (int) (pendingHead & mask);
+        long t = pendingTs[i];
+        frame.timestampNanos = t;
+        frame.x = pendingX[i];
+        frame.y = pendingY[i];
+        frame.z = pendingZ[i];
+        frame.rotationRate = rotationRateAt(t);
+        long p = pressureIndexAt(t);
+        if (p < 0) {
+            frame.altitude = Float.NaN;
+            frame.altitudeChange = Float.NaN;
+        } else {
+            frame.altitude = pressureAltitude[(int) (p & mask)];
+            frame.altitudeChange = pressureChange[(int) (p & mask)];
+        }
+        pendingHead++;
+        listener.onFrame(frame);
+    }
+
+    /**
+     * Linear interpolation between the gyroscope samples around {@code t}. Frames are
+     * emitted in time order, so the cursor only ever moves forward.
+     */
+    private float rotationRateAt(long t) {
+        if (gyroCount == 0) {
+            return Float.NaN;
+        }
+        long oldest = Math.max(0, gyroCount - ringSize);
+        if (gyroCursor < oldest) {
+            gyroCursor = oldest;
+        }
+        while (gyroCursor + 1 < gyroCount && gyroTs[(int) ((gyroCursor + 1) & mask)] <= t) {
+            gyroCursor++;
+        }
+        int a = (int) (gyroCursor & mask);
+        if (gyroCursor + 1 >= gyroCount || gyroTs[a] >= t) {
+            return gyroRate[a];
+        }
+        int b = (int) ((gyroCursor + 1) & mask);
+        float f = (float) (t - gyroTs[a]) / (gyroTs[b] - gyroTs[a]);
+        return gyroRate[a] + f * (gyroRate[b] - gyroRate[a]);
+    }
+
+    /**
+     * @return sequence number of the newest pressure sample at or before {@code t}
+     * (or the oldest held one), or -1 if there is none
+     */
+    private long pressureIndexAt(long t) {
+        if (pressureCount == 0) {
+            return -1;
+        }
+        long oldest = Math.max(0, pressureCount - ringSize);
+        if (pressureCursor < oldest) {
+            pressureCursor = oldest;
+        }
+        while (pressureCursor + 1 < pressureCount && pressureTs[(int) ((pressureCursor + 1) & mask)] <= t) {
+            pressureCursor++;
+        }
+        return pressureCursor;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.falldetection.detection;
+
+import com.example.falldetection.metrics.LatencyHistogram;
+
+/**
+ * Watches the intervals between sensor timestamps for jitter, dropped samples and
+ * throttling.
+ * <p>
+ * Intervals go into a {@link LatencyHistogram}, whose 16 buckets per power of two
+ * resolve jitter of a few percent of the period instead of lumping 2.5 ms and 3.9 ms
+ * together. An interval longer than {@link #GAP_FACTOR} requested periods is a gap, and the samples
+ * that should have been in it count as dropped. The delivered rate is compared with the
+ * requested one over report windows of sensor time, so the OS quietly lowering the rate
+ * shows up as {@link #isThrottled()}. A sample costs a subtraction, a histogram record
+ * and a few increments and comparisons.
+ * <p>
+ * Not thread safe: feed and read it on the ingestion thread.
+ */
+public final class SensorJitterMonitor {
+
+    /**
+     * Intervals longer than this many requested periods count as a gap.
+     */
+    public static final int GAP_FACTOR = 3;
+    /**
+     * Delivered rate below this fraction of the requested one counts as throttled.
+     */
+    public static final float THROTTLED_FRACTION = 0.8f;
+
+    private final long windowNanos;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long requestedPeriodNanos;
+    private long gapNanos = Long.MAX_VALUE;
+
+    private long last = -1;
+    private long intervals;
+    private long intervalSum;
+    private long gaps;
+    private long dropped;
+    private long outOfOrder;
+
+    private long windowStart = -1;
+    private long windowSamples;
+    private float windowRateHz;
+
+    /**
+     * @param windowNanos sensor time over which the delivered rate is measured
+     */
+    public SensorJitterMonitor(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Sets the period the sensor was registered at, or 0 if unknown. The next interval
+     * is not measured, it spans the re-registration.
+     */
+    public void setRequestedPeriodNanos(long periodNanos) {
+        requestedPeriodNanos = periodNanos;
+        gapNanos = periodNanos > 0 ? GAP_FACTOR * periodNanos : Long.MAX_VALUE;
+        last = -1;
+        windowStart = -1;
+    }
+
+    /**
+     * @return true when a report window has just completed
+     */
+    public boolean onSample(long timestampNanos) {
+        long previous = last;
+        last = timestampNanos;
+        if (previous < 0) {
+            windowStart = timestampNanos;
+            windowSamples = 0;
+            return false;
+        }
+        long interval = timestampNanos - previous;
+        if (interval <= 0) {
+            outOfOrder++;
+            return false;
+        }
+        histogram.record(interval);
+        intervals++;
+        intervalSum += interval;
+        if (interval > gapNanos) {
+            gaps++;
+            dropped += interval / requestedPeriodNanos - 1;
+        }
+        windowSamples++;
+        long elapsed = timestampNanos - windowStart;
+        if (elapsed >= windowNanos) {
+            windowRateHz = windowSamples * 1e9f / elapsed;
+            windowStart = timestampNanos;
+            windowSamples = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return samples per second delivered over the last complete window, or 0 before one
+     */
+    public float getDeliveredRateHz() {
+        return windowRateHz;
+    }
+
+    /**
+     * @return samples per second requested, or 0 if unknown
+     */
+    public float getRequestedRateHz() {
+        return requestedPeriodNanos > 0 ? 1e9f / requestedPeriodNanos : 0;
+    }
+
+    /**
+     * @return true if the last complete window delivered noticeably fewer samples than requested
+     */
+    public boolean isThrottled() {
+        return requestedPeriodNanos > 0 && windowRateHz > 0
+                && windowRateHz < THROTTLED_FRACTION * getRequestedRateHz();
+    }
+
+    public float getMeanIntervalMillis() {
+        return intervals == 0 ? 0 : intervalSum / 1e6f / intervals;
+    }
+
+    public long getGapCount() {
+        return gaps;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getOutOfOrderCount() {
+        return outOfOrder;
+    }
+
+    /**
+     * @param q quantile in [0, 1]
+     * @return interval at that quantile in nanoseconds, to within about 6%, or 0 before
+     * the first interval
+     */
+    public long getIntervalQuantileNanos(double q) {
+        return histogram.quantile(q);
+    }
+
+    public LatencyHistogram getIntervalHistogram() {
+        return histogram;
+    }
+
+    public void reset() {
+        histogram.reset();
+        last = -1;
+        intervals = 0;
+        intervalSum = 0;
+        gaps = 0;
+        dropped = 0;
+        outOfOrder = 0;
+        windowStart = -1;
+        windowSamples = 0;
+        windowRateHz = 0;
+    }
+
+    /**
+     * @return rates, gap counts and interval quantiles on a few lines
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("delivered %.1f Hz of %.1f Hz requested, mean interval %.2f ms%n",
+                windowRateHz, getRequestedRateHz(), getMeanIntervalMillis()));
+        sb.append(String.format("%d gaps, ~%d samples dropped, %d out of order%n",
+                gaps, dropped, outOfOrder));
+        if (histogram.count() > 0) {
+            sb.append(String.format("interval p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    histogram.quantile(0.5) / 1e6, histogram.quantile(0.9) / 1e6,
+                    histogram.quantile(0.99) / 1e6, histogram.max() / 1e6));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.falldetection.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs alternative detector configurations on the live sample stream without letting
+ * them affect alerts, so new thresholds can be compared in the field at no risk.
+ * <p>
+ * The thread feeding the live pipeline copies each sample into one {@link SampleRing}
+ * per shadow; the shadows' own pipelines drain their rings in batches on a background
+ * {@link Executor}. The feeding thread never waits: a shadow whose ring is full has
+ * fallen behind and is dropped for good rather than queued without limit. Shadows see
+ * raw accelerometer samples only, without gyroscope or barometer context.
+ */
+public final class ShadowEvaluator {
+
+    // Samples to collect before waking the executor, keeps task submission off the per-sample path
+    private static final int DRAIN_BATCH = 64;
+
+    /**
+     * Called on the executor thread for shadows, and once on the feeding thread when a
+     * shadow is dropped.
+     */
+    public interface Listener {
+        void onShadowFall(String name, FallEvent event);
+
+        void onShadowDropped(String name);
+    }
+
+    private final Executor executor;
+    private final Listener listener;
+    private final int ringCapacity;
+    private final List<Shadow> shadows = new ArrayList<>();
+    private Shadow[] active = new Shadow[0];
+    private volatile int liveFalls;
+
+    /**
+     * @param ringCapacity samples a shadow may lag behind before it is dropped
+     */
+    public ShadowEvaluator(Executor executor, Listener listener, int ringCapacity) {
+        this.executor = executor;
+        this.listener = listener;
+        this.ringCapacity = ringCapacity;
+    }
+
+    /**
+     * Adds a shadow running {@code config}. Call before the first sample.
+     */
+    public void add(String name, FallDetector.Config config) {
+        Shadow shadow = new Shadow(name, config);
+        shadows.add(shadow);
+        active = shadows.toArray(new Shadow[0]);
+    }
+
+    /**
+     * Feeds one live sample to every shadow still running. Never blocks, does not allocate.
+     */
+    public void onSample(long timestampNanos, float x, float y, float z) {
+        for (Shadow shadow : active) {
+            if (shadow.dropped) {
+                continue;
+            }
+            if (!shadow.ring.offer(timestampNanos, x, y, z)) {
+                shadow.dropped = true;
+                listener.onShadowDropped(shadow.name);
+                continue;
+            }
+            if (shadow.ring.size() >= DRAIN_BATCH) {
+                shadow.schedule();
+            }
+        }
+    }
+
+    /**
+     * Hands any samples still waiting to the shadows, for instance before reading results.
+     */
+    public void flush() {
+        for (Shadow shadow : active) {
+            if (!shadow.dropped) {
+                shadow.schedule();
+            }
+        }
+    }
+
+    /**
+     * Counts a fall reported by the live pipeline, for {@link #describe()}.
+     */
+    public void onLiveFall(FallEvent event) {
+        liveFalls++;
+    }
+
+    /**
+     * @return live and per-shadow fall counts, one line each
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("live: ").append(liveFalls).append(" falls\n");
+        for (Shadow shadow : active) {
+            sb.append(shadow.name).append(": ").append(shadow.falls).append(" falls");
+            if (shadow.dropped) {
+                sb.append(", dropped");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private final class Shadow implements Runnable, SampleRing.Sink, FallDetector.Listener {
+
+        final String name;
+        final SampleRing ring = new SampleRing(ringCapacity);
+        final FallDetectionPipeline pipeline;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean dropped;
+        volatile int falls;
+
+        Shadow(String name, FallDetector.Config config) {
+            this.name = name;
+            pipeline = new FallDetectionPipeline(config.copy(), this);
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            // Only one run per shadow at a time, the ring has a single consumer
+            do {
+                while (ring.drain(this, ringCapacity) > 0) {
+                    // Keep going while the producer adds more
+                }
+                scheduled.set(false);
+            } while (ring.size() > 0 && scheduled.compareAndSet(false, true));
+        }
+
+        @Override
+        public void onSample(long timestampNanos, float x, float y, float z) {
+            pipeline.onSample(timestampNanos, x, y, z);
+        }
+
+        @Override
+        public void onFall(FallEvent event) {
+            falls++;
+            listener.onShadowFall(name, event);
+        }
+    }
+}
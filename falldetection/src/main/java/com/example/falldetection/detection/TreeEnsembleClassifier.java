@@ -0,0 +1,156 @@
+package com.example.falldetection.detection;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Ensemble of binary decision trees, as produced by gradient boosting.
+ * <p>
+ * All trees are flattened into parallel node arrays. An internal node sends a sample
+ * left when {@code x[feature] < threshold}; a leaf (feature -1) holds a value. The
+ * score is {@code sigmoid(base + sum of the leaf reached in every tree)}.
+ */
+public final class TreeEnsembleClassifier implements FallClassifier {
+
+    private final int featureCount;
+    private final float base;
+    private final int[] roots;
+    private final int[] features;
+    private final float[] thresholds;
+    private final int[] left;
+    private final int[] right;
+    private final float[] values;
+
+    /**
+     * @param roots      index of each tree's root node
+     * @param features   split feature per node, or -1 for a leaf
+     * @param thresholds split threshold per node
+     * @param left       child for {@code x < threshold} per node
+     * @param right      child for {@code x >= threshold} per node
+     * @param values     leaf value per node
+     */
+    public TreeEnsembleClassifier(int featureCount, float base, int[] roots, int[] features,
+                                  float[] thresholds, int[] left, int[] right, float[] values) {
+        int n = features.length;
+        if (thresholds.length != n || left.length != n || right.length != n || values.length != n) {
+            throw new IllegalArgumentException("node arrays differ in length");
+        }
+        for (int root : roots) {
+            checkNode(root, n);
+        }
+        for (int i = 0; i < n; i++) {
+            if (features[i] >= featureCount) {
+                throw new IllegalArgumentException("node " + i + " splits on unknown feature " + features[i]);
+            }
+            if (features[i] >= 0) {
+                // Children must come later so every walk terminates
+                checkNode(left[i], n);
+                checkNode(right[i], n);
+                if (left[i] <= i || right[i] <= i) {
+                    throw new IllegalArgumentException("node " + i + " has a child before it");
+                }
+            }
+        }
+        this.featureCount = featureCount;
+        this.base = base;
+        this.roots = roots.clone();
+        this.features = features.clone();
+        this.thresholds = thresholds.clone();
+        this.left = left.clone();
+        this.right = right.clone();
+        this.values = values.clone();
+    }
+
+    private static void checkNode(int node, int n) {
+        if (node < 0 || node >= n) {
+            throw new IllegalArgumentException("node index out of range: " + node);
+        }
+    }
+
+    @Override
+    public float score(float[] x) {
+        float sum = base;
+        for (int root : roots) {
+            int node = root;
+            int feature;
+            while ((feature = features[node]) >= 0) {
+                node = x[feature] < thresholds[node] ? left[node] : right[node];
+            }
+            sum += values[node];
+        }
+        return (float) (1.0 / (1.0 + Math.exp(-sum)));
+    }
+
+    @Override
+    public int featureCount() {
+        return featureCount;
+    }
+
+    public int treeCount() {
+        return roots.length;
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(featureCount);
+        out.writeFloat(base);
+        out.writeInt(roots.length);
+        for (int root : roots) {
+            out.writeInt(root);
+        }
+        out.writeInt(features.length);
+        for (int i = 0; i < features.length; i++) {
+            out.writeShort(features[i]);
+            if (features[i] >= 0) {
+                out.writeFloat(thresholds[i]);
+                out.writeInt(left[i]);
+                out.writeInt(right[i]);
+            } else {
+                out.writeFloat(values[i]);
+            }
+        }
+    }
+
+    static TreeEnsembleClassifier readFrom(DataInput in) throws IOException {
+        int featureCount = in.readInt();
+        if (featureCount <= 0 || featureCount > ClassifierLoader.MAX_FEATURES) {
+            throw new IOException("Bad feature count " + featureCount);
+        }
+        float base = in.readFloat();
+        int treeCount = in.readInt();
+        if (treeCount <= 0 || treeCount > ClassifierLoader.MAX_TREES) {
+            throw new IOException("Bad tree count " + treeCount);
+        }
+        int[] roots = new int[treeCount];
+        for (int i = 0; i < treeCount; i++) {
+            roots[i] = in.readInt();
+        }
+        int n = in.readInt();
+        if (n <= 0 || n > ClassifierLoader.MAX_NODES) {
+            throw new IOException("Bad node count " + n);
+        }
+        int[] features = new int[n];
+        float[] thresholds = new float[n];
+        int[] left = new int[n];
+        int[] right = new int[n];
+        float[] values = new float[n];
+        for (int i = 0; i < n; i++) {
+            features[i] = in.readShort();
+            if (features[i] >= 0) {
+                thresholds[i] = in.readFloat();
+                left[i] = in.readInt();
+                right[i] = in.readInt();
+            } else {
+                features[i] = -1;
+                values[i] = in.readFloat();
+            }
+        }
+        try {
+            return new TreeEnsembleClassifier(featureCount, base, roots, features, thresholds,
+                    left, right, values);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Bad tree ensemble: " + e.getMessage());
+        }
+    }
+}
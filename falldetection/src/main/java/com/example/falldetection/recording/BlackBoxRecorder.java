@@ -0,0 +1,214 @@
+package com.example.falldetection.recording;
+
+import com.example.falldetection.replay.BinaryTraceWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the last few minutes of raw accelerometer samples in a fixed-size,
+ * memory-mapped circular file, like a flight recorder.
+ * <p>
+ * {@link #record} is a handful of stores into the mapping: no system calls and no
+ * allocation, so it can stay on all the time. The kernel writes dirty pages back on its
+ * own, and the write position is kept in the file header, so the recording survives the
+ * process being killed. {@link #freeze} copies a time window out into an incident file
+ * in the binary trace format, which the replay tools read directly.
+ * <p>
+ * {@link #freezeInBackground} only copies the window into a second buffer, allocated up
+ * front with room for the whole recording, and leaves writing the file to an executor,
+ * so the recording thread never waits on storage. Freezes while a file is still being
+ * written are refused.
+ * <p>
+ * Not thread safe: record and freeze from the same thread.
+ */
+public class BlackBoxRecorder implements Closeable {
+
+    private static final int MAGIC = 0x46444242; // "FDBB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int COUNT_OFFSET = 16;
+    private static final int RECORD_BYTES = 20;
+
+    /**
+     * Receives the outcome of {@link #freezeInBackground}, on the executor, or on the
+     * calling thread if the executor refuses the task.
+     */
+    public interface FreezeListener {
+        void onFrozen(File out, int samples);
+
+        void onFreezeFailed(File out, IOException e);
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int capacity;
+
+    private long count;
+    private int slot;
+
+    // Window copied out by the last freeze, read by whichever thread writes it
+    private final long[] frozenTimestamps;
+    private final float[] frozenX;
+    private final float[] frozenY;
+    private final float[] frozenZ;
+    private int frozen;
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    /**
+     * Opens or creates the recording. An existing recording with the same capacity is
+     * resumed, anything else at {@code path} is overwritten.
+     *
+     * @param capacity number of samples to keep
+     */
+    public BlackBoxRecorder(File path, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+        file = new RandomAccessFile(path, "rw");
+        boolean resume = file.length() == size;
+        file.setLength(size);
+        channel = file.getChannel();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (resume && map.getInt(0) == MAGIC && map.getInt(4) == VERSION && map.getInt(8) == capacity) {
+            count = map.getLong(COUNT_OFFSET);
+        } else {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, capacity);
+            count = 0;
+            map.putLong(COUNT_OFFSET, 0);
+        }
+        slot = (int) (count % capacity);
+        frozenTimestamps = new long[capacity];
+        frozenX = new float[capacity];
+        frozenY = new float[capacity];
+        frozenZ = new float[capacity];
+    }
+
+    /**
+     * Appends one sample, overwriting the oldest when full.
+     */
+    public void record(long timestampNanos, float x, float y, float z) {
+        int offset = HEADER_BYTES + slot * RECORD_BYTES;
+        map.putLong(offset, timestampNanos);
+        map.putFloat(offset + 8, x);
+        map.putFloat(offset + 12, y);
+        map.putFloat(offset + 16, z);
+        if (++slot == capacity) {
+            slot = 0;
+        }
+        map.putLong(COUNT_OFFSET, ++count);
+    }
+
+    /**
+     * @return number of samples currently held
+     */
+    public int size() {
+        return count < capacity ? (int) count : capacity;
+    }
+
+    /**
+     * Writes every held sample with a timestamp in {@code [fromNanos, toNanos]} to
+     * {@code out} as a binary trace.
+     *
+     * @return number of samples written
+     * @throws IllegalStateException if a background freeze is still writing
+     */
+    public int freeze(long fromNanos, long toNanos, File out) throws IOException {
+        if (!writing.compareAndSet(false, true)) {
+            throw new IllegalStateException("an incident is still being written");
+        }
+        try {
+            copyWindow(fromNanos, toNanos);
+            writeFrozen(out);
+            return frozen;
+        } finally {
+            writing.set(false);
+        }
+    }
+
+    /**
+     * Like {@link #freeze}, but only copies the window here and writes the file on
+     * {@code executor}.
+     *
+     * @return false, without copying anything, if the previous file is still being written
+     */
+    public boolean freezeInBackground(long fromNanos, long toNanos, final File out, Executor executor,
+                                      final FreezeListener listener) {
+        if (!writing.compareAndSet(false, true)) {
+            return false;
+        }
+        copyWindow(fromNanos, toNanos);
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        writeFrozen(out);
+                        listener.onFrozen(out, frozen);
+                    } catch (IOException e) {
+                        listener.onFreezeFailed(out, e);
+                    } finally {
+                        writing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Nothing will write the copy, don't block the next incident on it
+            writing.set(false);
+            listener.onFreezeFailed(out, new IOException("Incident writer refused the file", e));
+        }
+        return true;
+    }
+
+    private void copyWindow(long fromNanos, long toNanos) {
+        int n = size();
+        int first = (int) ((count - n) % capacity);
+        int copied = 0;
+        for (int i = 0; i < n; i++) {
+            int s = first + i;
+            if (s >= capacity) {
+                s -= capacity;
+            }
+            int offset = HEADER_BYTES + s * RECORD_BYTES;
+            long t = map.getLong(offset);
+            if (t >= fromNanos && t <= toNanos) {
+                frozenTimestamps[copied] = t;
+                frozenX[copied] = map.getFloat(offset + 8);
+                frozenY[copied] = map.getFloat(offset + 12);
+                frozenZ[copied] = map.getFloat(offset + 16);
+                copied++;
+            }
+        }
+        frozen = copied;
+    }
+
+    private void writeFrozen(File out) throws IOException {
+        BinaryTraceWriter writer = new BinaryTraceWriter(new FileOutputStream(out));
+        try {
+            for (int i = 0; i < frozen; i++) {
+                writer.write(frozenTimestamps[i], frozenX[i], frozenY[i], frozenZ[i]);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.force();
+        channel.close();
+        file.close();
+    }
+}
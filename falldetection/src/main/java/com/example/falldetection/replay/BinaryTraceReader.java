@@ -0,0 +1,88 @@
+package com.example.falldetection.replay;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads traces in the compact binary form written by {@link BinaryTraceWriter}: the magic
+ * {@code "FDTR"}, a format version, then 20-byte records of a long timestamp and three
+ * floats, big endian.
+ */
+public class BinaryTraceReader extends TraceReader {
+
+    static final int MAGIC = 0x46445452; // "FDTR"
+    static final int VERSION = 1;
+    static final int RECORD_BYTES = 20;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+    private boolean eof = false;
+
+    public BinaryTraceReader(InputStream in) throws IOException {
+        channel = Channels.newChannel(in);
+        buffer.limit(0);
+        if (!fill(8) || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary trace");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+    }
+
+    /**
+     * Reads the first four bytes of {@code in} and checks them against the magic.
+     */
+    static boolean hasMagic(InputStream in) throws IOException {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                return false;
+            }
+            magic = (magic << 8) | b;
+        }
+        return magic == MAGIC;
+    }
+
+    /**
+     * Tops the buffer up until at least {@code bytes} are available or the stream ends.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (!eof && buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                eof = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    @Override
+    public int read(long[] timestamps, float[] xs, float[] ys, float[] zs) throws IOException {
+        int n = 0;
+        // A truncated last record is dropped
+        while (n < timestamps.length && fill(RECORD_BYTES)) {
+            int available = Math.min(buffer.remaining() / RECORD_BYTES, timestamps.length - n);
+            for (int i = 0; i < available; i++, n++) {
+                timestamps[n] = buffer.getLong();
+                xs[n] = buffer.getFloat();
+                ys[n] = buffer.getFloat();
+                zs[n] = buffer.getFloat();
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
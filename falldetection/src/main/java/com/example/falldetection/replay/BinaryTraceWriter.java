@@ -0,0 +1,33 @@
+package com.example.falldetection.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes traces in the binary form read by {@link BinaryTraceReader}.
+ */
+public class BinaryTraceWriter implements Closeable {
+
+    private final DataOutputStream out;
+
+    public BinaryTraceWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.out.writeInt(BinaryTraceReader.MAGIC);
+        this.out.writeInt(BinaryTraceReader.VERSION);
+    }
+
+    public void write(long timestampNanos, float x, float y, float z) throws IOException {
+        out.writeLong(timestampNanos);
+        out.writeFloat(x);
+        out.writeFloat(y);
+        out.writeFloat(z);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
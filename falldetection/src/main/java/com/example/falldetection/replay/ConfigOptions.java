@@ -0,0 +1,65 @@
+package com.example.falldetection.replay;
+
+import com.example.falldetection.detection.FallDetector;
+
+/**
+ * Sets {@link FallDetector.Config} fields from command line style {@code name=value}
+ * options. Durations are given in milliseconds.
+ */
+public final class ConfigOptions {
+
+    public static final String USAGE = "free-fall, min-free-fall-ms, free-fall-exit-ms, impact, "
+            + "impact-window-ms, stillness-tolerance, stillness-ms, stillness-timeout-ms";
+
+    private ConfigOptions() {
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown name or a malformed value
+     */
+    public static void apply(FallDetector.Config config, String name, String value) {
+        switch (name) {
+            case "free-fall":
+                config.freeFallThreshold = Float.parseFloat(value);
+                break;
+            case "min-free-fall-ms":
+                config.minFreeFallNanos = millis(value);
+                break;
+            case "free-fall-exit-ms":
+                config.freeFallExitNanos = millis(value);
+                break;
+            case "impact":
+                config.impactThreshold = Float.parseFloat(value);
+                break;
+            case "impact-window-ms":
+                config.impactWindowNanos = millis(value);
+                break;
+            case "stillness-tolerance":
+                config.stillnessTolerance = Float.parseFloat(value);
+                break;
+            case "stillness-ms":
+                config.stillnessNanos = millis(value);
+                break;
+            case "stillness-timeout-ms":
+                config.stillnessTimeoutNanos = millis(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + name + ", expected one of " + USAGE);
+        }
+    }
+
+    /**
+     * Applies one {@code name=value} option.
+     */
+    public static void apply(FallDetector.Config config, String option) {
+        int eq = option.indexOf('=');
+        if (eq <= 0) {
+            throw new IllegalArgumentException("Expected name=value, got " + option);
+        }
+        apply(config, option.substring(0, eq), option.substring(eq + 1));
+    }
+
+    private static long millis(String value) {
+        return (long) (Double.parseDouble(value) * 1000000L);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.falldetection.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Reads traces stored as text, one sample per line: {@code timestamp_ns,x,y,z}.
+ * Blank lines, lines starting with {@code #} and a non-numeric header line are skipped.
+ * The header may follow comments and blank lines, but must come before the first sample.
+ */
+public class CsvTraceReader extends TraceReader {
+
+    private final BufferedReader reader;
+    private int lineNumber = 0;
+    private boolean headerAllowed = true;
+
+    public CsvTraceReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int read(long[] timestamps, float[] xs, float[] ys, float[] zs) throws IOException {
+        int n = 0;
+        String line;
+        while (n < timestamps.length && (line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            boolean header = headerAllowed && !Character.isDigit(line.charAt(0)) && line.charAt(0) != '-';
+            headerAllowed = false;
+            if (header) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length < 4) {
+                throw new IOException("Line " + lineNumber + ": expected timestamp,x,y,z");
+            }
+            try {
+                timestamps[n] = Long.parseLong(fields[0].trim());
+                xs[n] = Float.parseFloat(fields[1].trim());
+                ys[n] = Float.parseFloat(fields[2].trim());
+                zs[n] = Float.parseFloat(fields[3].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
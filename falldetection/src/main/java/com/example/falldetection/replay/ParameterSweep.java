@@ -0,0 +1,393 @@
+package com.example.falldetection.replay;
+
+import com.example.falldetection.detection.FallDetectionPipeline;
+import com.example.falldetection.detection.FallDetector;
+import com.example.falldetection.detection.FallEvent;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Replays a labelled corpus of traces under every combination of a grid of detector
+ * settings and reports precision, recall, false alarm rate and confirmation latency for
+ * each, so thresholds can be chosen from data instead of by hand.
+ * <p>
+ * Every configuration runs through the same {@link FallDetectionPipeline} the app and
+ * {@link ReplayEngine} use, so learned thresholds and the classifier veto count too.
+ * The work is split across cores with fork/join: first by trace, then by slices of the
+ * grid. Each leaf reads its trace once and feeds every configuration in its slice, so
+ * the corpus is streamed rather than held in memory and the cost of parsing is shared.
+ * Each leaf only tallies its own slice.
+ * <p>
+ * From the command line, after building the app:
+ * <pre>
+ * java -cp falldetection/build/intermediates/javac/debug/classes \
+ *     com.example.falldetection.replay.ParameterSweep --labels=corpus/labels.csv \
+ *     --free-fall=2,2.5,3,3.5 --impact=20,24.5,29.4 --stillness-ms=1000,1500,2000
+ * </pre>
+ * Any {@link ConfigOptions} name may be given a comma-separated list of values; names
+ * given a single value are fixed for the whole sweep. The {@link ReplayEngine#PIPELINE_USAGE}
+ * options apply to every configuration. See {@link TraceLabels} for the
+ * label format. A detected fall is a true positive if its impact lies within
+ * {@code --match-ms} (default 2000) of an unmatched labelled fall. Writes
+ * {@code sweep.csv} with one row per configuration and {@code roc.csv} with the false
+ * alarm rate against recall, sorted for plotting, into {@code --out} (default the
+ * current directory). {@code --threads} limits the cores used.
+ */
+public class ParameterSweep {
+
+    private static final int CHUNK = 4096;
+    // Grid slice a single task replays, keeps tasks busy even with few traces
+    private static final int CONFIGS_PER_TASK = 16;
+
+    private final List<File> traces;
+    private final TraceLabels labels;
+    private final FallDetector.Config[] configs;
+    private final long matchToleranceNanos;
+    private final ReplayEngine engine;
+
+    public ParameterSweep(TraceLabels labels, FallDetector.Config[] configs, long matchToleranceNanos) {
+        this(labels, configs, matchToleranceNanos, new ReplayEngine(new FallDetector.Config()));
+    }
+
+    /**
+     * @param engine builds the pipeline for each configuration, its own config is not used
+     */
+    public ParameterSweep(TraceLabels labels, FallDetector.Config[] configs, long matchToleranceNanos,
+                          ReplayEngine engine) {
+        this.labels = labels;
+        this.traces = labels.traces();
+        this.configs = configs;
+        this.matchToleranceNanos = matchToleranceNanos;
+        this.engine = engine;
+    }
+
+    /**
+     * @return one tally per configuration, in the order given
+     */
+    public SweepTally[] run(ForkJoinPool pool) throws IOException {
+        try {
+            return pool.invoke(new SweepTask(0, traces.size(), 0, configs.length));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Tallies configurations {@code configFrom} to {@code configTo} over its traces.
+     */
+    private final class SweepTask extends RecursiveTask<SweepTally[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int traceFrom;
+        private final int traceTo;
+        private final int configFrom;
+        private final int configTo;
+
+        SweepTask(int traceFrom, int traceTo, int configFrom, int configTo) {
+            this.traceFrom = traceFrom;
+            this.traceTo = traceTo;
+            this.configFrom = configFrom;
+            this.configTo = configTo;
+        }
+
+        @Override
+        protected SweepTally[] compute() {
+            SweepTask left;
+            SweepTask right;
+            if (traceTo - traceFrom > 1) {
+                int mid = (traceFrom + traceTo) >>> 1;
+                left = new SweepTask(traceFrom, mid, configFrom, configTo);
+                right = new SweepTask(mid, traceTo, configFrom, configTo);
+            } else if (configTo - configFrom > CONFIGS_PER_TASK) {
+                int mid = (configFrom + configTo) >>> 1;
+                left = new SweepTask(traceFrom, traceTo, configFrom, mid);
+                right = new SweepTask(traceFrom, traceTo, mid, configTo);
+            } else {
+                SweepTally[] tallies = emptyTallies(configTo - configFrom);
+                for (int t = traceFrom; t < traceTo; t++) {
+                    try {
+                        replay(traces.get(t), configFrom, configTo, tallies);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(traces.get(t) + ": " + e.getMessage(), e);
+                    }
+                }
+                return tallies;
+            }
+            right.fork();
+            SweepTally[] tallies = left.compute();
+            SweepTally[] other = right.join();
+            if (left.configFrom != right.configFrom) {
+                // Split by configuration: the right slice follows the left one
+                SweepTally[] joined = Arrays.copyOf(tallies, tallies.length + other.length);
+                System.arraycopy(other, 0, joined, tallies.length, other.length);
+                return joined;
+            }
+            for (int i = 0; i < tallies.length; i++) {
+                tallies[i].add(other[i]);
+            }
+            return tallies;
+        }
+    }
+
+    private static SweepTally[] emptyTallies(int count) {
+        SweepTally[] tallies = new SweepTally[count];
+        for (int i = 0; i < tallies.length; i++) {
+            tallies[i] = new SweepTally();
+        }
+        return tallies;
+    }
+
+    /**
+     * Replays {@code trace} once through configurations {@code from} to {@code to} and
+     * adds their outcome to {@code tallies}, which holds that slice only.
+     */
+    private void replay(File trace, int from, int to, SweepTally[] tallies) throws IOException {
+        int n = to - from;
+        FallDetectionPipeline[] pipelines = new FallDetectionPipeline[n];
+        final List<List<FallEvent>> falls = new ArrayList<>(n);
+        for (int c = 0; c < n; c++) {
+            final List<FallEvent> found = new ArrayList<>();
+            falls.add(found);
+            pipelines[c] = engine.newPipeline(configs[from + c].copy(), new FallDetector.Listener() {
+                public void onFall(FallEvent event) {
+                    found.add(event);
+                }
+            });
+        }
+
+        long[] t = new long[CHUNK];
+        float[] x = new float[CHUNK];
+        float[] y = new float[CHUNK];
+        float[] z = new float[CHUNK];
+        long first = -1;
+        long last = -1;
+        TraceReader reader = TraceReader.open(trace);
+        try {
+            int read;
+            while ((read = reader.read(t, x, y, z)) > 0) {
+                if (first < 0) {
+                    first = t[0];
+                }
+                last = t[read - 1];
+                // One pipeline at a time over the chunk keeps its state in cache
+                for (FallDetectionPipeline pipeline : pipelines) {
+                    for (int i = 0; i < read; i++) {
+                        pipeline.onSample(t[i], x[i], y[i], z[i]);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        long[] labelled = labels.fallsIn(trace);
+        for (int c = 0; c < n; c++) {
+            SweepTally tally = tallies[c];
+            tally.recordedNanos += Math.max(0, last - first);
+            boolean[] matched = new boolean[labelled.length];
+            for (FallEvent fall : falls.get(c)) {
+                int label = match(labelled, matched, fall.impactNanos);
+                if (label < 0) {
+                    tally.falsePositives++;
+                } else {
+                    matched[label] = true;
+                    tally.truePositives++;
+                    tally.addLatency(fall.confirmedNanos - labelled[label]);
+                }
+            }
+            for (boolean m : matched) {
+                if (!m) {
+                    tally.falseNegatives++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return index of the closest unmatched label within tolerance of {@code impactNanos}, or -1
+     */
+    private int match(long[] labelled, boolean[] matched, long impactNanos) {
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < labelled.length; i++) {
+            long distance = Math.abs(impactNanos - labelled[i]);
+            if (!matched[i] && distance <= matchToleranceNanos && distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws IOException {
+        File labelFile = null;
+        File out = new File(".");
+        long matchToleranceNanos = 2000 * 1000000L;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> names = new ArrayList<>();
+        List<String[]> values = new ArrayList<>();
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        ReplayEngine engine = ReplayEngine.fromOptions(new FallDetector.Config(), rest);
+        for (String arg : rest) {
+            if (arg.startsWith("--labels=")) {
+                labelFile = new File(arg.substring("--labels=".length()));
+            } else if (arg.startsWith("--out=")) {
+                out = new File(arg.substring("--out=".length()));
+            } else if (arg.startsWith("--match-ms=")) {
+                matchToleranceNanos = (long) (Double.parseDouble(arg.substring("--match-ms=".length())) * 1000000L);
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+                int eq = arg.indexOf('=');
+                String name = arg.substring(2, eq);
+                String[] list = arg.substring(eq + 1).split(",");
+                // Fail on bad names and values now rather than in the middle of the sweep
+                for (String value : list) {
+                    ConfigOptions.apply(new FallDetector.Config(), name, value.trim());
+                }
+                names.add(name);
+                values.add(list);
+            } else {
+                labelFile = null;
+                break;
+            }
+        }
+        if (labelFile == null) {
+            System.err.println("Usage: ParameterSweep --labels=file [--out=dir] [--match-ms=ms] "
+                    + "[--threads=n] " + ReplayEngine.PIPELINE_USAGE + " [--name=value[,value...] ...]");
+            System.err.println("Config names: " + ConfigOptions.USAGE);
+            System.exit(2);
+        }
+
+        TraceLabels labels = TraceLabels.read(labelFile);
+        List<String[]> grid = expand(values);
+        FallDetector.Config[] configs = new FallDetector.Config[grid.size()];
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = new FallDetector.Config();
+            for (int p = 0; p < names.size(); p++) {
+                ConfigOptions.apply(configs[i], names.get(p), grid.get(i)[p].trim());
+            }
+        }
+        System.out.printf("%d traces, %d labelled falls, %d configurations, %d threads%n",
+                labels.traces().size(), labels.fallCount(), configs.length, threads);
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        SweepTally[] tallies;
+        try {
+            tallies = new ParameterSweep(labels, configs, matchToleranceNanos, engine).run(pool);
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new IOException("Cannot create " + out);
+        }
+        writeSweep(new File(out, "sweep.csv"), names, grid, tallies);
+        writeRoc(new File(out, "roc.csv"), names, grid, tallies);
+        System.out.printf("Swept in %.1f s, wrote %s and %s%n", elapsed / 1e9,
+                new File(out, "sweep.csv"), new File(out, "roc.csv"));
+    }
+
+    /**
+     * @return every combination of one value per parameter, last parameter varying fastest
+     */
+    static List<String[]> expand(List<String[]> values) {
+        List<String[]> grid = new ArrayList<>();
+        grid.add(new String[values.size()]);
+        for (int p = 0; p < values.size(); p++) {
+            List<String[]> next = new ArrayList<>();
+            for (String[] partial : grid) {
+                for (String value : values.get(p)) {
+                    String[] combination = partial.clone();
+                    combination[p] = value.trim();
+                    next.add(combination);
+                }
+            }
+            grid = next;
+        }
+        return grid;
+    }
+
+    private static void writeSweep(File file, List<String> names, List<String[]> grid,
+                                   SweepTally[] tallies) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println(header(names) + "true_positives,false_positives,false_negatives,"
+                    + "precision,recall,false_alarms_per_hour,mean_latency_ms,p95_latency_ms");
+            for (int i = 0; i < tallies.length; i++) {
+                SweepTally s = tallies[i];
+                writer.println(row(grid.get(i)) + String.format(Locale.US, "%d,%d,%d,%.4f,%.4f,%.4f,%.1f,%.1f",
+                        s.truePositives, s.falsePositives, s.falseNegatives, s.precision(),
+                        s.recall(), s.falseAlarmsPerHour(), s.meanLatencyMillis(),
+                        s.latencyQuantileMillis(0.95)));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes each configuration as a point of false alarm rate against recall, sorted by
+     * false alarm rate, and marks the points no other configuration beats on both.
+     */
+    private static void writeRoc(File file, List<String> names, List<String[]> grid,
+                                 final SweepTally[] tallies) throws IOException {
+        Integer[] order = new Integer[tallies.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int c = Double.compare(tallies[a].falseAlarmsPerHour(), tallies[b].falseAlarmsPerHour());
+                return c != 0 ? c : Double.compare(tallies[b].recall(), tallies[a].recall());
+            }
+        });
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("false_alarms_per_hour,recall,frontier," + header(names).replaceAll(",$", ""));
+            double bestRecall = Double.NEGATIVE_INFINITY;
+            for (int i : order) {
+                SweepTally s = tallies[i];
+                // Sorted by false alarms, so a point is on the frontier if it beats every earlier recall
+                boolean frontier = s.recall() > bestRecall;
+                if (frontier) {
+                    bestRecall = s.recall();
+                }
+                writer.println(String.format(Locale.US, "%.4f,%.4f,%d,", s.falseAlarmsPerHour(),
+                        s.recall(), frontier ? 1 : 0) + row(grid.get(i)).replaceAll(",$", ""));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String header(List<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            sb.append(name).append(',');
+        }
+        return sb.toString();
+    }
+
+    private static String row(String[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            sb.append(value).append(',');
+        }
+        return sb.toString();
+    }
+}
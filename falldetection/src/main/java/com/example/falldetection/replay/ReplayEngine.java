@@ -0,0 +1,218 @@
+package com.example.falldetection.replay;
+
+import com.example.falldetection.detection.AdaptiveThreshold;
+import com.example.falldetection.detection.ClassifierLoader;
+import com.example.falldetection.detection.FallClassifier;
+import com.example.falldetection.detection.FallDetectionPipeline;
+import com.example.falldetection.detection.FallDetector;
+import com.example.falldetection.detection.FallEvent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Runs recorded accelerometer traces through the same {@link FallDetectionPipeline} the
+ * app uses, as fast as the CPU allows.
+ * <p>
+ * From the command line, after building the app:
+ * <pre>
+ * java -cp falldetection/build/intermediates/javac/debug/classes \
+ *     com.example.falldetection.replay.ReplayEngine [options] trace...
+ * </pre>
+ * Options are {@code --adaptive}, {@code --model=file}, {@code --classifier-threshold=p}
+ * and any {@code --name=value} understood by {@link ConfigOptions}. Traces may be CSV
+ * or binary. {@code --convert in.csv out.bin} writes a CSV trace in binary form.
+ */
+public class ReplayEngine {
+
+    /**
+     * Command line options for the pipeline itself, shared with {@link ParameterSweep}.
+     */
+    public static final String PIPELINE_USAGE = "[--adaptive] [--model=file] [--classifier-threshold=p]";
+
+    private static final int CHUNK = 4096;
+
+    private final FallDetector.Config config;
+    private final boolean adaptive;
+    private final FallClassifier classifier;
+    private final float classifierThreshold;
+
+    // Reused across traces, replay itself does not allocate per sample
+    private final long[] timestamps = new long[CHUNK];
+    private final float[] xs = new float[CHUNK];
+    private final float[] ys = new float[CHUNK];
+    private final float[] zs = new float[CHUNK];
+
+    public ReplayEngine(FallDetector.Config config) {
+        this(config, false, null, 0f);
+    }
+
+    /**
+     * @param adaptive   learn thresholds from each trace, starting fresh every time
+     * @param classifier model to veto falls with, or null
+     */
+    public ReplayEngine(FallDetector.Config config, boolean adaptive, FallClassifier classifier,
+                        float classifierThreshold) {
+        this.config = config;
+        this.adaptive = adaptive;
+        this.classifier = classifier;
+        this.classifierThreshold = classifierThreshold;
+    }
+
+    /**
+     * Replays one trace through a fresh pipeline. Does not close {@code reader}.
+     */
+    public ReplayResult replay(TraceReader reader) throws IOException {
+        final ReplayResult result = new ReplayResult();
+        FallDetectionPipeline pipeline = newPipeline(config.copy(), new FallDetector.Listener() {
+            public void onFall(FallEvent event) {
+                result.falls.add(event);
+            }
+        });
+        long start = System.nanoTime();
+        int n;
+        while ((n = reader.read(timestamps, xs, ys, zs)) > 0) {
+            if (result.firstTimestampNanos < 0) {
+                result.firstTimestampNanos = timestamps[0];
+            }
+            for (int i = 0; i < n; i++) {
+                pipeline.onSample(timestamps[i], xs[i], ys[i], zs[i]);
+            }
+            result.samples += n;
+            result.lastTimestampNanos = timestamps[n - 1];
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * @return a fresh pipeline around {@code config}, with this engine's threshold learning
+     * and classifier
+     */
+    public FallDetectionPipeline newPipeline(FallDetector.Config config, FallDetector.Listener listener) {
+        FallDetectionPipeline pipeline = new FallDetectionPipeline(config, listener,
+                adaptive ? new AdaptiveThreshold() : null);
+        if (classifier != null) {
+            pipeline.setClassifier(classifier, classifierThreshold);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Takes the {@link #PIPELINE_USAGE} options out of {@code args}.
+     *
+     * @param config detector settings for the engine, used by reference
+     * @return an engine with those options
+     */
+    public static ReplayEngine fromOptions(FallDetector.Config config, List<String> args) throws IOException {
+        boolean adaptive = false;
+        FallClassifier classifier = null;
+        float classifierThreshold = 0.5f;
+        for (Iterator<String> it = args.iterator(); it.hasNext(); ) {
+            String arg = it.next();
+            if (arg.equals("--adaptive")) {
+                adaptive = true;
+            } else if (arg.startsWith("--model=")) {
+                InputStream in = new FileInputStream(arg.substring("--model=".length()));
+                try {
+                    classifier = ClassifierLoader.load(in);
+                } finally {
+                    in.close();
+                }
+            } else if (arg.startsWith("--classifier-threshold=")) {
+                classifierThreshold = Float.parseFloat(arg.substring("--classifier-threshold=".length()));
+            } else {
+                continue;
+            }
+            it.remove();
+        }
+        return new ReplayEngine(config, adaptive, classifier, classifierThreshold);
+    }
+
+    public ReplayResult replay(File trace) throws IOException {
+        TraceReader reader = TraceReader.open(trace);
+        try {
+            return replay(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes a CSV trace in the binary form.
+     *
+     * @return number of samples written
+     */
+    public static long convert(File csv, File binary) throws IOException {
+        long[] t = new long[CHUNK];
+        float[] x = new float[CHUNK];
+        float[] y = new float[CHUNK];
+        float[] z = new float[CHUNK];
+        long total = 0;
+        TraceReader reader = TraceReader.open(csv);
+        BinaryTraceWriter writer = new BinaryTraceWriter(new FileOutputStream(binary));
+        try {
+            int n;
+            while ((n = reader.read(t, x, y, z)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    writer.write(t[i], x[i], y[i], z[i]);
+                }
+                total += n;
+            }
+        } finally {
+            reader.close();
+            writer.close();
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--convert")) {
+            long n = convert(new File(args[1]), new File(args[2]));
+            System.out.println("Wrote " + n + " samples to " + args[2]);
+            return;
+        }
+        FallDetector.Config config = new FallDetector.Config();
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        ReplayEngine engine = fromOptions(config, rest);
+        List<File> traces = new ArrayList<>();
+        for (String arg : rest) {
+            if (arg.startsWith("--")) {
+                ConfigOptions.apply(config, arg.substring(2));
+            } else {
+                traces.add(new File(arg));
+            }
+        }
+        if (traces.isEmpty()) {
+            System.err.println("Usage: ReplayEngine " + PIPELINE_USAGE + " [--name=value ...] trace...");
+            System.err.println("       ReplayEngine --convert in.csv out.bin");
+            System.err.println("Config names: " + ConfigOptions.USAGE);
+            System.exit(2);
+        }
+
+        long samples = 0;
+        long elapsed = 0;
+        int falls = 0;
+        for (File trace : traces) {
+            ReplayResult result = engine.replay(trace);
+            samples += result.samples;
+            elapsed += result.elapsedNanos;
+            falls += result.falls.size();
+            System.out.printf("%s: %d samples, %.0f samples/s, %.0fx real time, %d falls%n",
+                    trace.getName(), result.samples, result.samplesPerSecond(), result.speedUp(),
+                    result.falls.size());
+            for (FallEvent fall : result.falls) {
+                System.out.println("  " + fall);
+            }
+        }
+        System.out.printf("Total: %d samples in %.3f s, %.0f samples/s, %d falls%n",
+                samples, elapsed / 1e9, elapsed == 0 ? 0 : samples * 1e9 / elapsed, falls);
+    }
+}
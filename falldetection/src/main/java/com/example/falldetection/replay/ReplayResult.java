@@ -0,0 +1,30 @@
+package com.example.falldetection.replay;
+
+import com.example.falldetection.detection.FallEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What one trace replay found, and how fast it ran.
+ */
+public class ReplayResult {
+
+    public final List<FallEvent> falls = new ArrayList<>();
+    public long samples;
+    public long elapsedNanos;
+    public long firstTimestampNanos = -1;
+    public long lastTimestampNanos = -1;
+
+    public double samplesPerSecond() {
+        return elapsedNanos == 0 ? 0 : samples * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return how much faster than real time the trace replayed
+     */
+    public double speedUp() {
+        long recorded = lastTimestampNanos - firstTimestampNanos;
+        return elapsedNanos == 0 ? 0 : (double) recorded / elapsedNanos;
+    }
+}
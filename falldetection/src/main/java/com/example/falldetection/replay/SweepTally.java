@@ -0,0 +1,79 @@
+package com.example.falldetection.replay;
+
+import java.util.Arrays;
+
+/**
+ * Detection outcome of one configuration over part or all of a labelled corpus.
+ * Tallies from disjoint parts of the corpus are combined with {@link #add}.
+ */
+public class SweepTally {
+
+    public int truePositives;
+    public int falsePositives;
+    public int falseNegatives;
+    public long recordedNanos;
+    // Confirmation latency of each true positive, in nanoseconds
+    private long[] latencies = new long[8];
+    private int latencyCount;
+
+    void addLatency(long nanos) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencyCount * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    public void add(SweepTally other) {
+        truePositives += other.truePositives;
+        falsePositives += other.falsePositives;
+        falseNegatives += other.falseNegatives;
+        recordedNanos += other.recordedNanos;
+        for (int i = 0; i < other.latencyCount; i++) {
+            addLatency(other.latencies[i]);
+        }
+    }
+
+    /**
+     * @return fraction of reported falls that were real, or NaN with no reports
+     */
+    public double precision() {
+        int reported = truePositives + falsePositives;
+        return reported == 0 ? Double.NaN : (double) truePositives / reported;
+    }
+
+    /**
+     * @return fraction of real falls that were reported, or NaN with no labelled falls
+     */
+    public double recall() {
+        int labelled = truePositives + falseNegatives;
+        return labelled == 0 ? Double.NaN : (double) truePositives / labelled;
+    }
+
+    public double falseAlarmsPerHour() {
+        return recordedNanos == 0 ? 0 : falsePositives * 3600e9 / recordedNanos;
+    }
+
+    public double meanLatencyMillis() {
+        if (latencyCount == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int i = 0; i < latencyCount; i++) {
+            sum += latencies[i];
+        }
+        return sum / latencyCount / 1e6;
+    }
+
+    /**
+     * @param q quantile in [0, 1]
+     */
+    public double latencyQuantileMillis(double q) {
+        if (latencyCount == 0) {
+            return Double.NaN;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int i = (int) Math.min(latencyCount - 1, Math.ceil(q * latencyCount) - 1);
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+}
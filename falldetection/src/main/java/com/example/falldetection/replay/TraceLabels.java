@@ -0,0 +1,100 @@
+package com.example.falldetection.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ground truth for a corpus of traces, read from a CSV file with one line per labelled
+ * fall: {@code trace,fall_timestamp_ns}. A trace without falls is listed once with an
+ * empty timestamp. Trace paths are relative to the label file. Blank lines, lines
+ * starting with {@code #} and a non-numeric header line before the first label are
+ * skipped, as in trace files.
+ */
+public class TraceLabels {
+
+    private final Map<File, long[]> falls;
+
+    private TraceLabels(Map<File, long[]> falls) {
+        this.falls = falls;
+    }
+
+    public static TraceLabels read(File labelFile) throws IOException {
+        Map<File, List<Long>> byTrace = new LinkedHashMap<>();
+        File base = labelFile.getAbsoluteFile().getParentFile();
+        BufferedReader reader = new BufferedReader(new FileReader(labelFile));
+        try {
+            String line;
+            int lineNumber = 0;
+            boolean headerAllowed = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                String timestamp = fields.length > 1 ? fields[1].trim() : "";
+                boolean header = headerAllowed && !timestamp.isEmpty() && !Character.isDigit(timestamp.charAt(0));
+                headerAllowed = false;
+                if (header) {
+                    continue;
+                }
+                File trace = new File(fields[0].trim());
+                if (!trace.isAbsolute()) {
+                    trace = new File(base, fields[0].trim());
+                }
+                List<Long> times = byTrace.get(trace);
+                if (times == null) {
+                    times = new ArrayList<>();
+                    byTrace.put(trace, times);
+                }
+                if (!timestamp.isEmpty()) {
+                    try {
+                        times.add(Long.parseLong(timestamp));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        Map<File, long[]> falls = new LinkedHashMap<>();
+        for (Map.Entry<File, List<Long>> entry : byTrace.entrySet()) {
+            long[] times = new long[entry.getValue().size()];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = entry.getValue().get(i);
+            }
+            Arrays.sort(times);
+            falls.put(entry.getKey(), times);
+        }
+        return new TraceLabels(falls);
+    }
+
+    public List<File> traces() {
+        return new ArrayList<>(falls.keySet());
+    }
+
+    /**
+     * @return labelled fall timestamps of {@code trace}, sorted, empty if it has none
+     */
+    public long[] fallsIn(File trace) {
+        long[] times = falls.get(trace);
+        return times == null ? new long[0] : times;
+    }
+
+    public int fallCount() {
+        int n = 0;
+        for (long[] times : falls.values()) {
+            n += times.length;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.falldetection.replay;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams a recorded accelerometer trace in chunks of primitive arrays, so traces of any
+ * length replay in bounded memory.
+ */
+public abstract class TraceReader implements Closeable {
+
+    /**
+     * Fills the arrays from index 0 with the next samples.
+     *
+     * @return number of samples read, or 0 at the end of the trace
+     */
+    public abstract int read(long[] timestamps, float[] xs, float[] ys, float[] zs) throws IOException;
+
+    /**
+     * Opens {@code file} as a binary trace if it starts with the binary magic, as CSV otherwise.
+     */
+    public static TraceReader open(File file) throws IOException {
+        boolean binary;
+        InputStream in = new FileInputStream(file);
+        try {
+            binary = BinaryTraceReader.hasMagic(in);
+        } finally {
+            in.close();
+        }
+        if (binary) {
+            return new BinaryTraceReader(new FileInputStream(file));
+        }
+        return new CsvTraceReader(new BufferedReader(new FileReader(file)));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Covers the buffer together with the {@link AccelWindow} views it hands out.
+ */
+public class AccelSampleBufferTest {
+
+    private static final long PERIOD_NANOS = 10;
+
+    @Test
+    public void capacity_isRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new AccelSampleBuffer(5).capacity());
+        assertEquals(8, new AccelSampleBuffer(8).capacity());
+        assertEquals(1, new AccelSampleBuffer(1).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity_isRejected() {
+        new AccelSampleBuffer(0);
+    }
+
+    @Test
+    public void add_returnsSquaredMagnitude() {
+        AccelSampleBuffer buffer = new AccelSampleBuffer(8);
+        assertEquals(169f, buffer.add(0, 3, 4, 12), 0);
+        assertEquals(169f, buffer.latestMagnitudeSquared(), 0);
+        assertEquals(169f, buffer.magnitudeSquaredAt(0), 0);
+    }
+
+    @Test
+    public void wrap_keepsNewestSamples() {
+        AccelSampleBuffer buffer = new AccelSampleBuffer(8);
+        fill(buffer, 5);
+        assertEquals(5, buffer.size());
+        assertEquals(0, buffer.oldestSequence());
+        fill(buffer, 5, 13);
+        assertEquals(8, buffer.size());
+        assertEquals(13, buffer.count());
+        assertEquals(5, buffer.oldestSequence());
+        assertEquals(12 * PERIOD_NANOS, buffer.latestTimestamp());
+        for (long s = buffer.oldestSequence(); s < buffer.count(); s++) {
+            assertEquals(s * PERIOD_NANOS, buffer.timestampAt(s));
+            assertEquals(s, buffer.xAt(s), 0);
+            assertEquals(-s, buffer.yAt(s), 0);
+            assertEquals(1, buffer.zAt(s), 0);
+        }
+    }
+
+    @Test
+    public void clear_startsSequenceOver() {
+        AccelSampleBuffer buffer = new AccelSampleBuffer(8);
+        fill(buffer, 13);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.oldestSequence());
+        buffer.add(500, 0, 0, 1);
+        assertEquals(500, buffer.timestampAt(0));
+    }
+
+    @Test
+    public void latest_coversNewestSamplesOldestFirst() {
+        AccelSampleBuffer buffer = new AccelSampleBuffer(8);
+        fill(buffer, 13);
+        AccelWindow window = buffer.latest(3, new AccelWindow());
+        assertEquals(3, window.size());
+        assertEquals(10, window.startSequence());
+        assertEquals(10 * PERIOD_NANOS, window.timestamp(0));
+        assertEquals(12 * PERIOD_NANOS, window.timestamp(2));
+        assertEquals(12f, window.x(2), 0);
+        assertEquals(2 * PERIOD_NANOS, window.durationNanos());
+        // Never more than is held
+        assertEquals(8, buffer.latest(20, window).size());
+        assertEquals(5, window.startSequence());
+    }
+
+    @Test
+    public void since_findsFirstSampleAtOrAfter() {
+        AccelSampleBuffer buffer = new AccelSampleBuffer(8);
+        fill(buffer, 13);
+        AccelWindow window = new AccelWindow();
+        // On a sample
+        assertEquals(4, buffer.since(9 * PERIOD_NANOS, window).size());
+        assertEquals(9, window.startSequence());
+        // Between two samples
+        assertEquals(3, buffer.since(9 * PERIOD_NANOS + 1, window).size());
+        assertEquals(10, window.startSequence());
+        // Before the oldest held sample, clamped to it
+        assertEquals(8, buffer.since(0, window).size());
+        assertEquals(5, window.startSequence());
+        // After the newest
+        assertEquals(0, buffer.since(13 * PERIOD_NANOS, window).size());
+        assertEquals(0, window.durationNanos());
+    }
+
+    @Test
+    public void window_goesStaleOnceOverwritten() {
+        AccelSampleBuffer buffer = new AccelSampleBuffer(8);
+        assertFalse(new AccelWindow().isValid());
+        fill(buffer, 8);
+        AccelWindow window = buffer.latest(4, new AccelWindow());
+        assertTrue(window.isValid());
+        // Overwrites sequences 0 to 3, the window starts at 4
+        fill(buffer, 8, 12);
+        assertTrue(window.isValid());
+        fill(buffer, 12, 13);
+        assertFalse(window.isValid());
+    }
+
+    private static void fill(AccelSampleBuffer buffer, int count) {
+        fill(buffer, 0, count);
+    }
+
+    /**
+     * Adds samples with sequence numbers {@code from} up to {@code to}, each carrying its
+     * sequence number.
+     */
+    private static void fill(AccelSampleBuffer buffer, long from, long to) {
+        for (long s = from; s < to; s++) {
+            buffer.add(s * PERIOD_NANOS, s, -s, 1);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.falldetection.detection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Models and inputs shared by the classifier tests and benchmarks.
+ */
+final class ClassifierFixtures {
+
+    private ClassifierFixtures() {
+    }
+
+    static byte[] save(FallClassifier model) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClassifierLoader.save(model, bytes);
+        return bytes.toByteArray();
+    }
+
+    static FallClassifier load(byte[] bytes) throws IOException {
+        return ClassifierLoader.load(new ByteArrayInputStream(bytes));
+    }
+
+    static FallClassifier roundTrip(FallClassifier model) throws IOException {
+        return load(save(model));
+    }
+
+    static float[][] randomInputs(Random random, int count) {
+        float[][] inputs = new float[count][FeatureExtractor.FEATURE_COUNT];
+        for (float[] x : inputs) {
+            for (int i = 0; i < x.length; i++) {
+                x[i] = random.nextFloat() * 20;
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Complete trees of the given depth, nodes laid out breadth first.
+     */
+    static TreeEnsembleClassifier randomEnsemble(Random random, int trees, int depth) {
+        int perTree = (1 << (depth + 1)) - 1;
+        int n = trees * perTree;
+        int[] roots = new int[trees];
+        int[] features = new int[n];
+        float[] thresholds = new float[n];
+        int[] left = new int[n];
+        int[] right = new int[n];
+        float[] values = new float[n];
+        for (int t = 0; t < trees; t++) {
+            int offset = t * perTree;
+            roots[t] = offset;
+            for (int i = 0; i < perTree; i++) {
+                int node = offset + i;
+                if (2 * i + 1 < perTree) {
+                    features[node] = random.nextInt(FeatureExtractor.FEATURE_COUNT);
+                    thresholds[node] = random.nextFloat() * 20;
+                    left[node] = offset + 2 * i + 1;
+                    right[node] = offset + 2 * i + 2;
+                } else {
+                    features[node] = -1;
+                    values[node] = (float) random.nextGaussian() * 0.1f;
+                }
+            }
+        }
+        return new TreeEnsembleClassifier(FeatureExtractor.FEATURE_COUNT, 0f, roots, features,
+                thresholds, left, right, values);
+    }
+
+    static LogisticRegressionClassifier randomLogistic(Random random) {
+        float[] means = new float[FeatureExtractor.FEATURE_COUNT];
+        float[] scales = new float[FeatureExtractor.FEATURE_COUNT];
+        float[] weights = new float[FeatureExtractor.FEATURE_COUNT];
+        for (int i = 0; i < weights.length; i++) {
+            means[i] = random.nextFloat() * 10;
+            scales[i] = 1 + random.nextFloat();
+            weights[i] = (float) random.nextGaussian();
+        }
+        return new LogisticRegressionClassifier(means, scales, weights, -1f);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DurationDebouncerTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void contrarySample_doesNotCompleteEnter() {
+        DurationDebouncer debouncer = new DurationDebouncer(60 * MS, 30 * MS);
+        assertFalse(debouncer.update(0, true));
+        // A single low sample followed 200 ms later by a normal one is not a 60 ms free fall
+        assertFalse(debouncer.update(200 * MS, false));
+        assertFalse(debouncer.hasBeenActive());
+    }
+
+    @Test
+    public void turnsOnOnceConditionSeenForEnterDuration() {
+        DurationDebouncer debouncer = new DurationDebouncer(60 * MS, 30 * MS);
+        assertFalse(debouncer.update(0, true));
+        assertFalse(debouncer.update(40 * MS, true));
+        assertTrue(debouncer.update(60 * MS, true));
+        assertEquals(0, debouncer.getActiveSinceNanos());
+    }
+
+    @Test
+    public void shortGlitches_areIgnoredBothWays() {
+        DurationDebouncer debouncer = new DurationDebouncer(60 * MS, 30 * MS);
+        debouncer.update(0, true);
+        debouncer.update(20 * MS, false);
+        assertFalse(debouncer.update(70 * MS, true));
+        assertTrue(debouncer.update(130 * MS, true));
+        // One false sample, then true again: stays on
+        assertTrue(debouncer.update(140 * MS, false));
+        assertTrue(debouncer.update(200 * MS, true));
+        assertTrue(debouncer.update(220 * MS, false));
+        assertFalse(debouncer.update(250 * MS, false));
+        assertEquals(220 * MS, debouncer.getInactiveSinceNanos());
+    }
+
+    @Test
+    public void zeroDurations_followConditionAtOnce() {
+        DurationDebouncer debouncer = new DurationDebouncer(0, 0);
+        assertTrue(debouncer.update(0, true));
+        assertFalse(debouncer.update(1, false));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static com.example.falldetection.detection.ClassifierFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * Measures classifier inference speed on the JVM. Left out of the unit tests, run with
+ * {@code ./gradlew :falldetection:testDebugUnitTest -Pbenchmarks}.
+ */
+public class FallClassifierBenchmark {
+
+    private static final int TREES = 100;
+    private static final int DEPTH = 6;
+    private static final int WARM_UP = 200000;
+    private static final int ITERATIONS = 2000000;
+
+    @Test
+    public void treeEnsemble_inferencesPerSecond() throws IOException {
+        FallClassifier model = roundTrip(randomEnsemble(new Random(1), TREES, DEPTH));
+        report("tree ensemble (" + TREES + " trees, depth " + DEPTH + ")", model);
+    }
+
+    @Test
+    public void logisticRegression_inferencesPerSecond() throws IOException {
+        FallClassifier model = roundTrip(randomLogistic(new Random(2)));
+        report("logistic regression", model);
+    }
+
+    private static void report(String name, FallClassifier model) {
+        float[][] inputs = randomInputs(new Random(5), 1024);
+        double sink = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            sink += model.score(inputs[i & 1023]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += model.score(inputs[i & 1023]);
+        }
+        long elapsed = System.nanoTime() - start;
+        double perSecond = ITERATIONS * 1e9 / elapsed;
+        System.out.printf("%s: %.0f inferences/s, %.3f us each%n",
+                name, perSecond, elapsed / 1000.0 / ITERATIONS);
+        // Scores are probabilities, so the mean must be too
+        double mean = sink / (WARM_UP + ITERATIONS);
+        assertTrue(mean >= 0 && mean <= 1);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.example.falldetection.detection.ClassifierFixtures.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks model scores and that models survive a round trip through {@link ClassifierLoader}.
+ */
+public class FallClassifierTest {
+
+    // Offsets into the saved smallEnsemble(): 9 bytes of header, then the model body
+    private static final int FIRST_ROOT = 21;
+    private static final int NODE_0_LEFT = 39;
+    private static final int NODE_3_FEATURE = 59;
+
+    @Test
+    public void roundTrip_keepsScores() throws IOException {
+        FallClassifier model = randomEnsemble(new Random(3), 100, 6);
+        FallClassifier loaded = roundTrip(model);
+        float[][] inputs = randomInputs(new Random(4), 100);
+        for (float[] x : inputs) {
+            assertEquals(model.score(x), loaded.score(x), 0f);
+        }
+    }
+
+    @Test
+    public void logisticRoundTrip_keepsScores() throws IOException {
+        FallClassifier model = randomLogistic(new Random(5));
+        FallClassifier loaded = roundTrip(model);
+        assertTrue(loaded instanceof LogisticRegressionClassifier);
+        assertEquals(model.featureCount(), loaded.featureCount());
+        for (float[] x : randomInputs(new Random(6), 100)) {
+            assertEquals(model.score(x), loaded.score(x), 0f);
+        }
+    }
+
+    @Test
+    public void treeEnsemble_sumsReachedLeaves() {
+        TreeEnsembleClassifier model = smallEnsemble();
+        assertEquals(2, model.treeCount());
+        // Left in the first tree, right in the second
+        assertEquals(sigmoid(0.1 + 0.5 + 2.0), model.score(new float[]{0, 20}), 1e-6f);
+        // A value on the threshold goes right
+        assertEquals(sigmoid(0.1 - 0.25 + 1.0), model.score(new float[]{1, 5}), 1e-6f);
+    }
+
+    @Test
+    public void logisticRegression_standardizesFeatures() {
+        // A zero scale switches its feature off
+        LogisticRegressionClassifier model = new LogisticRegressionClassifier(
+                new float[]{1, 2}, new float[]{2, 0}, new float[]{3, 5}, -1f);
+        assertEquals(2, model.featureCount());
+        assertEquals(sigmoid(-1 + 3 * (5 - 1) / 2.0), model.score(new float[]{5, 100}), 1e-6f);
+        assertEquals(sigmoid(-1 + 3 * (-3 - 1) / 2.0), model.score(new float[]{-3, -100}), 1e-6f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void logisticLengthMismatch_isRejected() {
+        new LogisticRegressionClassifier(new float[2], new float[2], new float[3], 0f);
+    }
+
+    @Test
+    public void badMagic_isRejected() throws IOException {
+        byte[] bytes = save(smallEnsemble());
+        bytes[0] ^= 1;
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void otherVersion_isRejected() throws IOException {
+        byte[] bytes = save(smallEnsemble());
+        ByteBuffer.wrap(bytes).putInt(4, 2);
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void unknownType_isRejected() throws IOException {
+        byte[] bytes = save(smallEnsemble());
+        bytes[8] = 9;
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void truncatedModel_isRejected() throws IOException {
+        for (FallClassifier model : new FallClassifier[]{smallEnsemble(), randomLogistic(new Random(7))}) {
+            byte[] bytes = save(model);
+            for (int length = 0; length < bytes.length; length++) {
+                assertRejected(Arrays.copyOf(bytes, length));
+            }
+        }
+    }
+
+    @Test
+    public void childOutOfRange_isRejected() throws IOException {
+        byte[] bytes = save(smallEnsemble());
+        ByteBuffer.wrap(bytes).putInt(NODE_0_LEFT, 6);
+        assertRejected(bytes);
+        // A child before its parent could loop forever
+        ByteBuffer.wrap(bytes).putInt(NODE_0_LEFT, 0);
+        assertRejected(bytes);
+        bytes = save(smallEnsemble());
+        ByteBuffer.wrap(bytes).putInt(FIRST_ROOT, -1);
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void featureOutOfRange_isRejected() throws IOException {
+        byte[] bytes = save(smallEnsemble());
+        ByteBuffer.wrap(bytes).putShort(NODE_3_FEATURE, (short) 2);
+        assertRejected(bytes);
+    }
+
+    /**
+     * Two stumps over two features: feature 0 split at 1 with leaves 0.5 and -0.25,
+     * feature 1 split at 10 with leaves 1 and 2, and a base of 0.1.
+     */
+    private static TreeEnsembleClassifier smallEnsemble() {
+        return new TreeEnsembleClassifier(2, 0.1f, new int[]{0, 3},
+                new int[]{0, -1, -1, 1, -1, -1},
+                new float[]{1, 0, 0, 10, 0, 0},
+                new int[]{1, 0, 0, 4, 0, 0},
+                new int[]{2, 0, 0, 5, 0, 0},
+                new float[]{0, 0.5f, -0.25f, 0, 1, 2});
+    }
+
+    private static float sigmoid(double z) {
+        return (float) (1 / (1 + Math.exp(-z)));
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            load(bytes);
+            fail("loaded " + bytes.length + " bytes");
+        } catch (IOException expected) {
+            // Corrupt or truncated
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays short synthetic traces, sampled at 100 Hz, through the detector.
+ */
+public class FallDetectorTest {
+
+    private static final long MS = 1000000L;
+    private static final long PERIOD_NANOS = 10 * MS;
+    private static final float G = FallDetector.GRAVITY;
+
+    private final List<FallEvent> falls = new ArrayList<>();
+
+    private final FallDetector.Listener listener = new FallDetector.Listener() {
+        public void onFall(FallEvent event) {
+            falls.add(event);
+        }
+    };
+
+    @Test
+    public void freeFallImpactStillness_confirmsFall() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        feed(detector, 0, 1000, G);
+        feed(detector, 1000, 1300, 0.5f);
+        feed(detector, 1300, 1320, 40f);
+        feed(detector, 1320, 4000, G);
+        assertEquals(1, falls.size());
+        FallEvent fall = falls.get(0);
+        assertEquals(1000 * MS, fall.freeFallStartNanos);
+        assertEquals(1300 * MS, fall.freeFallEndNanos);
+        assertEquals(1300 * MS, fall.impactNanos);
+        assertEquals(40f, fall.peakMagnitude, 1e-3f);
+        assertEquals(1320 * MS, fall.stillnessStartNanos);
+        assertEquals(2820 * MS, fall.confirmedNanos);
+        assertFalse(fall.corroborated);
+        assertEquals(FallDetector.Phase.IDLE, detector.getPhase());
+    }
+
+    @Test
+    public void impactWithoutFreeFall_confirmsFall() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        feed(detector, 0, 1000, G);
+        feed(detector, 1000, 1020, 40f);
+        assertEquals(FallDetector.Phase.AWAIT_STILLNESS, detector.getPhase());
+        assertEquals(1000 * MS, detector.getImpactNanos());
+        feed(detector, 1020, 3000, G);
+        assertEquals(1, falls.size());
+        assertEquals(-1, falls.get(0).freeFallStartNanos);
+        assertEquals(-1, falls.get(0).freeFallEndNanos);
+        assertEquals(1000 * MS, falls.get(0).impactNanos);
+    }
+
+    @Test
+    public void shortDip_isNotFreeFall() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        feed(detector, 0, 1000, G);
+        feed(detector, 1000, 1030, 0.5f);
+        feed(detector, 1030, 1100, G);
+        assertEquals(FallDetector.Phase.IDLE, detector.getPhase());
+    }
+
+    @Test
+    public void singleLowSample_isNotFreeFall() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        detector.onSample(0, 0.25f);
+        // A late sample back at 1 g does not stretch one low reading into a free fall
+        detector.onSample(200 * MS, G * G);
+        assertEquals(FallDetector.Phase.IDLE, detector.getPhase());
+    }
+
+    @Test
+    public void freeFallWithoutImpact_resetsAfterWindow() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        feed(detector, 0, 300, 0.5f);
+        feed(detector, 300, 500, G);
+        assertEquals(FallDetector.Phase.AWAIT_IMPACT, detector.getPhase());
+        feed(detector, 500, 1500, G);
+        assertEquals(FallDetector.Phase.IDLE, detector.getPhase());
+        assertTrue(falls.isEmpty());
+    }
+
+    @Test
+    public void movementAfterImpact_resetsAfterTimeout() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        feed(detector, 0, 20, 40f);
+        // Walking on with the phone, never still
+        for (long t = 20; t < 6000; t += 10) {
+            float m = (t / 10) % 2 == 0 ? 5f : 15f;
+            detector.onSample(t * MS, m * m);
+        }
+        assertEquals(FallDetector.Phase.IDLE, detector.getPhase());
+        assertTrue(falls.isEmpty());
+    }
+
+    @Test
+    public void reset_dropsCandidate() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        feed(detector, 0, 300, 0.5f);
+        assertEquals(FallDetector.Phase.FREE_FALL, detector.getPhase());
+        detector.reset();
+        assertFalse(detector.isCandidate());
+        assertEquals(-1, detector.getImpactNanos());
+        feed(detector, 300, 3000, G);
+        assertTrue(falls.isEmpty());
+    }
+
+    @Test
+    public void rotationDuringFall_corroborates() {
+        FallDetector detector = new FallDetector(new FallDetector.Config(), listener);
+        for (long t = 0; t < 4000; t += 10) {
+            float m = t < 300 ? 0.5f : t < 320 ? 40f : G;
+            float rotation = t < 320 ? 5f : 0.1f;
+            detector.onMotionContext(rotation, Float.NaN, Float.NaN);
+            detector.onSample(t * MS, m * m);
+        }
+        assertEquals(1, falls.size());
+        assertTrue(falls.get(0).corroborated);
+        assertEquals(5f, falls.get(0).peakRotationRate, 1e-6f);
+        assertTrue(Float.isNaN(falls.get(0).altitudeDrop));
+    }
+
+    /**
+     * Feeds samples of constant magnitude from {@code fromMs} up to {@code toMs}.
+     */
+    private static void feed(FallDetector detector, long fromMs, long toMs, float magnitude) {
+        for (long t = fromMs * MS; t < toMs * MS; t += PERIOD_NANOS) {
+            detector.onSample(t, magnitude * magnitude);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the sliding features against recomputing them over each window from scratch.
+ */
+public class FeatureExtractorTest {
+
+    private static final long MS = 1000000L;
+    private static final long WINDOW_NANOS = 1000 * MS;
+
+    @Test
+    public void slidingFeatures_matchRecomputedWindow() {
+        // Room for the whole window, which is trimmed by time only
+        check(new FeatureExtractor(WINDOW_NANOS, 512), 512, 3000);
+    }
+
+    @Test
+    public void fullRing_dropsOldestSamplesEarly() {
+        // About 100 samples per window but only room for 64, the ring wraps many times
+        check(new FeatureExtractor(WINDOW_NANOS, 64), 64, 3000);
+    }
+
+    @Test
+    public void reset_startsOverLikeNew() {
+        FeatureExtractor used = new FeatureExtractor(WINDOW_NANOS, 64);
+        feed(used, new Random(1), 0, 500);
+        used.reset();
+        assertEquals(0, used.size());
+        assertEquals(0, used.signalMagnitudeArea(), 0);
+        assertEquals(0, used.magnitudePeak(), 0);
+        assertEquals(0, used.jerk(), 0);
+        assertEquals(0, used.jerkPeak(), 0);
+        assertEquals(0, used.magnitudeVariance(), 0);
+
+        // Nothing from before the reset leaks into the window, the jerk or the tilt
+        FeatureExtractor fresh = new FeatureExtractor(WINDOW_NANOS, 64);
+        float[] expected = new float[FeatureExtractor.FEATURE_COUNT];
+        float[] actual = new float[FeatureExtractor.FEATURE_COUNT];
+        Random a = new Random(2);
+        Random b = new Random(2);
+        for (int i = 500; i < 800; i++) {
+            feed(fresh, a, i, 1);
+            feed(used, b, i, 1);
+            fresh.snapshot(expected);
+            used.snapshot(actual);
+            assertArrayEquals(expected, actual, 0);
+        }
+    }
+
+    @Test
+    public void tilt_followsTippingOver() {
+        FeatureExtractor features = new FeatureExtractor(WINDOW_NANOS, 512);
+        long t = 0;
+        // Upright for ten seconds, then on its side
+        for (; t < 10000 * MS; t += 10 * MS) {
+            features.onSample(t, 0, 9.81f, 0, 9.81f * 9.81f);
+        }
+        assertEquals(0, features.tiltDegrees(), 0.5f);
+        for (; t < 13000 * MS; t += 10 * MS) {
+            features.onSample(t, 9.81f, 0, 0, 9.81f * 9.81f);
+        }
+        assertEquals(tilt(3000 * MS, 10 * MS), features.tiltDegrees(), 0.5f);
+        assertTrue(features.tiltDegrees() > 75);
+    }
+
+    /**
+     * Feeds jittered samples and compares every feature with a brute-force pass over the
+     * samples the window should hold.
+     */
+    private static void check(FeatureExtractor features, int capacity, int count) {
+        Random random = new Random(3);
+        long[] t = new long[count];
+        float[][] v = new float[count][3];
+        float[] jerks = new float[count];
+        long now = 0;
+        for (int i = 0; i < count; i++) {
+            // 8 to 12 ms apart, with bursts of large values
+            now += (8 + random.nextInt(5)) * MS;
+            t[i] = now;
+            float scale = i % 200 < 20 ? 30 : 2;
+            v[i][0] = (float) random.nextGaussian() * scale;
+            v[i][1] = 9.81f + (float) random.nextGaussian() * scale;
+            v[i][2] = (float) random.nextGaussian() * scale;
+            features.onSample(t[i], v[i][0], v[i][1], v[i][2], magnitudeSq(v[i]));
+            if (i > 0) {
+                float dx = v[i][0] - v[i - 1][0];
+                float dy = v[i][1] - v[i - 1][1];
+                float dz = v[i][2] - v[i - 1][2];
+                jerks[i] = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / ((t[i] - t[i - 1]) * 1e-9f);
+            }
+
+            int first = Math.max(0, i - capacity + 1);
+            while (first < i && t[first] < t[i] - WINDOW_NANOS) {
+                first++;
+            }
+            double sumAbs = 0;
+            double sum = 0;
+            double sumSq = 0;
+            float peak = 0;
+            float jerkPeak = 0;
+            for (int j = first; j <= i; j++) {
+                float magnitude = (float) Math.sqrt(magnitudeSq(v[j]));
+                sumAbs += Math.abs(v[j][0]) + Math.abs(v[j][1]) + Math.abs(v[j][2]);
+                sum += magnitude;
+                sumSq += (double) magnitude * magnitude;
+                peak = Math.max(peak, magnitude);
+                jerkPeak = Math.max(jerkPeak, jerks[j]);
+            }
+            int n = i - first + 1;
+            double mean = sum / n;
+            String at = "sample " + i;
+            assertEquals(at, n, features.size());
+            assertEquals(at, sumAbs / n, features.signalMagnitudeArea(), 1e-3);
+            assertEquals(at, peak, features.magnitudePeak(), 0);
+            assertEquals(at, jerks[i], features.jerk(), 0);
+            assertEquals(at, jerkPeak, features.jerkPeak(), 0);
+            assertEquals(at, sumSq / n - mean * mean, features.magnitudeVariance(), 0.05);
+        }
+    }
+
+    /**
+     * @return tilt after lying on its side for {@code nanos}, from a reference that was
+     * upright, by the same two low-pass filters in double precision
+     */
+    private static float tilt(long nanos, long periodNanos) {
+        double dt = periodNanos * 1e-9;
+        double a = dt / (0.5 + dt);
+        double r = dt / (30 + dt);
+        double gx = 0;
+        double gy = 1;
+        double rx = 0;
+        double ry = 1;
+        for (long t = 0; t < nanos; t += periodNanos) {
+            gx += a * (1 - gx);
+            gy += a * (0 - gy);
+            rx += r * (gx - rx);
+            ry += r * (gy - ry);
+        }
+        double cos = (gx * rx + gy * ry) / Math.sqrt((gx * gx + gy * gy) * (rx * rx + ry * ry));
+        return (float) Math.toDegrees(Math.acos(cos));
+    }
+
+    /**
+     * Feeds {@code count} samples 10 ms apart, starting at sample {@code from}.
+     */
+    private static void feed(FeatureExtractor features, Random random, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            float x = (float) random.nextGaussian();
+            float y = 9.81f + (float) random.nextGaussian();
+            float z = (float) random.nextGaussian();
+            features.onSample(i * 10 * MS, x, y, z, x * x + y * y + z * z);
+        }
+    }
+
+    private static float magnitudeSq(float[] v) {
+        return v[0] * v[0] + v[1] * v[1] + v[2] * v[2];
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RunningStatsTest {
+
+    @Test
+    public void meanAndVariance_matchTwoPass() {
+        Random random = new Random(1);
+        // A large offset and small spread, where the one-pass sum of squares loses everything
+        double[] values = new double[100000];
+        RunningStats stats = new RunningStats();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1e6 + random.nextGaussian() * 0.01;
+            stats.add(values[i]);
+        }
+        double sum = 0;
+        for (double x : values) {
+            sum += x;
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for (double x : values) {
+            squares += (x - mean) * (x - mean);
+        }
+        double variance = squares / (values.length - 1);
+        assertEquals(values.length, stats.count());
+        assertEquals(mean, stats.mean(), 1e-6);
+        assertEquals(variance, stats.variance(), variance * 1e-6);
+        assertEquals(Math.sqrt(variance), stats.standardDeviation(), Math.sqrt(variance) * 1e-6);
+    }
+
+    @Test
+    public void fewerThanTwoValues_haveNoVariance() {
+        RunningStats stats = new RunningStats();
+        assertEquals(0, stats.variance(), 0);
+        stats.add(5);
+        assertEquals(5, stats.mean(), 0);
+        assertEquals(0, stats.variance(), 0);
+        stats.add(7);
+        assertEquals(2, stats.variance(), 1e-12);
+    }
+
+    @Test
+    public void reset_forgetsValues() {
+        RunningStats stats = new RunningStats();
+        stats.add(5);
+        stats.add(7);
+        stats.reset();
+        assertEquals(0, stats.count());
+        assertEquals(0, stats.mean(), 0);
+        assertEquals(0, stats.variance(), 0);
+    }
+
+    @Test
+    public void writeThenRead_continuesIdentically() throws IOException {
+        Random random = new Random(2);
+        RunningStats original = new RunningStats();
+        for (int i = 0; i < 1000; i++) {
+            original.add(random.nextGaussian());
+        }
+        RunningStats restored = new RunningStats();
+        restored.readFrom(read(write(original)));
+        for (int i = 0; i < 1000; i++) {
+            double x = random.nextGaussian();
+            original.add(x);
+            restored.add(x);
+        }
+        assertEquals(original.count(), restored.count());
+        assertEquals(original.mean(), restored.mean(), 0);
+        assertEquals(original.variance(), restored.variance(), 0);
+    }
+
+    @Test
+    public void corruptState_isRejected() throws IOException {
+        RunningStats original = new RunningStats();
+        original.add(1);
+        original.add(2);
+        byte[] state = write(original);
+        // Negative sum of squared deviations
+        ByteBuffer.wrap(state).putDouble(16, -1);
+        RunningStats restored = new RunningStats();
+        restored.add(7);
+        try {
+            restored.readFrom(read(state));
+            fail();
+        } catch (IOException e) {
+            // Left as it was
+            assertEquals(1, restored.count());
+            assertEquals(7, restored.mean(), 0);
+        }
+        state = write(original);
+        ByteBuffer.wrap(state).putDouble(8, Double.NaN);
+        try {
+            restored.readFrom(read(state));
+            fail();
+        } catch (IOException e) {
+            assertEquals(7, restored.mean(), 0);
+        }
+    }
+
+    private static byte[] write(RunningStats stats) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        stats.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream read(byte[] state) {
+        return new DataInputStream(new ByteArrayInputStream(state));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SampleRingTest {
+
+    private final List<Long> drained = new ArrayList<>();
+
+    private final SampleRing.Sink sink = new SampleRing.Sink() {
+        public void onSample(long timestampNanos, float x, float y, float z) {
+            assertEquals(timestampNanos, (long) x);
+            assertEquals(-timestampNanos, (long) y);
+            assertEquals(2 * timestampNanos, (long) z);
+            drained.add(timestampNanos);
+        }
+    };
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() {
+        assertEquals(1, new SampleRing(1).capacity());
+        assertEquals(8, new SampleRing(5).capacity());
+        assertEquals(8, new SampleRing(8).capacity());
+    }
+
+    @Test
+    public void offerOnFull_failsWithoutOverwriting() {
+        SampleRing ring = new SampleRing(4);
+        for (long t = 0; t < 4; t++) {
+            assertTrue(offer(ring, t));
+        }
+        assertFalse(offer(ring, 4));
+        assertEquals(4, ring.size());
+        assertEquals(4, ring.drain(sink, Integer.MAX_VALUE));
+        assertEquals(0L, (long) drained.get(0));
+        assertEquals(3L, (long) drained.get(3));
+        // Room again once the consumer has caught up
+        assertTrue(offer(ring, 4));
+    }
+
+    @Test
+    public void drain_passesBatchesInOrderAcrossWrap() {
+        SampleRing ring = new SampleRing(8);
+        long next = 0;
+        for (int round = 0; round < 5; round++) {
+            while (offer(ring, next)) {
+                next++;
+            }
+            assertEquals(3, ring.drain(sink, 3));
+            assertEquals(5, ring.size());
+            assertEquals(5, ring.drain(sink, 100));
+            assertEquals(0, ring.drain(sink, 100));
+        }
+        assertEquals(next, drained.size());
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(i, (long) drained.get(i));
+        }
+    }
+
+    private static boolean offer(SampleRing ring, long t) {
+        return ring.offer(t, t, -t, 2 * t);
+    }
+}
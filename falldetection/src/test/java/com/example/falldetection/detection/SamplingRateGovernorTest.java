@@ -0,0 +1,113 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the governor with sensor timestamps at 50 Hz.
+ */
+public class SamplingRateGovernorTest {
+
+    private static final long MS = 1000000L;
+    private static final long PERIOD_NANOS = 20 * MS;
+    private static final float ACTIVE = 0.5f;
+    private static final float IDLE = 0.05f;
+    private static final long COOLDOWN_NANOS = 5000 * MS;
+
+    private final SamplingRateGovernor governor = new SamplingRateGovernor(ACTIVE, IDLE, COOLDOWN_NANOS);
+
+    @Test
+    public void quietPhone_slowsOnlyAfterFullCooldown() {
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+        // The first quiet sample starts the cooldown
+        assertEquals(0, feed(0, 5000, 0.01f, false));
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+        assertTrue(governor.onSample(5000 * MS, 0.01f, false));
+        assertEquals(SamplingRateGovernor.Rate.SLOW, governor.getRate());
+        assertEquals(0, feed(5020, 20000, 0.01f, false));
+    }
+
+    @Test
+    public void motion_switchesToFastAtOnce() {
+        slowDown();
+        assertTrue(governor.onSample(10000 * MS, 0.6f, false));
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+        assertEquals(0, feed(10020, 12000, 2f, false));
+    }
+
+    @Test
+    public void candidate_switchesToFastEvenWhenStill() {
+        slowDown();
+        assertTrue(governor.onSample(10000 * MS, 0.01f, true));
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+        // The candidate ended, the cooldown starts over
+        assertEquals(0, feed(10020, 15000, 0.01f, false));
+        assertEquals(1, feed(15000, 15100, 0.01f, false));
+        assertEquals(SamplingRateGovernor.Rate.SLOW, governor.getRate());
+    }
+
+    @Test
+    public void pausesInWalking_doNotFlap() {
+        int changes = 0;
+        // Walking for a second, standing for three, over and over
+        for (long t = 0; t < 60000; t += 4000) {
+            changes += feed(t, t + 1000, 2f, false);
+            changes += feed(t + 1000, t + 4000, 0.01f, false);
+        }
+        assertEquals(0, changes);
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+    }
+
+    @Test
+    public void betweenLevels_neitherSpeedsUpNorCoolsDown() {
+        slowDown();
+        // Above idle but below active, stays slow
+        assertEquals(0, feed(10000, 20000, 0.2f, false));
+        assertEquals(SamplingRateGovernor.Rate.SLOW, governor.getRate());
+        governor.wake();
+        feed(20000, 24000, 0.01f, false);
+        // Interrupts the cooldown, which has to start again from the next quiet sample
+        feed(24000, 25000, 0.2f, false);
+        assertEquals(0, feed(25000, 29000, 0.01f, false));
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+    }
+
+    @Test
+    public void wake_switchesToFastAndRestartsCooldown() {
+        slowDown();
+        assertTrue(governor.wake());
+        assertEquals(SamplingRateGovernor.Rate.FAST, governor.getRate());
+        assertFalse(governor.wake());
+        assertEquals(0, feed(10000, 15000, 0.01f, false));
+        assertEquals(1, feed(15000, 15100, 0.01f, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idleAboveActive_isRejected() {
+        new SamplingRateGovernor(IDLE, ACTIVE, COOLDOWN_NANOS);
+    }
+
+    /**
+     * Feeds quiet samples up to 10000 ms, which leaves the governor slow.
+     */
+    private void slowDown() {
+        assertEquals(1, feed(0, 10000, 0.01f, false));
+        assertEquals(SamplingRateGovernor.Rate.SLOW, governor.getRate());
+    }
+
+    /**
+     * Feeds samples from {@code fromMs} up to {@code toMs}.
+     *
+     * @return how many times the rate changed
+     */
+    private int feed(long fromMs, long toMs, float variance, boolean candidate) {
+        int changes = 0;
+        for (long t = fromMs * MS; t < toMs * MS; t += PERIOD_NANOS) {
+            if (governor.onSample(t, variance, candidate)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SensorFusionTest {
+
+    private static final long MS = 1000000L;
+    private static final long LATENCY_NANOS = 1100 * MS;
+    private static final long PERIOD_NANOS = 2500000L; // 400 Hz
+
+    private int frames;
+    private int withRotation;
+    private float lastRotation;
+
+    private final FusedFrame.Listener listener = new FusedFrame.Listener() {
+        public void onFrame(FusedFrame frame) {
+            frames++;
+            if (!Float.isNaN(frame.rotationRate)) {
+                withRotation++;
+                // The gyroscope below turns at 1 rad/s per second of trace
+                assertEquals(frame.timestampNanos * 1e-9f, frame.rotationRate, 1e-3f);
+                lastRotation = frame.rotationRate;
+            }
+        }
+    };
+
+    @Test
+    public void ringHoldsWholeBatch() {
+        assertEquals(512, SensorFusion.ringSizeFor(LATENCY_NANOS, PERIOD_NANOS));
+        assertEquals(8, SensorFusion.ringSizeFor(100 * MS, 20 * MS));
+    }
+
+    @Test
+    public void batchedAccelerometer_waitsForGyroscopeBatch() {
+        SensorFusion fusion = new SensorFusion(LATENCY_NANOS, PERIOD_NANOS, true, listener);
+        int n = (int) (LATENCY_NANOS / PERIOD_NANOS);
+        // The hub delivers a whole accelerometer batch before the gyroscope one
+        for (int i = 1; i <= n; i++) {
+            fusion.onAccelerometer(i * PERIOD_NANOS, 0, 0, FallDetector.GRAVITY);
+        }
+        assertEquals(0, frames);
+        for (int i = 1; i <= n; i++) {
+            long t = i * PERIOD_NANOS;
+            fusion.onGyroscope(t, t * 1e-9f, 0, 0);
+        }
+        assertEquals(n, frames);
+        assertEquals(n, withRotation);
+        assertEquals(n * PERIOD_NANOS * 1e-9f, lastRotation, 1e-3f);
+    }
+
+    @Test
+    public void batchedDelivery_givesSameFallsAsUnbatched() {
+        List<FallEvent> unbatched = replay(1);
+        List<FallEvent> batched = replay(100);
+        assertEquals(1, unbatched.size());
+        assertTrue(unbatched.get(0).corroborated);
+        assertEquals(unbatched.size(), batched.size());
+        for (int i = 0; i < unbatched.size(); i++) {
+            FallEvent a = unbatched.get(i);
+            FallEvent b = batched.get(i);
+            assertEquals(a.freeFallStartNanos, b.freeFallStartNanos);
+            assertEquals(a.freeFallEndNanos, b.freeFallEndNanos);
+            assertEquals(a.impactNanos, b.impactNanos);
+            assertEquals(a.peakMagnitude, b.peakMagnitude, 0f);
+            assertEquals(a.stillnessStartNanos, b.stillnessStartNanos);
+            assertEquals(a.confirmedNanos, b.confirmedNanos);
+            assertEquals(a.peakRotationRate, b.peakRotationRate, 0f);
+            assertEquals(a.corroborated, b.corroborated);
+        }
+    }
+
+    /**
+     * Replays a 100 Hz fall with a spin through fusion and the pipeline, delivering each
+     * sensor in batches of {@code batch} samples the way the sensor hub does.
+     */
+    private static List<FallEvent> replay(int batch) {
+        final List<FallEvent> falls = new ArrayList<>();
+        FallDetectionPipeline pipeline = new FallDetectionPipeline(new FallDetector.Config(),
+                new FallDetector.Listener() {
+                    public void onFall(FallEvent event) {
+                        falls.add(event);
+                    }
+                });
+        long period = 10 * MS;
+        SensorFusion fusion = new SensorFusion(100 * MS + batch * period, period, true, pipeline);
+        int samples = 600;
+        for (int from = 0; from < samples; from += batch) {
+            for (int i = from; i < from + batch; i++) {
+                float z = i < 100 ? FallDetector.GRAVITY : i < 130 ? 0.5f : i < 132 ? 40f : FallDetector.GRAVITY;
+                fusion.onAccelerometer(i * period, 0, 0, z);
+            }
+            for (int i = from; i < from + batch; i++) {
+                fusion.onGyroscope(i * period, i < 132 ? 5f : 0, 0, 0);
+            }
+        }
+        return falls;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorJitterMonitorTest {
+
+    private static final long MS = 1000000L;
+    private static final long PERIOD_NANOS = 2500000L; // 400 Hz
+
+    @Test
+    public void quantiles_resolveJitterWithinOnePowerOfTwo() {
+        SensorJitterMonitor monitor = new SensorJitterMonitor(1000 * MS);
+        monitor.setRequestedPeriodNanos(PERIOD_NANOS);
+        long t = 0;
+        // Half the intervals on time, half 40% late, all between 2 and 4 ms
+        for (int i = 0; i < 1000; i++) {
+            t += i % 2 == 0 ? PERIOD_NANOS : PERIOD_NANOS * 14 / 10;
+            monitor.onSample(t);
+        }
+        assertEquals(PERIOD_NANOS, monitor.getIntervalQuantileNanos(0.25), PERIOD_NANOS * 0.07);
+        assertEquals(PERIOD_NANOS * 1.4, monitor.getIntervalQuantileNanos(0.75), PERIOD_NANOS * 0.1);
+        assertEquals(0, monitor.getGapCount());
+    }
+
+    @Test
+    public void longInterval_countsAsGap() {
+        SensorJitterMonitor monitor = new SensorJitterMonitor(1000 * MS);
+        monitor.setRequestedPeriodNanos(PERIOD_NANOS);
+        monitor.onSample(0);
+        monitor.onSample(PERIOD_NANOS);
+        monitor.onSample(6 * PERIOD_NANOS);
+        assertEquals(1, monitor.getGapCount());
+        assertEquals(4, monitor.getDroppedCount());
+        assertEquals(5 * PERIOD_NANOS, monitor.getIntervalHistogram().max());
+    }
+
+    @Test
+    public void reset_clearsHistogram() {
+        SensorJitterMonitor monitor = new SensorJitterMonitor(1000 * MS);
+        monitor.onSample(0);
+        monitor.onSample(PERIOD_NANOS);
+        monitor.reset();
+        assertEquals(0, monitor.getIntervalQuantileNanos(0.5));
+        assertEquals(0, monitor.getIntervalHistogram().count());
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.falldetection.detection;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ShadowEvaluatorTest {
+
+    private static final long MS = 1000000L;
+    private static final float G = FallDetector.GRAVITY;
+
+    private final List<String> falls = new ArrayList<>();
+    private final List<String> dropped = new ArrayList<>();
+    private final List<Runnable> pending = new ArrayList<>();
+
+    private final ShadowEvaluator.Listener listener = new ShadowEvaluator.Listener() {
+        public void onShadowFall(String name, FallEvent event) {
+            falls.add(name);
+        }
+
+        public void onShadowDropped(String name) {
+            dropped.add(name);
+        }
+    };
+
+    // Runs tasks only when the test says so, like a busy background thread
+    private final Executor stalled = new Executor() {
+        public void execute(Runnable task) {
+            pending.add(task);
+        }
+    };
+
+    private final Executor direct = new Executor() {
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    @Test
+    public void shadows_seeLiveFall() {
+        ShadowEvaluator shadows = new ShadowEvaluator(direct, listener, 256);
+        shadows.add("default", new FallDetector.Config());
+        FallDetector.Config deaf = new FallDetector.Config();
+        deaf.impactThreshold = 100 * G;
+        shadows.add("deaf", deaf);
+        // 100 Hz: free fall, impact, then lying still
+        for (long t = 0; t < 4000; t += 10) {
+            float z = t < 1000 ? G : t < 1300 ? 0.5f : t < 1320 ? 40f : G;
+            shadows.onSample(t * MS, 0, 0, z);
+        }
+        shadows.flush();
+        assertEquals(1, falls.size());
+        assertEquals("default", falls.get(0));
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void laggingShadow_isDroppedOnce() {
+        ShadowEvaluator shadows = new ShadowEvaluator(stalled, listener, 128);
+        shadows.add("slow", new FallDetector.Config());
+        for (int i = 0; i < 128; i++) {
+            shadows.onSample(i * 10 * MS, 0, 0, G);
+        }
+        assertTrue(dropped.isEmpty());
+        // Batches were scheduled, but only one task per shadow at a time
+        assertEquals(1, pending.size());
+        shadows.onSample(1280 * MS, 0, 0, G);
+        shadows.onSample(1290 * MS, 0, 0, G);
+        assertEquals(1, dropped.size());
+        assertEquals("slow", dropped.get(0));
+        assertTrue(shadows.describe(), shadows.describe().contains("slow: 0 falls, dropped"));
+        // A dropped shadow is not scheduled again
+        shadows.flush();
+        assertEquals(1, pending.size());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.falldetection.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class StageLatencyTest {
+
+    private static final long MS = 1000000L;
+
+    private final StageLatency latency = new StageLatency("impact", "confirmed", "decided", "sent");
+
+    @Test
+    public void eachStage_recordsSincePreviousAndStart() {
+        assertTrue(latency.mark(0, 1000 * MS));
+        assertTrue(latency.mark(1, 1010 * MS));
+        assertTrue(latency.mark(2, 1030 * MS));
+        assertTrue(latency.mark(3, 1070 * MS));
+        assertEquals(10 * MS, latency.sincePrevious(1).max());
+        assertEquals(20 * MS, latency.sincePrevious(2).max());
+        assertEquals(40 * MS, latency.sincePrevious(3).max());
+        assertEquals(30 * MS, latency.sinceStart(2).max());
+        assertEquals(70 * MS, latency.sinceStart(3).max());
+    }
+
+    @Test
+    public void repeatedMark_isIgnored() {
+        latency.mark(0, 0);
+        assertTrue(latency.mark(1, 10 * MS));
+        assertFalse(latency.mark(1, 50 * MS));
+        assertEquals(1, latency.sincePrevious(1).count());
+        assertEquals(10 * MS, latency.sincePrevious(1).max());
+        // The next stage still measures from the first mark
+        latency.mark(2, 60 * MS);
+        assertEquals(50 * MS, latency.sincePrevious(2).max());
+    }
+
+    @Test
+    public void skippedStage_measuresFromTheLatestReached() {
+        latency.mark(0, 0);
+        latency.mark(1, 10 * MS);
+        assertTrue(latency.mark(3, 100 * MS));
+        assertEquals(90 * MS, latency.sincePrevious(3).max());
+        assertEquals(100 * MS, latency.sinceStart(3).max());
+        assertEquals(0, latency.sincePrevious(2).count());
+        // Reached late, after a later stage, it still measures from the stage before it
+        assertTrue(latency.mark(2, 120 * MS));
+        assertEquals(110 * MS, latency.sincePrevious(2).max());
+    }
+
+    @Test
+    public void markWithoutStart_isRefused() {
+        assertFalse(latency.mark(1, 10 * MS));
+        assertEquals(0, latency.sincePrevious(1).count());
+    }
+
+    @Test
+    public void newStart_beginsAFreshRun() {
+        latency.mark(0, 0);
+        latency.mark(1, 10 * MS);
+        latency.mark(0, 1000 * MS);
+        assertTrue(latency.mark(1, 1030 * MS));
+        assertEquals(2, latency.sincePrevious(1).count());
+        assertEquals(30 * MS, latency.sincePrevious(1).max());
+    }
+
+    @Test
+    public void writeTo_listsEveryTransition() {
+        latency.mark(0, 0);
+        latency.mark(1, 10 * MS);
+        StringWriter out = new StringWriter();
+        latency.writeTo(out);
+        String[] lines = out.toString().split("\\r?\\n");
+        assertEquals(1 + 2 * 3, lines.length);
+        assertEquals("stage,measured_from,count,p50_ms,p90_ms,p99_ms,max_ms", lines[0]);
+        assertEquals("confirmed,previous,1,10.000,10.000,10.000,10.000", lines[1]);
+        assertEquals("confirmed,impact,1,10.000,10.000,10.000,10.000", lines[2]);
+        assertEquals("decided,previous,0,0.000,0.000,0.000,0.000", lines[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void singleStage_isRejected() {
+        new StageLatency("only");
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.falldetection.recording;
+
+import com.example.falldetection.replay.BinaryTraceReader;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BlackBoxRecorderTest {
+
+    private final List<Runnable> pending = new ArrayList<>();
+    private final List<Integer> saved = new ArrayList<>();
+
+    // Runs tasks only when the test says so, like a busy writer thread
+    private final Executor later = new Executor() {
+        public void execute(Runnable task) {
+            pending.add(task);
+        }
+    };
+
+    private final BlackBoxRecorder.FreezeListener listener = new BlackBoxRecorder.FreezeListener() {
+        public void onFrozen(File out, int samples) {
+            saved.add(samples);
+        }
+
+        public void onFreezeFailed(File out, IOException e) {
+            fail(e.toString());
+        }
+    };
+
+    @Test
+    public void freeze_writesWindowOnly() throws IOException {
+        File path = File.createTempFile("black_box", ".bin");
+        File out = File.createTempFile("incident", ".bin");
+        BlackBoxRecorder recorder = new BlackBoxRecorder(path, 16);
+        try {
+            record(recorder, 0, 40);
+            assertEquals(16, recorder.size());
+            assertEquals(6, recorder.freeze(30, 35, out));
+            assertArrayEquals(new long[]{30, 31, 32, 33, 34, 35}, read(out));
+        } finally {
+            recorder.close();
+            path.delete();
+            out.delete();
+        }
+    }
+
+    @Test
+    public void freezeInBackground_copiesBeforeReturning() throws IOException {
+        File path = File.createTempFile("black_box", ".bin");
+        File out = File.createTempFile("incident", ".bin");
+        BlackBoxRecorder recorder = new BlackBoxRecorder(path, 16);
+        try {
+            record(recorder, 0, 20);
+            assertTrue(recorder.freezeInBackground(10, 12, out, later, listener));
+            // Only the copy happened, the window is then overwritten before the file is written
+            assertEquals(1, pending.size());
+            assertEquals(0, out.length());
+            record(recorder, 20, 40);
+            pending.get(0).run();
+            assertEquals(1, saved.size());
+            assertEquals(3, (int) saved.get(0));
+            assertArrayEquals(new long[]{10, 11, 12}, read(out));
+        } finally {
+            recorder.close();
+            path.delete();
+            out.delete();
+        }
+    }
+
+    @Test
+    public void freezeWhileWriting_isRefused() throws IOException {
+        File path = File.createTempFile("black_box", ".bin");
+        File out = File.createTempFile("incident", ".bin");
+        BlackBoxRecorder recorder = new BlackBoxRecorder(path, 16);
+        try {
+            record(recorder, 0, 20);
+            assertTrue(recorder.freezeInBackground(10, 12, out, later, listener));
+            assertFalse(recorder.freezeInBackground(13, 15, out, later, listener));
+            assertEquals(1, pending.size());
+            pending.get(0).run();
+            assertTrue(recorder.freezeInBackground(13, 15, out, later, listener));
+        } finally {
+            recorder.close();
+            path.delete();
+            out.delete();
+        }
+    }
+
+    @Test
+    public void rejectedWrite_isReportedAndReleased() throws IOException {
+        File path = File.createTempFile("black_box", ".bin");
+        File out = File.createTempFile("incident", ".bin");
+        BlackBoxRecorder recorder = new BlackBoxRecorder(path, 16);
+        final List<IOException> failures = new ArrayList<>();
+        try {
+            record(recorder, 0, 20);
+            assertTrue(recorder.freezeInBackground(10, 12, out, new Executor() {
+                public void execute(Runnable task) {
+                    throw new RejectedExecutionException("shut down");
+                }
+            }, new BlackBoxRecorder.FreezeListener() {
+                public void onFrozen(File out, int samples) {
+                    fail("nothing was written");
+                }
+
+                public void onFreezeFailed(File out, IOException e) {
+                    failures.add(e);
+                }
+            }));
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(0).getCause() instanceof RejectedExecutionException);
+            // The next incident is not refused as still writing
+            assertTrue(recorder.freezeInBackground(13, 15, out, later, listener));
+        } finally {
+            recorder.close();
+            path.delete();
+            out.delete();
+        }
+    }
+
+    /**
+     * Records one sample per nanosecond from {@code from} up to {@code to}.
+     */
+    private static void record(BlackBoxRecorder recorder, long from, long to) {
+        for (long t = from; t < to; t++) {
+            recorder.record(t, t, -t, 1);
+        }
+    }
+
+    private static long[] read(File file) throws IOException {
+        BinaryTraceReader reader = new BinaryTraceReader(new FileInputStream(file));
+        try {
+            long[] t = new long[64];
+            float[] x = new float[64];
+            float[] y = new float[64];
+            float[] z = new float[64];
+            int n = reader.read(t, x, y, z);
+            for (int i = 0; i < n; i++) {
+                assertEquals(t[i], (long) x[i]);
+                assertEquals(-t[i], (long) y[i]);
+            }
+            long[] timestamps = new long[n];
+            System.arraycopy(t, 0, timestamps, 0, n);
+            return timestamps;
+        } finally {
+            reader.close();
+        }
+    }
+}
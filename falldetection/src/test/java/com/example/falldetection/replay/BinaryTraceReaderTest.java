@@ -0,0 +1,84 @@
+package com.example.falldetection.replay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BinaryTraceReaderTest {
+
+    private static final int SAMPLES = 10000;
+
+    @Test
+    public void writeThenRead_givesSameSamples() throws IOException {
+        byte[] trace = write(SAMPLES);
+        assertEquals(8 + SAMPLES * BinaryTraceReader.RECORD_BYTES, trace.length);
+        assertTrue(BinaryTraceReader.hasMagic(new ByteArrayInputStream(trace)));
+
+        BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(trace));
+        // Smaller than the reader's buffer, so reads straddle its refills
+        long[] t = new long[1000];
+        float[] x = new float[1000];
+        float[] y = new float[1000];
+        float[] z = new float[1000];
+        int total = 0;
+        int n;
+        while ((n = reader.read(t, x, y, z)) > 0) {
+            for (int i = 0; i < n; i++, total++) {
+                assertEquals(timestamp(total), t[i]);
+                assertEquals(total * 0.5f, x[i], 0);
+                assertEquals(-total, y[i], 0);
+                assertEquals(Float.MIN_VALUE, z[i], 0);
+            }
+        }
+        reader.close();
+        assertEquals(SAMPLES, total);
+    }
+
+    @Test
+    public void truncatedLastRecord_isDropped() throws IOException {
+        byte[] trace = write(3);
+        BinaryTraceReader reader = new BinaryTraceReader(
+                new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 1)));
+        assertEquals(2, reader.read(new long[8], new float[8], new float[8], new float[8]));
+    }
+
+    @Test
+    public void csv_hasNoMagic() throws IOException {
+        assertFalse(BinaryTraceReader.hasMagic(new ByteArrayInputStream("100,0,0,1\n".getBytes("US-ASCII"))));
+        assertFalse(BinaryTraceReader.hasMagic(new ByteArrayInputStream(new byte[2])));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongMagic_fails() throws IOException {
+        new BinaryTraceReader(new ByteArrayInputStream("100,0,0,1\n".getBytes("US-ASCII")));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownVersion_fails() throws IOException {
+        byte[] trace = write(1);
+        trace[7] = 2;
+        new BinaryTraceReader(new ByteArrayInputStream(trace));
+    }
+
+    private static byte[] write(int samples) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryTraceWriter writer = new BinaryTraceWriter(bytes);
+        for (int i = 0; i < samples; i++) {
+            writer.write(timestamp(i), i * 0.5f, -i, Float.MIN_VALUE);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Large enough to need all eight bytes.
+     */
+    private static long timestamp(int i) {
+        return 5L * 1000 * 1000000000L + i * 2500000L;
+    }
+}
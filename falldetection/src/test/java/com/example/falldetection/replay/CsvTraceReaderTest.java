@@ -0,0 +1,99 @@
+package com.example.falldetection.replay;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class CsvTraceReaderTest {
+
+    private final long[] t = new long[8];
+    private final float[] x = new float[8];
+    private final float[] y = new float[8];
+    private final float[] z = new float[8];
+
+    @Test
+    public void samples_areParsed() throws IOException {
+        CsvTraceReader reader = reader("100,1.5,-2,9.81\n200, 0 , 0.25 ,-9.81\n");
+        assertEquals(2, reader.read(t, x, y, z));
+        assertEquals(100, t[0]);
+        assertEquals(1.5f, x[0], 0);
+        assertEquals(-2f, y[0], 0);
+        assertEquals(9.81f, z[0], 0);
+        assertEquals(200, t[1]);
+        assertEquals(0.25f, y[1], 0);
+        assertEquals(-9.81f, z[1], 0);
+        assertEquals(0, reader.read(t, x, y, z));
+    }
+
+    @Test
+    public void commentsAndBlankLines_areSkipped() throws IOException {
+        CsvTraceReader reader = reader("# recorded on a Pixel\n\n100,0,0,1\n   \n# halfway\n200,0,0,2\n");
+        assertEquals(2, reader.read(t, x, y, z));
+        assertArrayEquals(new long[]{100, 200}, copy(t, 2));
+    }
+
+    @Test
+    public void headerAfterComments_isSkipped() throws IOException {
+        CsvTraceReader reader = reader("# recorded on a Pixel\n\ntimestamp_ns,x,y,z\n100,0,0,1\n");
+        assertEquals(1, reader.read(t, x, y, z));
+        assertEquals(100, t[0]);
+    }
+
+    @Test
+    public void negativeFirstTimestamp_isNotAHeader() throws IOException {
+        CsvTraceReader reader = reader("-100,0,0,1\n");
+        assertEquals(1, reader.read(t, x, y, z));
+        assertEquals(-100, t[0]);
+    }
+
+    @Test
+    public void reads_stopAtArrayLength() throws IOException {
+        StringBuilder csv = new StringBuilder("timestamp_ns,x,y,z\n");
+        for (int i = 0; i < 10; i++) {
+            csv.append(i).append(",0,0,1\n");
+        }
+        CsvTraceReader reader = reader(csv.toString());
+        assertEquals(8, reader.read(t, x, y, z));
+        assertEquals(2, reader.read(t, x, y, z));
+        assertArrayEquals(new long[]{8, 9}, copy(t, 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void headerAfterSamples_fails() throws IOException {
+        reader("100,0,0,1\ntimestamp_ns,x,y,z\n").read(t, x, y, z);
+    }
+
+    @Test(expected = IOException.class)
+    public void missingField_fails() throws IOException {
+        reader("100,0,1\n").read(t, x, y, z);
+    }
+
+    @Test(expected = IOException.class)
+    public void badNumber_fails() throws IOException {
+        reader("100,0,zero,1\n").read(t, x, y, z);
+    }
+
+    @Test
+    public void error_namesTheLine() {
+        try {
+            reader("# comment\n100,0,0,1\n200,0,0\n").read(t, x, y, z);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3:"));
+        }
+    }
+
+    private static CsvTraceReader reader(String csv) {
+        return new CsvTraceReader(new BufferedReader(new StringReader(csv)));
+    }
+
+    private static long[] copy(long[] values, int n) {
+        long[] copy = new long[n];
+        System.arraycopy(values, 0, copy, 0, n);
+        return copy;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.falldetection.replay;
+
+import com.example.falldetection.detection.FallDetector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sweeps a small labelled corpus of synthetic traces, sampled at 100 Hz for four seconds:
+ * a hard fall, a softer fall and a bump without free fall that nobody labelled, plus a
+ * trace at rest.
+ */
+public class ParameterSweepTest {
+
+    private static final long MS = 1000000L;
+    private static final float G = FallDetector.GRAVITY;
+    private static final long MATCH_TOLERANCE_NANOS = 2000 * MS;
+
+    private File corpus;
+    private TraceLabels labels;
+
+    @Before
+    public void writeCorpus() throws IOException {
+        corpus = Files.createTempDirectory("corpus").toFile();
+        writeTrace("hard.csv", 1000, 1300, 40f);
+        writeTrace("soft.csv", 1000, 1300, 28f);
+        writeTrace("bump.csv", 1000, 1000, 30f);
+        writeTrace("rest.csv", 1000, 1000, G);
+        File labelFile = new File(corpus, "labels.csv");
+        PrintWriter writer = new PrintWriter(new FileWriter(labelFile));
+        writer.println("# Synthetic corpus");
+        writer.println("trace,fall_timestamp_ns");
+        writer.println("hard.csv," + 1300 * MS);
+        writer.println("soft.csv," + 1300 * MS);
+        writer.println("bump.csv,");
+        writer.println("rest.csv,");
+        writer.close();
+        labels = TraceLabels.read(labelFile);
+    }
+
+    @After
+    public void deleteCorpus() {
+        for (File file : corpus.listFiles()) {
+            file.delete();
+        }
+        corpus.delete();
+    }
+
+    @Test
+    public void labels_areReadPastCommentAndHeader() {
+        assertEquals(4, labels.traces().size());
+        assertEquals(2, labels.fallCount());
+        assertArrayEquals(new long[]{1300 * MS}, labels.fallsIn(new File(corpus, "hard.csv").getAbsoluteFile()));
+        assertEquals(0, labels.fallsIn(new File(corpus, "rest.csv").getAbsoluteFile()).length);
+    }
+
+    @Test
+    public void eachCell_isTalliedAgainstLabels() throws IOException {
+        FallDetector.Config[] configs = {
+                config(2.5f * G, 1500),
+                config(2.5f * G, 1000),
+                config(35f, 1500),
+        };
+        SweepTally[] tallies = run(configs, 1);
+        assertEquals(3, tallies.length);
+
+        // Both falls and the bump
+        assertTally(tallies[0], 2, 1, 0);
+        assertEquals(2 / 3.0, tallies[0].precision(), 1e-9);
+        assertEquals(1, tallies[0].recall(), 0);
+        assertEquals(3600 / 15.96, tallies[0].falseAlarmsPerHour(), 1e-6);
+        // Confirmed once still for the stillness period after the 20 ms impact
+        assertEquals(1520, tallies[0].meanLatencyMillis(), 1e-6);
+        assertEquals(1520, tallies[0].latencyQuantileMillis(0.95), 1e-6);
+
+        assertTally(tallies[1], 2, 1, 0);
+        assertEquals(1020, tallies[1].meanLatencyMillis(), 1e-6);
+
+        // Only the hard fall clears the raised impact threshold
+        assertTally(tallies[2], 1, 0, 1);
+        assertEquals(1, tallies[2].precision(), 0);
+        assertEquals(0.5, tallies[2].recall(), 0);
+        assertEquals(0, tallies[2].falseAlarmsPerHour(), 0);
+    }
+
+    @Test
+    public void parallelSweep_matchesSequential() throws IOException {
+        // More configurations than one task takes, so the grid is split as well
+        FallDetector.Config[] configs = new FallDetector.Config[40];
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = config((2f + i * 0.05f) * G, 1000 + i * 25);
+        }
+        SweepTally[] sequential = run(configs, 1);
+        SweepTally[] parallel = run(configs, 4);
+        assertEquals(configs.length, parallel.length);
+        for (int i = 0; i < configs.length; i++) {
+            String cell = "configuration " + i;
+            assertEquals(cell, sequential[i].truePositives, parallel[i].truePositives);
+            assertEquals(cell, sequential[i].falsePositives, parallel[i].falsePositives);
+            assertEquals(cell, sequential[i].falseNegatives, parallel[i].falseNegatives);
+            assertEquals(cell, sequential[i].recordedNanos, parallel[i].recordedNanos);
+            assertEquals(cell, sequential[i].meanLatencyMillis(), parallel[i].meanLatencyMillis(), 0);
+            assertEquals(cell, sequential[i].latencyQuantileMillis(0.95),
+                    parallel[i].latencyQuantileMillis(0.95), 0);
+            // The slices come back in grid order
+            SweepTally alone = run(new FallDetector.Config[]{configs[i]}, 1)[0];
+            assertEquals(cell, alone.truePositives, parallel[i].truePositives);
+            assertEquals(cell, alone.meanLatencyMillis(), parallel[i].meanLatencyMillis(), 0);
+        }
+    }
+
+    private SweepTally[] run(FallDetector.Config[] configs, int threads) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return new ParameterSweep(labels, configs, MATCH_TOLERANCE_NANOS).run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertTally(SweepTally tally, int truePositives, int falsePositives,
+                                    int falseNegatives) {
+        assertEquals(truePositives, tally.truePositives);
+        assertEquals(falsePositives, tally.falsePositives);
+        assertEquals(falseNegatives, tally.falseNegatives);
+        assertEquals(4 * 3990 * MS, tally.recordedNanos);
+    }
+
+    private static FallDetector.Config config(float impactThreshold, long stillnessMs) {
+        FallDetector.Config config = new FallDetector.Config();
+        config.impactThreshold = impactThreshold;
+        config.stillnessNanos = stillnessMs * MS;
+        return config;
+    }
+
+    /**
+     * Writes a trace at rest except for free fall from {@code fallMs} to {@code impactMs}
+     * and a 20 ms impact of {@code impact} after it.
+     */
+    private void writeTrace(String name, long fallMs, long impactMs, float impact) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(new File(corpus, name)));
+        try {
+            for (long t = 0; t < 4000; t += 10) {
+                float z = t < fallMs ? G : t < impactMs ? 0.5f : t < impactMs + 20 ? impact : G;
+                writer.println(t * MS + ",0,0," + z);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.falldetection.replay;
+
+import com.example.falldetection.detection.FallDetector;
+import com.example.falldetection.detection.FallEvent;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a synthetic fall, sampled at 100 Hz: one second at rest, 300 ms of free fall,
+ * a 20 ms impact, then lying still.
+ */
+public class ReplayEngineTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void syntheticFall_isFoundAtItsTimestamps() throws IOException {
+        File csv = File.createTempFile("fall", ".csv");
+        try {
+            writeFall(csv);
+            ReplayResult result = new ReplayEngine(new FallDetector.Config()).replay(csv);
+            assertFall(result);
+        } finally {
+            csv.delete();
+        }
+    }
+
+    @Test
+    public void binaryTrace_replaysLikeCsv() throws IOException {
+        File csv = File.createTempFile("fall", ".csv");
+        File binary = File.createTempFile("fall", ".bin");
+        try {
+            writeFall(csv);
+            assertEquals(400, ReplayEngine.convert(csv, binary));
+            assertFall(new ReplayEngine(new FallDetector.Config()).replay(binary));
+        } finally {
+            csv.delete();
+            binary.delete();
+        }
+    }
+
+    @Test
+    public void restingTrace_hasNoFalls() throws IOException {
+        File csv = File.createTempFile("rest", ".csv");
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(csv));
+            for (long t = 0; t < 4000; t += 10) {
+                writer.println(t * MS + ",0,0," + FallDetector.GRAVITY);
+            }
+            writer.close();
+            ReplayResult result = new ReplayEngine(new FallDetector.Config()).replay(csv);
+            assertEquals(400, result.samples);
+            assertTrue(result.falls.isEmpty());
+        } finally {
+            csv.delete();
+        }
+    }
+
+    private static void assertFall(ReplayResult result) {
+        assertEquals(400, result.samples);
+        assertEquals(0, result.firstTimestampNanos);
+        assertEquals(3990 * MS, result.lastTimestampNanos);
+        assertEquals(1, result.falls.size());
+        FallEvent fall = result.falls.get(0);
+        assertEquals(1000 * MS, fall.freeFallStartNanos);
+        assertEquals(1300 * MS, fall.impactNanos);
+        assertEquals(1320 * MS, fall.stillnessStartNanos);
+        assertEquals(2820 * MS, fall.confirmedNanos);
+    }
+
+    private static void writeFall(File csv) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(csv));
+        try {
+            writer.println("timestamp_ns,x,y,z");
+            for (long t = 0; t < 4000; t += 10) {
+                float z = t < 1000 ? FallDetector.GRAVITY : t < 1300 ? 0.5f : t < 1320 ? 40f : FallDetector.GRAVITY;
+                writer.println(t * MS + ",0,0," + z);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
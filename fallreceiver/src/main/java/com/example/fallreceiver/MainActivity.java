@@ -2,6 +2,8 @@ package com.example.fallreceiver;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.fallreceiver.metrics.StageLatency;
+
 import android.Manifest;
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -22,6 +24,7 @@ import android.os.CountDownTimer;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.provider.Telephony;
 import android.telephony.SmsManager;
 import android.telephony.SmsMessage;
@@ -100,6 +103,16 @@ public class MainActivity extends AppCompatActivity {
     String address = null;
     SmsListener listener;
 
+    // Alert latency per stage on this phone, from the Bluetooth read to the SMS
+    final int STAGE_READ = 0;
+    final int STAGE_HANDLED = 1;
+    final int STAGE_TIMER_STARTED = 2;
+    final int STAGE_FIRST_SOUND = 3;
+    final int STAGE_SMS_SENT = 4;
+    private final StageLatency alertLatency =
+            new StageLatency("read", "handled", "timer_started", "first_sound", "sms_sent");
+    final String LATENCY_FILENAME = "alert_latency.csv";
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -254,6 +267,16 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        try {
+            alertLatency.dump(new File(getFilesDir(), LATENCY_FILENAME));
+        } catch (IOException e) {
+            Log.e("Exception", "Latency dump failed: " + e.toString());
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -320,6 +343,13 @@ public class MainActivity extends AppCompatActivity {
                     if (readMessage.contains("mute")) {
                         handleBluetoothMute();
                     } else if (readMessage.contains("alert")) {
+                        if (!(contactRunning | emergencyRunning)) {
+                            // The message waited in the queue since the read thread posted it
+                            long now = SystemClock.elapsedRealtimeNanos();
+                            long queued = (SystemClock.uptimeMillis() - msg.getWhen()) * 1000000L;
+                            alertLatency.mark(STAGE_READ, now - queued);
+                            alertLatency.mark(STAGE_HANDLED, now);
+                        }
                         handleBluetoothDetection();
                     }
                     pairStatus.setText(readMessage);
@@ -463,6 +493,7 @@ public class MainActivity extends AppCompatActivity {
         if (!(contactRunning | emergencyRunning)) {
             contactRunning = true;
             contactTimer.start();
+            alertLatency.mark(STAGE_TIMER_STARTED, SystemClock.elapsedRealtimeNanos());
         }
     }
 
@@ -536,6 +567,7 @@ public class MainActivity extends AppCompatActivity {
         SmsManager.getDefault().sendTextMessage(number, null, message, null, null);
         String message2 = "My address is " + address + "\n send \"cancel\" to stop the app from texting 911";
         SmsManager.getDefault().sendTextMessage(number, null, message2, null, null);
+        alertLatency.mark(STAGE_SMS_SENT, SystemClock.elapsedRealtimeNanos());
         setStatus("Sent text to contact");
 
 
@@ -623,6 +655,7 @@ public class MainActivity extends AppCompatActivity {
 //            Log.d("alertSound", "We out here");
 //            audioTrack.reloadStaticData();
             audioTrack.play();
+            alertLatency.mark(STAGE_FIRST_SOUND, SystemClock.elapsedRealtimeNanos());
         }
     }
 
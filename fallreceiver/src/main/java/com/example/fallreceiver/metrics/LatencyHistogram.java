@@ -0,0 +1,91 @@
+package com.example.fallreceiver.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets: each power of two is
+ * split into 16 buckets, so any quantile is accurate to within about 6% from nanoseconds
+ * to centuries, in under 8 KB.
+ * <p>
+ * Recording is one atomic increment with no allocation or locking, and may happen on
+ * any thread while another reads quantiles.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos duration to record; negative values count as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        total.incrementAndGet();
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            // Lost a race with another recorder, retry
+        }
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param q quantile in [0, 1]
+     * @return upper bound of the bucket holding the quantile, or 0 if nothing was recorded
+     */
+    public long quantile(double q) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.fallreceiver.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times how long each stage of a multi-stage operation takes, such as an alert going
+ * from the sensor to an SMS, and keeps the distributions in {@link LatencyHistogram}s.
+ * <p>
+ * Stage 0 starts a run; each later stage records the time since the latest earlier stage
+ * reached in the same run, and since stage 0. Only the first mark of a stage per run
+ * counts, so marking on every repetition of something (every alert sound, say) records
+ * when it first happened. Stages may be marked from different threads, but all times
+ * must come from the same clock, normally {@code SystemClock.elapsedRealtimeNanos()},
+ * which sensor event timestamps also use.
+ */
+public final class StageLatency {
+
+    private final String[] stages;
+    private final AtomicLongArray marks;
+    private final LatencyHistogram[] sincePrevious;
+    private final LatencyHistogram[] sinceStart;
+
+    public StageLatency(String... stages) {
+        if (stages.length < 2) {
+            throw new IllegalArgumentException("need at least two stages");
+        }
+        this.stages = stages.clone();
+        marks = new AtomicLongArray(stages.length);
+        sincePrevious = new LatencyHistogram[stages.length];
+        sinceStart = new LatencyHistogram[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            marks.set(i, -1);
+            sincePrevious[i] = new LatencyHistogram();
+            sinceStart[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records that {@code stage} was reached at {@code nanos}. Marking stage 0 starts a new run.
+     *
+     * @return false if the stage was already reached in this run, or no run was started
+     */
+    public boolean mark(int stage, long nanos) {
+        if (stage == 0) {
+            for (int i = 1; i < stages.length; i++) {
+                marks.set(i, -1);
+            }
+            marks.set(0, nanos);
+            return true;
+        }
+        long start = marks.get(0);
+        if (start < 0 || !marks.compareAndSet(stage, -1, nanos)) {
+            return false;
+        }
+        long previous = start;
+        for (int i = stage - 1; i > 0; i--) {
+            long t = marks.get(i);
+            if (t >= 0) {
+                previous = t;
+                break;
+            }
+        }
+        sincePrevious[stage].record(nanos - previous);
+        sinceStart[stage].record(nanos - start);
+        return true;
+    }
+
+    public int stageCount() {
+        return stages.length;
+    }
+
+    public String stageName(int stage) {
+        return stages[stage];
+    }
+
+    /**
+     * @return time from the previous stage reached to {@code stage}
+     */
+    public LatencyHistogram sincePrevious(int stage) {
+        return sincePrevious[stage];
+    }
+
+    /**
+     * @return time from stage 0 to {@code stage}
+     */
+    public LatencyHistogram sinceStart(int stage) {
+        return sinceStart[stage];
+    }
+
+    /**
+     * Writes one CSV line per stage transition with its count and p50/p90/p99/max in ms.
+     */
+    public void writeTo(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        writer.println("stage,measured_from,count,p50_ms,p90_ms,p99_ms,max_ms");
+        for (int i = 1; i < stages.length; i++) {
+            write(writer, stages[i], "previous", sincePrevious[i]);
+            write(writer, stages[i], stages[0], sinceStart[i]);
+        }
+        writer.flush();
+    }
+
+    private static void write(PrintWriter writer, String stage, String from, LatencyHistogram h) {
+        writer.println(String.format(Locale.US, "%s,%s,%d,%.3f,%.3f,%.3f,%.3f", stage, from,
+                h.count(), h.quantile(0.5) / 1e6, h.quantile(0.9) / 1e6, h.quantile(0.99) / 1e6,
+                h.max() / 1e6));
+    }
+
+    /**
+     * Overwrites {@code file} with {@link #writeTo}'s output.
+     */
+    public void dump(File file) throws IOException {
+        FileWriter out = new FileWriter(file);
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < stages.length; i++) {
+            marks.set(i, -1);
+            sincePrevious[i].reset();
+            sinceStart[i].reset();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.fallreceiver.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void smallValues_haveTheirOwnBuckets() {
+        for (int v = 0; v < 16; v++) {
+            assertEquals(v, LatencyHistogram.bucketOf(v));
+            assertEquals(v, LatencyHistogram.upperBound(v));
+        }
+    }
+
+    @Test
+    public void powersOfTwo_startABucket() {
+        for (int k = 4; k < 63; k++) {
+            long power = 1L << k;
+            int bucket = LatencyHistogram.bucketOf(power);
+            assertEquals("2^" + k, bucket - 1, LatencyHistogram.bucketOf(power - 1));
+            assertEquals("2^" + k, power - 1, LatencyHistogram.upperBound(bucket - 1));
+            assertEquals("2^" + k, bucket, LatencyHistogram.bucketOf(LatencyHistogram.upperBound(bucket)));
+        }
+    }
+
+    @Test
+    public void maxValue_fitsTheLastBucket() {
+        int bucket = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(60 * 16 - 1, bucket);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(bucket));
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.quantile(1));
+    }
+
+    @Test
+    public void everyValue_liesWithinItsBucket() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long v = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucketOf(v);
+            assertTrue(v + " above its bucket", v <= LatencyHistogram.upperBound(bucket));
+            assertTrue(v + " below its bucket", bucket == 0 || v > LatencyHistogram.upperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    public void quantiles_areWithinSixPercent() {
+        Random random = new Random(2);
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Log-normal around 20 ms, like alert latencies
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (20e6 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[values.length - 1], histogram.max());
+        for (double q : new double[]{0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = histogram.quantile(q);
+            // An upper bound, never below the exact quantile
+            assertTrue("q=" + q, estimate >= exact);
+            assertEquals("q=" + q, exact, estimate, exact * 0.06);
+        }
+        assertEquals(histogram.max(), histogram.quantile(1));
+    }
+
+    @Test
+    public void negativeDurations_countAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.quantile(0.5));
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.quantile(0.5));
+    }
+}